@@ -0,0 +1,117 @@
+package mhjohans.currency_api.configurations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.client.RestClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Load test for a burst of concurrent requests that each call the external API while it suffers from a latency spike.
+ * The external API is simulated with a local HTTP server that delays every response. With platform threads the
+ * requests are handled by a fixed pool of the size of the default Tomcat thread pool, so requests beyond the pool size
+ * queue up behind the blocked threads. With virtual threads every request gets its own thread, so the burst completes
+ * in about the latency of a single call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class UpstreamLatencyBenchmark {
+
+    // Default maximum number of Tomcat request processing threads
+    private static final int PLATFORM_THREADS = 200;
+
+    private static final byte[] RESPONSE_BODY =
+            "[{\"base_currency\":\"EUR\",\"quote_currency\":\"USD\",\"quote\":1.1,\"date\":\"2024-01-01\"}]"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"600"})
+    private int concurrentRequests;
+
+    @Param({"1000"})
+    private long latencyMillis;
+
+    private HttpServer server;
+
+    private ExecutorService requestExecutor;
+
+    private RestClient restClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), concurrentRequests);
+        server.createContext("/rates", this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        boolean virtualThreads = threads.equals("virtual");
+        requestExecutor = virtualThreads
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(PLATFORM_THREADS);
+        restClient = RestClient.builder()
+                .baseUrl("http://localhost:" + server.getAddress().getPort())
+                .requestFactory(RestClientConfiguration.createRequestFactory(virtualThreads,
+                        Duration.ofSeconds(2), Duration.ofSeconds(30)))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException, ExecutionException {
+        List<Future<String>> responses = new ArrayList<>(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            responses.add(requestExecutor
+                    .submit(() -> restClient.get().uri("/rates").retrieve().body(String.class)));
+        }
+        int length = 0;
+        for (Future<String> response : responses) {
+            length += response.get().length();
+        }
+        return length;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, RESPONSE_BODY.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(RESPONSE_BODY);
+        }
+    }
+
+}
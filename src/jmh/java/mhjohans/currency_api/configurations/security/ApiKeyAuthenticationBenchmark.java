@@ -0,0 +1,179 @@
+package mhjohans.currency_api.configurations.security;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.config.Customizer;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.AnyRequestMatcher;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Benchmarks the per-request cost of the security filter chain for an authenticated conversion request: the
+ * minimal stateless chain of {@link WebSecurityConfiguration} against the previous chain, which authenticated the key
+ * with a filter built on {@link AbstractAuthenticationProcessingFilter} and also had HTTP Basic authentication and
+ * CSRF protection with a cookie token repository configured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ApiKeyAuthenticationBenchmark {
+
+    private static final String API_KEY = "0123456789abcdef0123456789abcdef";
+
+    private static final FilterChain CHAIN = (request, response) -> {
+    };
+
+    @Param({"stateless", "previous"})
+    private String chain;
+
+    private AnnotationConfigWebApplicationContext context;
+
+    private FilterChainProxy filterChainProxy;
+
+    @Setup
+    public void setUp() {
+        context = new AnnotationConfigWebApplicationContext();
+        context.setServletContext(new MockServletContext());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("security.api-key", API_KEY, "security.api-keys.partner", API_KEY + "-partner")));
+        context.register(chain.equals("stateless") ? WebSecurityConfiguration.class
+                : PreviousWebSecurityConfiguration.class);
+        context.refresh();
+        filterChainProxy = context.getBean(FilterChainProxy.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int filterChain() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/currency-api/convert");
+        request.addHeader(ApiKeyAuthenticationFilter.API_KEY_HEADER, API_KEY);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filterChainProxy.doFilter(request, response, CHAIN);
+        return response.getStatus();
+    }
+
+    /*
+     * The previous security configuration of the servlet web stack
+     */
+    @Configuration
+    @EnableWebSecurity
+    static class PreviousWebSecurityConfiguration {
+
+        @Bean
+        SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+            http.authorizeHttpRequests(authorizationCustomizer -> authorizationCustomizer
+                    .anyRequest().authenticated()).httpBasic(Customizer.withDefaults())
+                    .sessionManagement(sessionManagementConfigurer -> sessionManagementConfigurer
+                            .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                    .addFilterBefore(new ProcessingFilter(API_KEY), UsernamePasswordAuthenticationFilter.class)
+                    .csrf(csrfConfigurer -> csrfConfigurer
+                            .csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse())
+                            // Matched by path, as there is no Spring MVC context to match with
+                            .ignoringRequestMatchers(new AntPathRequestMatcher("/currency-api/convert/**"),
+                                    new AntPathRequestMatcher("/actuator/historicalrates")))
+                    .headers(headersConfigurer -> headersConfigurer
+                            .contentSecurityPolicy(csp -> csp.policyDirectives("default-src 'self'")));
+            return http.build();
+        }
+
+    }
+
+    /*
+     * The previous filter, which authenticated each request through an authentication manager with a new token
+     */
+    private static class ProcessingFilter extends AbstractAuthenticationProcessingFilter {
+
+        private final String requiredApiKey;
+
+        ProcessingFilter(String requiredApiKey) {
+            super(AnyRequestMatcher.INSTANCE);
+            this.requiredApiKey = requiredApiKey;
+            setAuthenticationManager(this::authenticate);
+        }
+
+        @Override
+        public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response)
+                throws AuthenticationException {
+            String apiKey = request.getHeader(ApiKeyAuthenticationFilter.API_KEY_HEADER);
+            if (apiKey == null) {
+                throw new BadCredentialsException("Missing API Key");
+            }
+            return getAuthenticationManager().authenticate(new KeyToken(apiKey));
+        }
+
+        @Override
+        protected void successfulAuthentication(HttpServletRequest request, HttpServletResponse response,
+                FilterChain chain, Authentication authResult) throws IOException, ServletException {
+            SecurityContextHolder.getContext().setAuthentication(authResult);
+            chain.doFilter(request, response);
+        }
+
+        private Authentication authenticate(Authentication authentication) throws AuthenticationException {
+            if (authentication instanceof KeyToken keyToken && keyToken.getPrincipal().equals(requiredApiKey)) {
+                return keyToken;
+            }
+            throw new BadCredentialsException("Invalid API Key");
+        }
+
+    }
+
+    private static class KeyToken extends AbstractAuthenticationToken {
+
+        private final String apiKey;
+
+        KeyToken(String apiKey) {
+            super(null);
+            this.apiKey = apiKey;
+            setAuthenticated(true);
+        }
+
+        @Override
+        public Object getCredentials() {
+            return null;
+        }
+
+        @Override
+        public String getPrincipal() {
+            return apiKey;
+        }
+
+    }
+
+}
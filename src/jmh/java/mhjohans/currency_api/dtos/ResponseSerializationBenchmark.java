@@ -0,0 +1,90 @@
+package mhjohans.currency_api.dtos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
+import mhjohans.currency_api.dtos.response.SuccessResponseDTO;
+
+/**
+ * Benchmarks the serialization of JSend responses with an object mapper configured like the one used by Spring MVC,
+ * either with the pre-encoded serializers of the responses or reflectively through their annotations. Run with
+ * {@code -prof gc} to compare the allocation rate per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResponseSerializationBenchmark {
+
+    @Param({"serializer", "reflective"})
+    private String serialization;
+
+    private ObjectMapper objectMapper;
+
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private abstract static class ReflectiveMixIn {
+    }
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        if (serialization.equals("reflective")) {
+            builder.mixIn(ResponseDTO.class, ReflectiveMixIn.class)
+                    .mixIn(ConversionResultDTO.class, ReflectiveMixIn.class);
+        }
+        objectMapper = builder.build();
+    }
+
+    @Benchmark
+    public byte[] success() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                new SuccessResponseDTO<>(new ConversionResultDTO("€1,234.56")));
+    }
+
+    /*
+     * Writes to a reused output stream like the message converters write to the response, so that only the garbage
+     * of the serialization itself is measured
+     */
+    @Benchmark
+    public int successToStream() throws IOException {
+        outputStream.reset();
+        objectMapper.writeValue(outputStream, new SuccessResponseDTO<>(new ConversionResultDTO("€1,234.56")));
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public byte[] successStale() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                new SuccessResponseDTO<>(new ConversionResultDTO("€1,234.56", true, 300L)));
+    }
+
+    @Benchmark
+    public byte[] fail() throws JsonProcessingException {
+        return objectMapper
+                .writeValueAsBytes(new FailResponseDTO("Currency code not supported: XYZ"));
+    }
+
+    @Benchmark
+    public byte[] error() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(
+                new ErrorResponseDTO("Failed to retrieve currency rates", 500, null));
+    }
+
+}
@@ -0,0 +1,87 @@
+package mhjohans.currency_api.services;
+
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.core.task.SyncTaskExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+
+/**
+ * Services wired with a stubbed external API for benchmarking the conversion hot path without network calls.
+ */
+final class BenchmarkFixtures {
+
+    static final List<String> CURRENCIES = List.of("EUR", "USD", "GBP", "JPY", "CHF", "SEK", "NOK",
+            "DKK", "PLN", "CZK", "HUF", "CAD", "AUD", "NZD", "CNY", "HKD", "SGD", "INR", "BRL", "MXN",
+            "ZAR", "TRY", "KRW", "THB", "ILS", "ISK", "RON", "BGN", "IDR", "PHP");
+
+    private BenchmarkFixtures() {}
+
+    static List<CurrencyRateDTO> createRates() {
+        LocalDate date = LocalDate.now();
+        return CURRENCIES.stream().skip(1).map(currency -> new CurrencyRateDTO("EUR", currency,
+                1.0 + (currency.hashCode() & 0xFF) / 10.0, date)).toList();
+    }
+
+    static CurrencyRateService createCurrencyRateService() {
+        return new StubCurrencyRateService();
+    }
+
+    static RateSnapshotService createRateSnapshotService(CurrencyRateService currencyRateService) {
+        return new RateSnapshotService(currencyRateService, new SyncTaskExecutor(),
+                Duration.ofMinutes(2), Duration.ofHours(1), new SimpleMeterRegistry(), Optional.empty());
+    }
+
+    static SupportedCurrenciesService createSupportedCurrenciesService(
+            CurrencyRateService currencyRateService) {
+        return new SupportedCurrenciesService(currencyRateService, new SyncTaskExecutor(), Duration.ofDays(1),
+                new SimpleMeterRegistry());
+    }
+
+    static CurrencyFormatService createCurrencyFormatService() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCacheSpecification("maximumSize=1024,expireAfterAccess=1h");
+        return new CurrencyFormatService(cacheManager, 64);
+    }
+
+    static ConversionService createConversionService() {
+        CurrencyRateService currencyRateService = createCurrencyRateService();
+        RateSnapshotService rateSnapshotService = createRateSnapshotService(currencyRateService);
+        rateSnapshotService.refresh();
+        return new ConversionService(
+                createSupportedCurrenciesService(currencyRateService), rateSnapshotService,
+                // Conversions with historical rates are not benchmarked
+                createCurrencyFormatService(), null, RoundingMode.HALF_EVEN, new SimpleMeterRegistry());
+    }
+
+    /*
+     * Currency rate service that returns fixed rates instead of calling the external API
+     */
+    private static final class StubCurrencyRateService extends CurrencyRateService {
+
+        private final SupportedCurrencies supportedCurrencies = SupportedCurrencies.of(CURRENCIES);
+
+        private final List<CurrencyRateDTO> rates = createRates();
+
+        StubCurrencyRateService() {
+            super(null);
+        }
+
+        @Override
+        public SupportedCurrencies getSupportedCurrencies() {
+            return supportedCurrencies;
+        }
+
+        @Override
+        public RateMatrix getRateMatrix() {
+            return RateMatrix.of(rates, Instant.now());
+        }
+
+    }
+
+}
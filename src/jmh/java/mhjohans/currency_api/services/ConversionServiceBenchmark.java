@@ -0,0 +1,94 @@
+package mhjohans.currency_api.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.context.i18n.LocaleContextHolder;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.MultiConversionResultDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+/**
+ * Benchmarks the conversion of single values, batches of values and one value to all currencies with cached rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConversionServiceBenchmark {
+
+    @Param({"en-US", "fi", "de-CH", "ja-JP"})
+    private String languageTag;
+
+    private ConversionService conversionService;
+
+    private List<ConversionRequestDTO> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        conversionService = BenchmarkFixtures.createConversionService();
+        batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            List<String> currencies = BenchmarkFixtures.CURRENCIES;
+            batch.add(new ConversionRequestDTO(currencies.get(i % currencies.size()),
+                    currencies.get((i * 7 + 3) % currencies.size()), String.valueOf(i * 12.5)));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpLocale() {
+        LocaleContextHolder.setLocale(Locale.forLanguageTag(languageTag));
+    }
+
+    @Benchmark
+    public ConversionResultDTO convert()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        return conversionService.convert("USD", "EUR", "1234.56");
+    }
+
+    @Benchmark
+    public ConversionResultDTO convertUncleaned()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        return conversionService.convert(" usd", "eur ", "1234.56");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<ResponseDTO<?>> convertBatchOf100()
+            throws ExternalApiException, StaleCurrencyRateException {
+        return conversionService.convertAll(batch);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MultiConversionResultDTO convertToAll()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        return conversionService.convertToMany("USD", "1234.56", null, true);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MultiConversionResultDTO convertToAllUnlocalized()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        return conversionService.convertToMany("USD", "1234.56", null, false);
+    }
+
+}
@@ -0,0 +1,48 @@
+package mhjohans.currency_api.services;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+
+/**
+ * Benchmarks the conversion of an amount with the fixed-point multiply of {@link FixedPointConverter}, compared to
+ * multiplying and rounding with BigDecimal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FixedPointBenchmark {
+
+    @Param({"1234.56", "0.000123456789"})
+    private String value;
+
+    private final double rate = 0.9187654321;
+
+    private FixedPointConverter.Amount amount;
+
+    @Setup
+    public void setUp() throws InvalidRequestException {
+        amount = FixedPointConverter.parse(value);
+    }
+
+    @Benchmark
+    public long fixedPointMultiply() {
+        return FixedPointConverter.multiply(amount.unscaled(), amount.scale(), rate, 2, RoundingMode.HALF_EVEN);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalMultiply() {
+        return amount.toBigDecimal().multiply(FixedPointConverter.toDecimalRate(rate)).setScale(2,
+                RoundingMode.HALF_EVEN);
+    }
+
+}
@@ -0,0 +1,56 @@
+package mhjohans.currency_api.services;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the localization of converted amounts with pooled number formats, compared to creating a new number
+ * format for each amount.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormattingBenchmark {
+
+    @Param({"en-US", "fi", "de-CH", "ja-JP", "ar-EG"})
+    private String languageTag;
+
+    @Param({"EUR", "JPY"})
+    private String currencyCode;
+
+    private final BigDecimal value = new BigDecimal("1234567.891");
+
+    private Locale locale;
+
+    private CurrencyFormatService currencyFormatService;
+
+    @Setup
+    public void setUp() {
+        locale = Locale.forLanguageTag(languageTag);
+        currencyFormatService = BenchmarkFixtures.createCurrencyFormatService();
+    }
+
+    @Benchmark
+    public String pooledFormat() {
+        return currencyFormatService.format(value, locale, currencyCode);
+    }
+
+    @Benchmark
+    public String newFormat() {
+        NumberFormat numberFormat = NumberFormat.getCurrencyInstance(locale);
+        numberFormat.setCurrency(Currency.getInstance(currencyCode));
+        return numberFormat.format(value);
+    }
+
+}
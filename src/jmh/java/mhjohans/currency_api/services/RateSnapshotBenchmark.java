@@ -0,0 +1,56 @@
+package mhjohans.currency_api.services;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+/**
+ * Benchmarks the rate lookup when the rate snapshot is already loaded (hit) and when it has to be loaded first (miss),
+ * excluding the latency of the external API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RateSnapshotBenchmark {
+
+    private CurrencyRateService currencyRateService;
+
+    private RateSnapshotService loadedRateSnapshotService;
+
+    private int sourceKey;
+
+    private int targetKey;
+
+    @Setup
+    public void setUp() {
+        currencyRateService = BenchmarkFixtures.createCurrencyRateService();
+        loadedRateSnapshotService = BenchmarkFixtures.createRateSnapshotService(currencyRateService);
+        loadedRateSnapshotService.refresh();
+        sourceKey = CurrencyCodes.pack("USD");
+        targetKey = CurrencyCodes.pack("EUR");
+    }
+
+    @Benchmark
+    public double hit() throws ExternalApiException, StaleCurrencyRateException {
+        return getRate(loadedRateSnapshotService.getSnapshot());
+    }
+
+    @Benchmark
+    public double miss() throws ExternalApiException, StaleCurrencyRateException {
+        RateSnapshotService rateSnapshotService =
+                BenchmarkFixtures.createRateSnapshotService(currencyRateService);
+        return getRate(rateSnapshotService.getSnapshot());
+    }
+
+    private double getRate(RateMatrix rateMatrix) {
+        return rateMatrix.getRate(rateMatrix.ordinal(sourceKey), rateMatrix.ordinal(targetKey));
+    }
+
+}
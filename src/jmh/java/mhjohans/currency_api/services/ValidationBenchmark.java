@@ -0,0 +1,48 @@
+package mhjohans.currency_api.services;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the validation of currency codes as packed keys against a bitset, compared to cleaning up the string and
+ * looking it up from a hash set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ValidationBenchmark {
+
+    @Param({"EUR", " usd "})
+    private String currency;
+
+    private SupportedCurrencies supportedCurrencies;
+
+    private Set<String> supportedCurrencySet;
+
+    @Setup
+    public void setUp() {
+        supportedCurrencies = SupportedCurrencies.of(BenchmarkFixtures.CURRENCIES);
+        supportedCurrencySet = new HashSet<>(BenchmarkFixtures.CURRENCIES);
+    }
+
+    @Benchmark
+    public boolean packedKey() {
+        return supportedCurrencies.contains(CurrencyCodes.pack(currency));
+    }
+
+    @Benchmark
+    public boolean stringSet() {
+        String cleanedCurrency = currency.trim().toUpperCase();
+        return cleanedCurrency.length() == 3 && supportedCurrencySet.contains(cleanedCurrency);
+    }
+
+}
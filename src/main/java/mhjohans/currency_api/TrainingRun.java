@@ -0,0 +1,73 @@
+package mhjohans.currency_api;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Training run of the application for building the class data sharing archive of the production image, and for
+ * measuring the time from the start of the JVM to the first served conversion.
+ * <p>
+ * When enabled with {@code startup.training-run}, the application converts a value through its own convert endpoint
+ * as soon as it is ready, like a client would, so that the classes of the whole request path are loaded before the
+ * JVM exits and writes the archive. The time to the first conversion is logged and the application is then shut down.
+ * The property is checked at runtime rather than with a bean condition, so that the same ahead-of-time processed
+ * application can be used for both the training run and the production runs.
+ */
+@Component
+class TrainingRun implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrainingRun.class);
+
+    private final boolean enabled;
+
+    private final String applicationName;
+
+    private final String apiKey;
+
+    TrainingRun(@Value("${startup.training-run}") boolean enabled,
+            @Value("${spring.application.name}") String applicationName,
+            @Value("${security.api-key}") String apiKey) {
+        this.enabled = enabled;
+        this.applicationName = applicationName;
+        this.apiKey = apiKey;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled) {
+            return;
+        }
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        int exitCode = 0;
+        try {
+            // An error response still passes through the whole request path, so it is reported rather than failed
+            ResponseEntity<String> response = RestClient.create().get()
+                    .uri("http://localhost:{port}/{name}/convert?source=EUR&target=USD&value=100",
+                            context.getEnvironment().getProperty("local.server.port"), applicationName)
+                    .header("X-API-KEY", apiKey).retrieve()
+                    .onStatus(HttpStatusCode::isError, (request, errorResponse) -> {}).toEntity(String.class);
+            Instant start = Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime());
+            logger.info("Time to first conversion: {} ms, ready in {} ms, response: {} {}",
+                    Duration.between(start, Instant.now()).toMillis(), event.getTimeTaken().toMillis(),
+                    response.getStatusCode().value(), response.getBody());
+        } catch (Exception e) {
+            logger.error("Training run failed to call the convert endpoint: {}", e.getMessage());
+            exitCode = 1;
+        }
+        int status = exitCode;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+}
@@ -0,0 +1,30 @@
+package mhjohans.currency_api.configurations;
+
+import java.util.Map;
+import org.springframework.boot.autoconfigure.cache.CacheManagerCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+@Configuration
+public class CacheConfiguration {
+
+    /**
+     * Registers a bounded Caffeine cache for each cache name under the {@code caches} properties, built from the
+     * Caffeine specification of the cache, e.g. {@code maximumSize=1024,expireAfterAccess=1h}. Caches without their
+     * own specification are created with the default specification in {@code spring.cache.caffeine.spec}. Hit and
+     * miss statistics are recorded for the cache metrics.
+     */
+    @Bean
+    CacheManagerCustomizer<CaffeineCacheManager> caffeineCacheManagerCustomizer(Environment environment) {
+        Map<String, String> specs = Binder.get(environment)
+                .bind("caches", Bindable.mapOf(String.class, String.class)).orElse(Map.of());
+        return cacheManager -> specs.forEach((name, spec) -> cacheManager.registerCustomCache(name,
+                Caffeine.from(spec).recordStats().build()));
+    }
+
+}
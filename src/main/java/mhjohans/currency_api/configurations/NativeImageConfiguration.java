@@ -0,0 +1,69 @@
+package mhjohans.currency_api.configurations;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.configure.CircuitBreakerAspect;
+import io.github.resilience4j.retry.annotation.Retry;
+import io.github.resilience4j.retry.configure.RetryAspect;
+import mhjohans.currency_api.configurations.security.ApiKeyAuthenticationFilter;
+import mhjohans.currency_api.configurations.security.ApiKeyAuthenticationToken;
+import mhjohans.currency_api.configurations.security.ApiKeyRegistry;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.CurrencyDTO;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+import mhjohans.currency_api.dtos.FrankfurterRatesDTO;
+import mhjohans.currency_api.dtos.MultiConversionResultDTO;
+import mhjohans.currency_api.dtos.RateUpdateDTO;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
+import mhjohans.currency_api.dtos.response.SuccessResponseDTO;
+import mhjohans.currency_api.services.CurrencyRateService;
+
+@Configuration
+@ImportRuntimeHints(NativeImageConfiguration.CurrencyApiRuntimeHints.class)
+public class NativeImageConfiguration {
+
+    /**
+     * Registers the reflection and resource hints of the native image for what the ahead-of-time processing cannot
+     * infer from the bean definitions:
+     * <ul>
+     * <li>The DTOs bound by Jackson, including the responses of the rate providers, which are read through the REST
+     * and web clients with type references, and the serializers of the JSend responses referenced from their
+     * annotations.
+     * <li>The Resilience4j annotations on {@link CurrencyRateService} and the aspects applying them, which look up the
+     * annotated methods and invoke their advice reflectively.
+     * <li>The API key authentication filter chain, which is built in the security configurations rather than by
+     * component scanning.
+     * <li>The rates of the file rate provider, which are read from the classpath.
+     * </ul>
+     */
+    static class CurrencyApiRuntimeHints implements RuntimeHintsRegistrar {
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), ResponseDTO.class,
+                    SuccessResponseDTO.class, FailResponseDTO.class, ErrorResponseDTO.class,
+                    ConversionResultDTO.class, MultiConversionResultDTO.class, ConversionRequestDTO.class,
+                    CurrencyDTO.class, CurrencyRateDTO.class, FrankfurterRatesDTO.class, RateUpdateDTO.class);
+            hints.reflection().registerType(CurrencyRateService.class, MemberCategory.INTROSPECT_PUBLIC_METHODS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(CircuitBreaker.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(Retry.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(CircuitBreakerAspect.class, MemberCategory.INVOKE_DECLARED_METHODS);
+            hints.reflection().registerType(RetryAspect.class, MemberCategory.INVOKE_DECLARED_METHODS);
+            hints.reflection().registerType(ApiKeyAuthenticationFilter.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(ApiKeyAuthenticationToken.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.reflection().registerType(ApiKeyRegistry.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+            hints.resources().registerPattern("rate-provider/*.json");
+        }
+
+    }
+
+}
@@ -0,0 +1,21 @@
+package mhjohans.currency_api.configurations;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebServerConfiguration {
+
+    /**
+     * Runs the reactive web stack on Reactor Netty event loops, which would otherwise be started on Tomcat because
+     * it is also on the classpath for the servlet web stack.
+     */
+    @Bean
+    NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+}
@@ -1,23 +1,70 @@
 package mhjohans.currency_api.configurations;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
 @Configuration
 public class RestClientConfiguration {
 
     /**
-     * Creates a REST client with the provided base URL, API key and API key authentication header used in the 
-     * external currency rates API.
+     * Creates a REST client with the provided base URL, API key and API key authentication header used in the
+     * external currency rates API. The builder is not auto-configured in the reactive web stack, where the REST
+     * client is only used for background refreshes of the rates.
      */
     @Bean
-    RestClient restClient(@Value("${currency-rates-api.base-url}") String baseUrl,
+    RestClient swopRestClient(@Value("${currency-rates-api.base-url}") String baseUrl,
             @Value("${currency-rates-api.key}") String apiKey,
-            RestClient.Builder restClientBuilder) {
-        return restClientBuilder.baseUrl(baseUrl).defaultHeader("Authorization", "ApiKey " + apiKey)
+            @Value("${currency-rates-api.connect-timeout}") Duration connectTimeout,
+            @Value("${currency-rates-api.read-timeout}") Duration readTimeout,
+            ObjectProvider<RestClient.Builder> restClientBuilder, Environment environment) {
+        return restClientBuilder.getIfAvailable(RestClient::builder).baseUrl(baseUrl).defaultHeader("Authorization", "ApiKey " + apiKey)
+                .requestFactory(createRequestFactory(Threading.VIRTUAL.isActive(environment),
+                        connectTimeout, readTimeout))
+                .build();
+    }
+
+    /**
+     * Creates a REST client for the Frankfurter API, which requires no authentication, with the same timeouts as the
+     * external currency rates API.
+     */
+    @Bean
+    RestClient frankfurterRestClient(
+            @Value("${currency-rates-api.providers.frankfurter.base-url}") String baseUrl,
+            @Value("${currency-rates-api.connect-timeout}") Duration connectTimeout,
+            @Value("${currency-rates-api.read-timeout}") Duration readTimeout,
+            ObjectProvider<RestClient.Builder> restClientBuilder, Environment environment) {
+        return restClientBuilder.getIfAvailable(RestClient::builder).baseUrl(baseUrl)
+                .requestFactory(createRequestFactory(Threading.VIRTUAL.isActive(environment),
+                        connectTimeout, readTimeout))
                 .build();
     }
 
+    /**
+     * Creates a request factory based on the JDK HTTP client with the given timeouts. When virtual threads are
+     * enabled with the {@code spring.threads.virtual.enabled} property, the HTTP client also runs its internal tasks on
+     * virtual threads, so that calls to a slow external API only block cheap virtual threads.
+     */
+    static ClientHttpRequestFactory createRequestFactory(boolean virtualThreads,
+            Duration connectTimeout, Duration readTimeout) {
+        HttpClient.Builder httpClientBuilder = HttpClient.newBuilder().connectTimeout(connectTimeout);
+        if (virtualThreads) {
+            httpClientBuilder.executor(Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("currency-rates-api-", 0).factory()));
+        }
+        JdkClientHttpRequestFactory requestFactory =
+                new JdkClientHttpRequestFactory(httpClientBuilder.build());
+        requestFactory.setReadTimeout(readTimeout);
+        return requestFactory;
+    }
+
 }
@@ -0,0 +1,57 @@
+package mhjohans.currency_api.configurations;
+
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.client.HttpClient;
+
+@Configuration
+public class WebClientConfiguration {
+
+    /**
+     * Creates a non-blocking web client for the reactive web stack with the same base URL, API key authentication
+     * header and timeouts as the REST client of the external currency rates API. The client does not open any
+     * connections before its first call, so it is also created in the servlet web stack, where it is not called.
+     */
+    @Bean
+    WebClient swopWebClient(@Value("${currency-rates-api.base-url}") String baseUrl,
+            @Value("${currency-rates-api.key}") String apiKey,
+            @Value("${currency-rates-api.connect-timeout}") Duration connectTimeout,
+            @Value("${currency-rates-api.read-timeout}") Duration readTimeout,
+            ObjectProvider<WebClient.Builder> webClientBuilder) {
+        return webClientBuilder.getIfAvailable(WebClient::builder).baseUrl(baseUrl)
+                .defaultHeader("Authorization", "ApiKey " + apiKey)
+                .clientConnector(createConnector(connectTimeout, readTimeout)).build();
+    }
+
+    /**
+     * Creates a non-blocking web client for the Frankfurter API, which requires no authentication, with the same
+     * timeouts as the external currency rates API.
+     */
+    @Bean
+    WebClient frankfurterWebClient(
+            @Value("${currency-rates-api.providers.frankfurter.base-url}") String baseUrl,
+            @Value("${currency-rates-api.connect-timeout}") Duration connectTimeout,
+            @Value("${currency-rates-api.read-timeout}") Duration readTimeout,
+            ObjectProvider<WebClient.Builder> webClientBuilder) {
+        return webClientBuilder.getIfAvailable(WebClient::builder).baseUrl(baseUrl)
+                .clientConnector(createConnector(connectTimeout, readTimeout)).build();
+    }
+
+    /**
+     * Creates a connector based on the Reactor Netty HTTP client with the given timeouts, which waits for the
+     * responses on the event loops without blocking any thread.
+     */
+    static ReactorClientHttpConnector createConnector(Duration connectTimeout, Duration readTimeout) {
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(readTimeout);
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+}
@@ -1,54 +1,53 @@
 package mhjohans.currency_api.configurations.security;
 
 import java.io.IOException;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
-import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.web.filter.OncePerRequestFilter;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
-public class ApiKeyAuthenticationFilter extends AbstractAuthenticationProcessingFilter {
+/**
+ * Authenticates every request with the API key in its {@code X-API-KEY} header and rejects a request with a missing
+ * or unaccepted key with status code 401 before it reaches the rest of the filter chain.
+ * <p>
+ * The key is looked up directly in the {@link ApiKeyRegistry} instead of going through an authentication manager,
+ * and the shared token of the identity of the key is set in a security context that only lives for the request.
+ */
+public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
 
-    private static final String API_KEY_HEADER = "X-API-KEY";
+    static final String API_KEY_HEADER = "X-API-KEY";
 
-    private final String requiredApiKey;
+    private final ApiKeyRegistry apiKeyRegistry;
 
-    public ApiKeyAuthenticationFilter(String requiredApiKey, RequestMatcher requestMatcher) {
-        super(requestMatcher);
-        this.requiredApiKey = requiredApiKey;
-        setAuthenticationManager(this::authenticate);
+    private final SecurityContextHolderStrategy securityContextHolderStrategy =
+            SecurityContextHolder.getContextHolderStrategy();
+
+    public ApiKeyAuthenticationFilter(ApiKeyRegistry apiKeyRegistry) {
+        this.apiKeyRegistry = apiKeyRegistry;
     }
 
     @Override
-    public Authentication attemptAuthentication(HttpServletRequest request,
-            HttpServletResponse response) throws AuthenticationException, IOException {
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+            FilterChain chain) throws ServletException, IOException {
         String apiKey = request.getHeader(API_KEY_HEADER);
-        if (apiKey == null) {
-            throw new BadCredentialsException("Missing API Key");
+        ApiKeyAuthenticationToken authentication = apiKey != null ? apiKeyRegistry.authenticate(apiKey) : null;
+        if (authentication == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED,
+                    apiKey == null ? "Missing API Key" : "Invalid API Key");
+            return;
         }
-        return getAuthenticationManager().authenticate(new ApiKeyAuthenticationToken(apiKey));
-    }
-
-    @Override
-    protected void successfulAuthentication(HttpServletRequest request,
-            HttpServletResponse response, FilterChain chain, Authentication authResult)
-            throws IOException, ServletException {
-        SecurityContextHolder.getContext().setAuthentication(authResult);
-        chain.doFilter(request, response);
-    }
-
-    private Authentication authenticate(Authentication authentication)
-            throws AuthenticationException {
-        if (authentication instanceof ApiKeyAuthenticationToken apiKeyAuthenticationToken
-                && apiKeyAuthenticationToken.getApiKey().equals(requiredApiKey)) {
-            return apiKeyAuthenticationToken;
+        SecurityContext securityContext = securityContextHolderStrategy.createEmptyContext();
+        securityContext.setAuthentication(authentication);
+        securityContextHolderStrategy.setContext(securityContext);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            securityContextHolderStrategy.clearContext();
         }
-        throw new BadCredentialsException("Invalid API Key");
     }
 
 }
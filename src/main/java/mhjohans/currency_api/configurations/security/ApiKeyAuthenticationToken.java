@@ -2,13 +2,17 @@ package mhjohans.currency_api.configurations.security;
 
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 
+/**
+ * Authentication of a client with an accepted API key. The principal is the identity of the client the key belongs
+ * to, never the key itself.
+ */
 public class ApiKeyAuthenticationToken extends AbstractAuthenticationToken {
 
-    private final String apiKey;
+    private final String identity;
 
-    public ApiKeyAuthenticationToken(String apiKey) {
+    public ApiKeyAuthenticationToken(String identity) {
         super(null);
-        this.apiKey = apiKey;
+        this.identity = identity;
         setAuthenticated(true);
     }
 
@@ -19,11 +23,7 @@ public class ApiKeyAuthenticationToken extends AbstractAuthenticationToken {
 
     @Override
     public String getPrincipal() {
-        return getApiKey();
-    }
-
-    String getApiKey() {
-        return apiKey;
+        return identity;
     }
 
 }
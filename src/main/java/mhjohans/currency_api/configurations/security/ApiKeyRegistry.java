@@ -0,0 +1,139 @@
+package mhjohans.currency_api.configurations.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+
+/**
+ * The accepted API keys, each with the identity of its client, stored only as SHA-256 digests computed once on
+ * startup.
+ * <p>
+ * A presented key is digested and its digest is looked up from a hash map of the digests of the keys, and the digest
+ * found is compared with it in constant time. As only digests are looked up and compared, the time taken does not
+ * depend on how much of the presented key matches any key, nor on its length, and the lookup takes the same time
+ * regardless of the number of keys. The authenticated token of each identity is created once and shared by all
+ * requests with its key.
+ */
+public final class ApiKeyRegistry {
+
+    static final String DEFAULT_IDENTITY = "default";
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private static final String DIGEST_PREFIX = "{sha256}";
+
+    private static final int DIGEST_LENGTH = 32;
+
+    // A digest is not thread-safe, so each request clones this prototype, which is cheaper than looking up the
+    // algorithm again
+    private static final MessageDigest PROTOTYPE;
+
+    static {
+        try {
+            PROTOTYPE = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<ByteBuffer, Entry> entries;
+
+    private record Entry(byte[] digest, ApiKeyAuthenticationToken token) {
+    }
+
+    /**
+     * Creates a registry of the given keys.
+     *
+     * @param apiKeys the keys by the identities of their clients, each either as the plain key or as the hex encoded
+     *        SHA-256 digest of the key prefixed with {@code {sha256}}
+     * @throws IllegalArgumentException if no keys are given, a key is blank, or a digest is not a hex encoded
+     *         SHA-256 digest
+     */
+    public ApiKeyRegistry(Map<String, String> apiKeys) {
+        if (apiKeys.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one API key must be defined in CURRENCY_API_KEY or under security.api-keys");
+        }
+        entries = new HashMap<>();
+        for (Map.Entry<String, String> apiKey : apiKeys.entrySet()) {
+            String value = apiKey.getValue();
+            if (value == null || value.isBlank()) {
+                throw new IllegalArgumentException("API key of " + apiKey.getKey() + " cannot be blank");
+            }
+            byte[] digest = value.startsWith(DIGEST_PREFIX)
+                    ? parseDigest(apiKey.getKey(), value.substring(DIGEST_PREFIX.length()))
+                    : digest(value);
+            if (entries.putIfAbsent(ByteBuffer.wrap(digest),
+                    new Entry(digest, new ApiKeyAuthenticationToken(apiKey.getKey()))) != null) {
+                throw new IllegalArgumentException("API key of " + apiKey.getKey() + " is already in use");
+            }
+        }
+    }
+
+    /**
+     * Creates a registry of the keys in the application properties: the single key in {@code security.api-key} with
+     * the default identity, if defined, and the keys by identity under {@code security.api-keys}. Either may be left
+     * undefined, but not both.
+     *
+     * @param environment the environment to bind the properties from
+     * @return the registry of the keys
+     * @throws IllegalArgumentException if no keys are defined or a key is invalid
+     */
+    static ApiKeyRegistry fromEnvironment(Environment environment) {
+        Binder binder = Binder.get(environment);
+        Map<String, String> apiKeys = new LinkedHashMap<>();
+        binder.bind("security.api-key", String.class).ifBound(apiKey -> {
+            if (!apiKey.isBlank()) {
+                apiKeys.put(DEFAULT_IDENTITY, apiKey);
+            }
+        });
+        binder.bind("security.api-keys", Bindable.mapOf(String.class, String.class)).ifBound(apiKeys::putAll);
+        return new ApiKeyRegistry(apiKeys);
+    }
+
+    /**
+     * Authenticates a presented key.
+     *
+     * @param apiKey the presented key
+     * @return the authenticated token with the identity of the key, or null if the key is not accepted
+     */
+    public ApiKeyAuthenticationToken authenticate(String apiKey) {
+        byte[] digest = digest(apiKey);
+        Entry entry = entries.get(ByteBuffer.wrap(digest));
+        return entry != null && MessageDigest.isEqual(entry.digest(), digest) ? entry.token() : null;
+    }
+
+    private static byte[] parseDigest(String identity, String hex) {
+        byte[] digest;
+        try {
+            digest = HexFormat.of().parseHex(hex);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("API key digest of " + identity + " is not hex encoded", e);
+        }
+        // A digest of any other length could never match, which would silently lock the client out
+        if (digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("API key digest of " + identity + " must be a SHA-256 digest of "
+                    + DIGEST_LENGTH + " bytes, but has " + digest.length + " bytes");
+        }
+        return digest;
+    }
+
+    private static byte[] digest(String apiKey) {
+        try {
+            return ((MessageDigest) PROTOTYPE.clone()).digest(apiKey.getBytes(StandardCharsets.UTF_8));
+        } catch (CloneNotSupportedException e) {
+            // The SHA-256 implementations of the JDK are cloneable
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
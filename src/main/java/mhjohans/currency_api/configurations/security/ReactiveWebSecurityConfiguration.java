@@ -0,0 +1,75 @@
+package mhjohans.currency_api.configurations.security;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
+import reactor.core.publisher.Mono;
+
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSecurityConfiguration {
+
+        /**
+         * Creates the registry of the accepted API keys from the application properties.
+         */
+        @Bean
+        ApiKeyRegistry apiKeyRegistry(Environment environment) {
+                return ApiKeyRegistry.fromEnvironment(environment);
+        }
+
+        /**
+         * Configures the same security settings as {@link WebSecurityConfiguration} for the reactive web stack.
+         * - API key authentication is required for all requests and no security context is stored between them.
+         * The key is looked up in the registry while converting the request, so the authentication manager only
+         * passes the token of the identity of the key through.
+         * - CSRF protection, HTTP Basic, form login and logout are disabled.
+         * - CSP protection is enabled to allow only the same origin for all resources.
+         */
+        @Bean
+        SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, ApiKeyRegistry apiKeyRegistry) {
+                ReactiveAuthenticationManager authenticationManager = Mono::just;
+                AuthenticationWebFilter apiKeyAuthenticationFilter = new AuthenticationWebFilter(authenticationManager);
+                apiKeyAuthenticationFilter.setServerAuthenticationConverter(exchange -> {
+                        String apiKey = exchange.getRequest().getHeaders()
+                                        .getFirst(ApiKeyAuthenticationFilter.API_KEY_HEADER);
+                        if (apiKey == null) {
+                                return Mono.empty();
+                        }
+                        ApiKeyAuthenticationToken authentication = apiKeyRegistry.authenticate(apiKey);
+                        return authentication != null ? Mono.just(authentication)
+                                        : Mono.error(new BadCredentialsException("Invalid API Key"));
+                });
+                apiKeyAuthenticationFilter
+                                .setSecurityContextRepository(NoOpServerSecurityContextRepository.getInstance());
+                http.authorizeExchange(authorizeExchangeSpec -> authorizeExchangeSpec
+                                // Enable API key authentication
+                                .anyExchange().authenticated())
+                                .securityContextRepository(
+                                                NoOpServerSecurityContextRepository.getInstance())
+                                .addFilterAt(apiKeyAuthenticationFilter,
+                                                SecurityWebFiltersOrder.AUTHENTICATION)
+                                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                                .requestCache(requestCacheSpec -> requestCacheSpec
+                                                .requestCache(NoOpServerRequestCache.getInstance()))
+                                // Enable CSP that allows only the same origin for all resources
+                                .headers(headerSpec -> headerSpec
+                                                .contentSecurityPolicy(csp -> csp.policyDirectives(
+                                                                "default-src 'self'")));
+                return http.build();
+        }
+
+}
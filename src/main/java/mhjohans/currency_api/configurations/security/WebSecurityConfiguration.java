@@ -1,47 +1,61 @@
 package mhjohans.currency_api.configurations.security;
 
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.Customizer;
+import org.springframework.core.env.Environment;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.web.SecurityFilterChain;
-import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
-import org.springframework.security.web.csrf.CookieCsrfTokenRepository;
-import org.springframework.security.web.util.matcher.AnyRequestMatcher;
+import org.springframework.security.web.context.NullSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextHolderFilter;
+import jakarta.servlet.DispatcherType;
 
 @Configuration
 @EnableWebSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WebSecurityConfiguration {
 
-        @Value("${security.api-key}")
-        private String requiredApiKey;
+        /**
+         * Creates the registry of the accepted API keys from the application properties.
+         */
+        @Bean
+        ApiKeyRegistry apiKeyRegistry(Environment environment) {
+                return ApiKeyRegistry.fromEnvironment(environment);
+        }
 
         /**
-         * Configures the security settings for the application's REST API.
-         * - API key authentication is enabled for all requests.
-         * - CSRF protection is enabled, but not active because is is only used when an method that
-         * can alter the state is called, such as POST.
+         * Configures a minimal stateless filter chain for the application's REST API.
+         * - API key authentication is required for all requests, and requests without an accepted key are rejected
+         * before the rest of the chain.
+         * - No security context, session, request cache or CSRF token is loaded or stored between requests. CSRF
+         * protection is not needed as no request is authenticated with cookies, and HTTP Basic, form login, logout,
+         * anonymous authentication and the servlet API integration are not used.
          * - CSP protection is enabled to allow only the same origin for all resources.
          */
         @Bean
-        SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+        SecurityFilterChain securityFilterChain(HttpSecurity http, ApiKeyRegistry apiKeyRegistry)
+                        throws Exception {
                 http.authorizeHttpRequests(authorizationCustomizer -> authorizationCustomizer
+                                // Let the error page of a rejected request be rendered and the async dispatch of an
+                                // authenticated streaming request complete, as the API key is only checked once
+                                .dispatcherTypeMatchers(DispatcherType.ERROR, DispatcherType.ASYNC).permitAll()
                                 // Enable API key authentication
-                                .anyRequest().authenticated()).httpBasic(Customizer.withDefaults())
-                                .sessionManagement(
-                                                sessionManagementConfigurer -> sessionManagementConfigurer
-                                                                .sessionCreationPolicy(
-                                                                                SessionCreationPolicy.STATELESS))
-                                .addFilterBefore(
-                                                new ApiKeyAuthenticationFilter(requiredApiKey,
-                                                                AnyRequestMatcher.INSTANCE),
-                                                UsernamePasswordAuthenticationFilter.class)
-                                // Enable CSRF protection
-                                .csrf(csrfConfigurer -> csrfConfigurer.csrfTokenRepository(
-                                                CookieCsrfTokenRepository.withHttpOnlyFalse()))
+                                .anyRequest().authenticated())
+                                // Neither load nor store a security context, as it is set by the API key filter
+                                .securityContext(securityContextConfigurer -> securityContextConfigurer
+                                                .securityContextRepository(new NullSecurityContextRepository()))
+                                .sessionManagement(AbstractHttpConfigurer::disable)
+                                .addFilterAfter(new ApiKeyAuthenticationFilter(apiKeyRegistry),
+                                                SecurityContextHolderFilter.class)
+                                .csrf(AbstractHttpConfigurer::disable)
+                                .httpBasic(AbstractHttpConfigurer::disable)
+                                .formLogin(AbstractHttpConfigurer::disable)
+                                .logout(AbstractHttpConfigurer::disable)
+                                .requestCache(AbstractHttpConfigurer::disable)
+                                .anonymous(AbstractHttpConfigurer::disable)
+                                .servletApi(AbstractHttpConfigurer::disable)
                                 // Enable CSP that allows only the same origin for all resources
                                 .headers(headersConfigurer -> headersConfigurer
                                                 .contentSecurityPolicy(csp -> csp.policyDirectives(
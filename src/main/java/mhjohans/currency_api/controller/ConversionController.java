@@ -1,17 +1,28 @@
 package mhjohans.currency_api.controller;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,30 +30,72 @@ import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.MultiConversionResultDTO;
 import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
 import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
 import mhjohans.currency_api.dtos.response.SuccessResponseDTO;
 import mhjohans.currency_api.exceptions.ExternalApiException;
 import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.ConversionLimiter;
 import mhjohans.currency_api.services.ConversionService;
+import mhjohans.currency_api.services.RateUpdateService;
+import mhjohans.currency_api.services.StreamingConversionService;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/${spring.application.name}")
 public class ConversionController {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversionController.class);
 
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
     private final ConversionService conversionService;
 
+    private final StreamingConversionService streamingConversionService;
+
+    private final ConversionLimiter conversionLimiter;
+
+    private final RateUpdateService rateUpdateService;
+
     private final MeterRegistry meterRegistry;
 
+    private final int batchMaxSize;
+
+    private final Duration rateUpdatesTimeout;
+
     private Timer convertTimer;
 
+    private Timer convertManyTimer;
+
+    private Timer convertBatchTimer;
+
+    private Timer convertStreamTimer;
+
+    private Counter convertStreamRowCounter;
+
     private Counter convertFailCounter;
 
-    ConversionController(ConversionService conversionService, MeterRegistry meterRegistry) {
+    ConversionController(ConversionService conversionService,
+            StreamingConversionService streamingConversionService, ConversionLimiter conversionLimiter,
+            RateUpdateService rateUpdateService, MeterRegistry meterRegistry,
+            @Value("${conversion.batch.max-size}") int batchMaxSize,
+            @Value("${rate-updates.timeout}") Duration rateUpdatesTimeout) {
         this.conversionService = conversionService;
+        this.streamingConversionService = streamingConversionService;
+        this.conversionLimiter = conversionLimiter;
+        this.rateUpdateService = rateUpdateService;
         this.meterRegistry = meterRegistry;
+        this.batchMaxSize = batchMaxSize;
+        this.rateUpdatesTimeout = rateUpdatesTimeout;
     }
 
     @PostConstruct
@@ -51,33 +104,174 @@ public class ConversionController {
                 .description("Time taken with a call to convert endpoint")
                 .publishPercentiles(0.5, 0.75, 0.95, 0.99).tag("endpoint", "convert")
                 .register(meterRegistry);
+        convertManyTimer = Timer.builder("controller.convert.many.timer")
+                .description("Time taken with a call to multi-target convert endpoint")
+                .publishPercentiles(0.5, 0.75, 0.95, 0.99).tag("endpoint", "convert-many")
+                .register(meterRegistry);
+        convertBatchTimer = Timer.builder("controller.convert.batch.timer")
+                .description("Time taken with a call to batch convert endpoint")
+                .publishPercentiles(0.5, 0.75, 0.95, 0.99).tag("endpoint", "convert-batch")
+                .register(meterRegistry);
+        convertStreamTimer = Timer.builder("controller.convert.stream.timer")
+                .description("Time taken with a call to stream convert endpoint")
+                .publishPercentiles(0.5, 0.75, 0.95, 0.99).tag("endpoint", "convert-stream")
+                .register(meterRegistry);
+        convertStreamRowCounter = Counter.builder("controller.convert.stream.row.counter")
+                .description("Number of rows converted with calls to stream convert endpoint")
+                .tag("endpoint", "convert-stream").register(meterRegistry);
         convertFailCounter = Counter.builder("controller.convert.fail.counter")
                 .description("Number of failed calls to convert endpoint")
                 .tag("endpoint", "convert").register(meterRegistry);
     }
 
     /**
-     * HTTP GET endpoint that converts the given double value from one currency to another 
+     * HTTP GET endpoint that converts the given decimal value from one currency to another 
      * with the current exchange rate retrieved from an external API. Client-side HTTP caching is disabled, 
-     * instead always return the latest data and use the internal cache if available.
+     * instead always return the latest data and use the internal cache if available. If a past date is given, the
+     * value is converted with the exchange rate of that date from the historical rates store instead. The request is
+     * rejected without converting if the concurrency limit of its path has been reached.
      *
      * @param source the currency to convert from as a three-letter currency code string
      * @param target the currency to convert to as a three-letter currency code string
-     * @param value  the value to convert as a double
-     * @return the converted value as a localized currency string
+     * @param value  the value to convert as a decimal string
+     * @param date   the optional past date of the exchange rate as an ISO date string
+     * @return the converted value as a localized currency string, flagged as stale with the age of the currency rate
+     *         if the rate is stale
      */
     @GetMapping(value = "/convert", produces = MediaType.APPLICATION_JSON_VALUE)
-    SuccessResponseDTO<String> convert(@RequestParam String source, @RequestParam String target,
-            @RequestParam double value) throws Exception {
-        logger.debug("Received request for conversion from {} to {} with value {}", source, target,
-                value);
-        String result =
-                convertTimer.recordCallable(() -> conversionService.convert(source, target, value));
+    SuccessResponseDTO<ConversionResultDTO> convert(@RequestParam String source, @RequestParam String target,
+            @RequestParam String value,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date)
+            throws Exception {
+        logger.debug("Received request for conversion from {} to {} with value {} on {}", source,
+                target, value, date);
+        ConversionResultDTO result = conversionLimiter.call(conversionLimiter.route(date),
+                () -> convertTimer.recordCallable(() -> date != null
+                        ? conversionService.convert(source, target, value, date)
+                        : conversionService.convert(source, target, value)));
         logger.debug("Finished response for conversion request, result: {}", result);
         return new SuccessResponseDTO<>(result);
     }
 
-    @ExceptionHandler({InvalidCurrencyException.class, MethodArgumentTypeMismatchException.class})
+    /**
+     * HTTP GET endpoint that converts one value from a currency to many currencies with the same exchange rates, e.g.
+     * a price in all the currencies of a price table, without a request for each currency. The targets are converted
+     * to in the given order, and a request without targets is converted to all supported currencies. The number of
+     * targets is limited like the size of a batch. The request is rejected without converting if the limit of
+     * concurrent bulk requests has been reached.
+     *
+     * @param source    the currency to convert from as a three-letter currency code string
+     * @param value     the value to convert as a decimal string
+     * @param targets   the optional currencies to convert to as comma-separated three-letter currency codes
+     * @param localized whether to return the converted values as localized currency strings, which is the default,
+     *                  or as plain decimal strings
+     * @return the converted values keyed by target currency code, flagged as stale with the age of the currency rates
+     *         if the rates are stale
+     */
+    @GetMapping(value = "/convert/many", produces = MediaType.APPLICATION_JSON_VALUE)
+    SuccessResponseDTO<MultiConversionResultDTO> convertToMany(@RequestParam String source,
+            @RequestParam String value, @RequestParam(required = false) List<String> targets,
+            @RequestParam(defaultValue = "true") boolean localized) throws Exception {
+        logger.debug("Received request for conversion from {} to {} with value {}", source,
+                targets != null ? targets : "all currencies", value);
+        if (targets != null && targets.size() > batchMaxSize) {
+            throw new InvalidRequestException(
+                    "Number of targets exceeds the maximum of " + batchMaxSize + " currencies");
+        }
+        MultiConversionResultDTO result = conversionLimiter.callBulk(conversionLimiter.route((LocalDate) null),
+                () -> convertManyTimer.recordCallable(
+                        () -> conversionService.convertToMany(source, value, targets, localized)));
+        logger.debug("Finished response for multi-target conversion request with {} results",
+                result.results().size());
+        return new SuccessResponseDTO<>(result);
+    }
+
+    /**
+     * HTTP POST endpoint that converts a batch of values in one request with the same exchange rates for all of
+     * them. Each conversion in the batch is validated separately, so an invalid conversion results in a fail entry
+     * in its position instead of failing the whole batch. The request is rejected without converting if the limit of
+     * concurrent bulk requests has been reached.
+     *
+     * @param conversionRequests the conversions as an array of objects with the fields source, target and value,
+     *        and optionally date
+     * @return the JSend formatted results of the conversions in the order of the requests
+     */
+    @PostMapping(value = "/convert/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    SuccessResponseDTO<List<ResponseDTO<?>>> convertBatch(
+            @RequestBody List<ConversionRequestDTO> conversionRequests) throws Exception {
+        logger.debug("Received request for batch conversion of {} values",
+                conversionRequests.size());
+        if (conversionRequests.size() > batchMaxSize) {
+            throw new InvalidRequestException(
+                    "Batch size exceeds the maximum of " + batchMaxSize + " conversions");
+        }
+        ConversionLimiter.Route route = conversionLimiter
+                .route(conversionRequests.stream().map(ConversionRequestDTO::date).toList());
+        List<ResponseDTO<?>> results = conversionLimiter.callBulk(route, () -> convertBatchTimer
+                .recordCallable(() -> conversionService.convertAll(conversionRequests)));
+        logger.debug("Finished response for batch conversion request");
+        return new SuccessResponseDTO<>(results);
+    }
+
+    /**
+     * HTTP POST endpoint that converts a stream of rows in CSV or NDJSON format from the request body and streams
+     * the converted rows to the response in the same format as soon as each row has been read, so that the memory
+     * use is constant regardless of the size of the stream. All rows are converted with the same exchange rates and
+     * each invalid row results in a fail row in its position. The request is rejected without converting if the
+     * limit of concurrent bulk requests has been reached.
+     *
+     * @param request the request with the rows in its body as CSV with the columns source, target and value, or as
+     *        NDJSON objects with the fields source, target and value, both with an optional date
+     * @param response the response to write the converted rows to
+     */
+    @PostMapping(value = "/convert/stream",
+            consumes = {TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    void convertStream(HttpServletRequest request, HttpServletResponse response)
+            throws Exception {
+        MediaType contentType = MediaType.parseMediaType(request.getContentType());
+        StreamingConversionService.Format format =
+                MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)
+                        ? StreamingConversionService.Format.NDJSON
+                        : StreamingConversionService.Format.CSV;
+        logger.debug("Received request for stream conversion in {} format", format);
+        if (request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        }
+        response.setContentType(format == StreamingConversionService.Format.NDJSON
+                ? MediaType.APPLICATION_NDJSON_VALUE
+                : TEXT_CSV_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        // Rows with dates that have not been stored yet are limited separately as they are read
+        long rows = conversionLimiter.callBulk(conversionLimiter.route((LocalDate) null),
+                () -> convertStreamTimer.recordCallable(() -> streamingConversionService
+                        .convert(request.getReader(), response.getWriter(), format)));
+        convertStreamRowCounter.increment(rows);
+        logger.debug("Finished response for stream conversion request with {} rows", rows);
+    }
+
+    /**
+     * HTTP GET endpoint that streams the rates of the given currency pairs as server-sent events, instead of clients
+     * polling the convert endpoint for changed rates. The first {@code rates} event has the current rates of all the
+     * pairs, and each following event has only the pairs whose rate has changed after the rates were refreshed. The
+     * stream is closed after the timeout defined in the application properties, after which clients reconnect.
+     *
+     * @param pairs the currency pairs to subscribe to as comma-separated {@code SOURCE/TARGET} strings
+     * @return the emitter of the rate update events
+     */
+    @GetMapping(value = "/rates/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamRates(@RequestParam List<String> pairs) throws Exception {
+        logger.debug("Received subscription to rate updates of {}", pairs);
+        SseEmitter emitter = new SseEmitter(rateUpdatesTimeout.toMillis());
+        RateUpdateService.Subscription subscription = rateUpdateService.subscribe(pairs,
+                update -> emitter.send(SseEmitter.event().name("rates").data(update, MediaType.APPLICATION_JSON)));
+        emitter.onCompletion(subscription::cancel);
+        emitter.onError(e -> subscription.cancel());
+        return emitter;
+    }
+
+    @ExceptionHandler({InvalidCurrencyException.class, InvalidRequestException.class,
+            MethodArgumentTypeMismatchException.class, HttpMessageNotReadableException.class})
     ResponseEntity<FailResponseDTO> handleInvalidRequestParameterException(Exception e) {
         logger.warn("Received invalid request parameter: {}", e.getMessage());
         convertFailCounter.increment();
@@ -92,6 +286,23 @@ public class ConversionController {
         return getErrorResponse(e);
     }
 
+    @ExceptionHandler(StaleCurrencyRateException.class)
+    ResponseEntity<ErrorResponseDTO> handleStaleCurrencyRateException(
+            StaleCurrencyRateException e) {
+        logger.warn("Could not serve currency rates that exceed the maximum staleness: {}",
+                e.getMessage());
+        convertFailCounter.increment();
+        return getErrorResponse(e, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(OverloadedException.class)
+    ResponseEntity<ErrorResponseDTO> handleOverloadedException(OverloadedException e) {
+        // Logged at debug level only, so that logging does not add to the load while shedding it
+        logger.debug("Rejected conversion request over the concurrency limit: {}", e.getMessage());
+        convertFailCounter.increment();
+        return getErrorResponse(e, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(Exception.class)
     ResponseEntity<ErrorResponseDTO> handleGenericException(Exception e) {
         logger.error("Unexpected error occurred: {}", e.getMessage());
@@ -102,7 +313,7 @@ public class ConversionController {
     /*
      * Return JSend formatted error response with status code 400 indicating an invalid request
      */
-    private static ResponseEntity<FailResponseDTO> getFailResponse(Exception e) {
+    static ResponseEntity<FailResponseDTO> getFailResponse(Exception e) {
         HttpStatus status = HttpStatus.BAD_REQUEST;
         return ResponseEntity.status(status).body(new FailResponseDTO(e.getMessage()));
     }
@@ -110,10 +321,18 @@ public class ConversionController {
     /*
      * Return JSend formatted error response with status code 500 indicating an internal server error
      */
-    private static ResponseEntity<ErrorResponseDTO> getErrorResponse(Exception e) {
-        HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
+    static ResponseEntity<ErrorResponseDTO> getErrorResponse(Exception e) {
+        return getErrorResponse(e, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    /*
+     * Return JSend formatted error response with the given server error status code
+     */
+    static ResponseEntity<ErrorResponseDTO> getErrorResponse(Exception e,
+            HttpStatus status) {
         Map<String, Object> data = null;
-        if (e instanceof ExternalApiException externalApiException) {
+        if (e instanceof ExternalApiException externalApiException
+                && externalApiException.getClientResponseException() != null) {
             // Parse the response body from the exception as JSON
             String responseBody =
                     externalApiException.getClientResponseException().getResponseBodyAsString();
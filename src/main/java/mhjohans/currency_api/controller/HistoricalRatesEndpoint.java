@@ -0,0 +1,67 @@
+package mhjohans.currency_api.controller;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.services.HistoricalRateService;
+import mhjohans.currency_api.services.HistoricalRateStore;
+
+/**
+ * Actuator endpoint for managing the historical rates store, available in both web stacks at
+ * {@code /actuator/historicalrates}.
+ */
+@Component
+@Endpoint(id = "historicalrates")
+public class HistoricalRatesEndpoint {
+
+    private final HistoricalRateService historicalRateService;
+
+    private final HistoricalRateStore historicalRateStore;
+
+    /**
+     * Range of dates that can be stored and the base currency of the stored quotes.
+     *
+     * @param baseCurrency the base currency, or null if nothing has been stored yet
+     * @param startDate the first date that can be stored
+     * @param endDate the last date that can be stored
+     */
+    public record HistoricalRatesDescriptor(String baseCurrency, LocalDate startDate,
+            LocalDate endDate) {
+    }
+
+    HistoricalRatesEndpoint(HistoricalRateService historicalRateService,
+            HistoricalRateStore historicalRateStore) {
+        this.historicalRateService = historicalRateService;
+        this.historicalRateStore = historicalRateStore;
+    }
+
+    @ReadOperation
+    public HistoricalRatesDescriptor historicalRates() {
+        return new HistoricalRatesDescriptor(historicalRateStore.getBaseCurrency(),
+                historicalRateStore.getStartDate(), historicalRateStore.getEndDate());
+    }
+
+    /**
+     * Backfills the historical rates store with the currency rates of a range of past dates from the external API.
+     *
+     * @param from the first date of the range as an ISO date string
+     * @param to the last date of the range as an ISO date string, inclusive
+     * @return the number of dates retrieved from the external API and skipped because they had already been stored
+     */
+    @WriteOperation
+    public HistoricalRateService.BackfillResult backfill(String from, String to)
+            throws ExternalApiException {
+        try {
+            return historicalRateService.backfill(LocalDate.parse(from), LocalDate.parse(to));
+        } catch (DateTimeParseException | InvalidRequestException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+}
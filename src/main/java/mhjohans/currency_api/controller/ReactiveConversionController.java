@@ -0,0 +1,147 @@
+package mhjohans.currency_api.controller;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.SuccessResponseDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.ConversionLimiter;
+import mhjohans.currency_api.services.ReactiveConversionService;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking variant of the convert endpoint of {@link ConversionController} that is used instead of it when the
+ * application is started with the reactive web stack. The endpoint has the same path, parameters and JSend responses.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/${spring.application.name}")
+public class ReactiveConversionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveConversionController.class);
+
+    private final ReactiveConversionService reactiveConversionService;
+
+    private final ConversionLimiter conversionLimiter;
+
+    private final MeterRegistry meterRegistry;
+
+    private Timer convertTimer;
+
+    private Counter convertFailCounter;
+
+    ReactiveConversionController(ReactiveConversionService reactiveConversionService,
+            ConversionLimiter conversionLimiter, MeterRegistry meterRegistry) {
+        this.reactiveConversionService = reactiveConversionService;
+        this.conversionLimiter = conversionLimiter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    private void initMetrics() {
+        convertTimer = Timer.builder("controller.convert.timer")
+                .description("Time taken with a call to convert endpoint")
+                .publishPercentiles(0.5, 0.75, 0.95, 0.99).tag("endpoint", "convert")
+                .register(meterRegistry);
+        convertFailCounter = Counter.builder("controller.convert.fail.counter")
+                .description("Number of failed calls to convert endpoint")
+                .tag("endpoint", "convert").register(meterRegistry);
+    }
+
+    /**
+     * HTTP GET endpoint that converts the given decimal value from one currency to another with the current exchange
+     * rate without blocking the event loop thread handling the request, or with the exchange rate of a past date. The
+     * request is rejected without converting if the concurrency limit of its path has been reached.
+     *
+     * @param source the currency to convert from as a three-letter currency code string
+     * @param target the currency to convert to as a three-letter currency code string
+     * @param value  the value to convert as a decimal string
+     * @param date   the optional past date of the exchange rate as an ISO date string
+     * @param exchange the exchange of the request, which provides the locale to format the converted value with
+     * @return the converted value as a localized currency string, flagged as stale with the age of the currency rate
+     *         if the rate is stale
+     */
+    @GetMapping(value = "/convert", produces = MediaType.APPLICATION_JSON_VALUE)
+    Mono<SuccessResponseDTO<ConversionResultDTO>> convert(@RequestParam String source,
+            @RequestParam String target, @RequestParam String value,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            ServerWebExchange exchange) {
+        logger.debug("Received request for conversion from {} to {} with value {} on {}", source,
+                target, value, date);
+        LocaleContext localeContext = exchange.getLocaleContext();
+        Locale locale = localeContext.getLocale() != null ? localeContext.getLocale()
+                : Locale.getDefault();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return conversionLimiter.call(conversionLimiter.route(date),
+                reactiveConversionService.convert(source, target, value, date, locale))
+                .doOnTerminate(() -> sample.stop(convertTimer))
+                .doOnNext(result -> logger
+                        .debug("Finished response for conversion request, result: {}", result))
+                .map(SuccessResponseDTO::new);
+    }
+
+    @ExceptionHandler({InvalidCurrencyException.class, InvalidRequestException.class,
+            ServerWebInputException.class})
+    ResponseEntity<FailResponseDTO> handleInvalidRequestParameterException(Exception e) {
+        logger.warn("Received invalid request parameter: {}", e.getMessage());
+        convertFailCounter.increment();
+        return ConversionController.getFailResponse(e);
+    }
+
+    @ExceptionHandler(ExternalApiException.class)
+    ResponseEntity<ErrorResponseDTO> handleExternalApiException(ExternalApiException e) {
+        logger.warn("Could not get a valid response from external currency rate API: {}",
+                e.getMessage());
+        convertFailCounter.increment();
+        return ConversionController.getErrorResponse(e);
+    }
+
+    @ExceptionHandler(StaleCurrencyRateException.class)
+    ResponseEntity<ErrorResponseDTO> handleStaleCurrencyRateException(
+            StaleCurrencyRateException e) {
+        logger.warn("Could not serve currency rates that exceed the maximum staleness: {}",
+                e.getMessage());
+        convertFailCounter.increment();
+        return ConversionController.getErrorResponse(e, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(OverloadedException.class)
+    ResponseEntity<ErrorResponseDTO> handleOverloadedException(OverloadedException e) {
+        logger.debug("Rejected conversion request over the concurrency limit: {}", e.getMessage());
+        convertFailCounter.increment();
+        return ConversionController.getErrorResponse(e, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(Exception.class)
+    ResponseEntity<ErrorResponseDTO> handleGenericException(Exception e) {
+        logger.error("Unexpected error occurred: {}", e.getMessage());
+        convertFailCounter.increment();
+        return ConversionController.getErrorResponse(e);
+    }
+
+}
@@ -0,0 +1,17 @@
+package mhjohans.currency_api.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Request to convert a value from the source currency to the target currency, used in batch conversions. The value is
+ * converted with the currency rate of the optional date instead of the current currency rate if the date is given.
+ * The value is a decimal string, and a JSON number is read as its decimal text, so that it is converted exactly as
+ * written.
+ */
+public record ConversionRequestDTO(String source, String target, String value, LocalDate date) {
+
+    public ConversionRequestDTO(String source, String target, String value) {
+        this(source, target, value, null);
+    }
+
+}
@@ -0,0 +1,21 @@
+package mhjohans.currency_api.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Result of a currency conversion. If the conversion used a stale currency rate, the result is flagged as stale and
+ * the age of the rate is included in seconds. Results are written with {@link ConversionResultDTOSerializer} instead
+ * of reflectively.
+ */
+@JsonSerialize(using = ConversionResultDTOSerializer.class)
+public record ConversionResultDTO(String result,
+                @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean stale,
+                @JsonProperty("rate_age_seconds") @JsonInclude(JsonInclude.Include.NON_NULL) Long rateAgeSeconds) {
+
+        public ConversionResultDTO(String result) {
+                this(result, false, null);
+        }
+
+}
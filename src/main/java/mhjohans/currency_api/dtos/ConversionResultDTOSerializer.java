@@ -0,0 +1,53 @@
+package mhjohans.currency_api.dtos;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Writes a {@link ConversionResultDTO} directly to the generator with pre-encoded field names, with the same output
+ * as its reflective serialization: the stale flag is left out unless set and the rate age is left out when absent.
+ */
+public final class ConversionResultDTOSerializer extends StdSerializer<ConversionResultDTO> {
+
+    private static final SerializedString RESULT = new SerializedString("result");
+
+    private static final SerializedString STALE = new SerializedString("stale");
+
+    private static final SerializedString RATE_AGE_SECONDS = new SerializedString("rate_age_seconds");
+
+    public ConversionResultDTOSerializer() {
+        super(ConversionResultDTO.class);
+    }
+
+    @Override
+    public void serialize(ConversionResultDTO value, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        write(value, generator);
+    }
+
+    /**
+     * Writes a conversion result as a JSON object.
+     *
+     * @param value the conversion result
+     * @param generator the generator to write to
+     * @throws IOException if writing to the generator fails
+     */
+    public static void write(ConversionResultDTO value, JsonGenerator generator) throws IOException {
+        generator.writeStartObject(value);
+        generator.writeFieldName(RESULT);
+        generator.writeString(value.result());
+        if (value.stale()) {
+            generator.writeFieldName(STALE);
+            generator.writeBoolean(true);
+        }
+        if (value.rateAgeSeconds() != null) {
+            generator.writeFieldName(RATE_AGE_SECONDS);
+            generator.writeNumber(value.rateAgeSeconds().longValue());
+        }
+        generator.writeEndObject();
+    }
+
+}
@@ -0,0 +1,10 @@
+package mhjohans.currency_api.dtos;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Rates of all currencies against the base currency as returned by the Frankfurter API.
+ */
+public record FrankfurterRatesDTO(double amount, String base, LocalDate date, Map<String, Double> rates) {
+}
@@ -0,0 +1,21 @@
+package mhjohans.currency_api.dtos;
+
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Result of converting one value to many currencies with the same currency rates. The converted values are keyed by
+ * the target currency code in the order of the targets, either as localized currency strings or as plain decimal
+ * strings. If the conversion used stale currency rates, the result is flagged as stale and the age of the rates is
+ * included in seconds.
+ */
+public record MultiConversionResultDTO(Map<String, String> results,
+                @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean stale,
+                @JsonProperty("rate_age_seconds") @JsonInclude(JsonInclude.Include.NON_NULL) Long rateAgeSeconds) {
+
+        public MultiConversionResultDTO(Map<String, String> results) {
+                this(results, false, null);
+        }
+
+}
@@ -0,0 +1,16 @@
+package mhjohans.currency_api.dtos;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Update of the currency rates of subscribed currency pairs. The rates are keyed by currency pair as
+ * {@code SOURCE/TARGET}, e.g. {@code USD/EUR} for the value of one US dollar in euros, and only include the pairs
+ * whose rate has changed since the previous update, apart from the first update of a subscription that includes all
+ * the pairs. The date and the timestamp are those of the rates.
+ */
+public record RateUpdateDTO(Map<String, BigDecimal> rates, LocalDate date, Instant timestamp) {
+
+}
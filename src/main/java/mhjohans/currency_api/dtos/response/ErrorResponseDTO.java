@@ -9,18 +9,18 @@ public class ErrorResponseDTO extends ResponseDTO<Map<String, Object>> {
     private final String message;
 
     @JsonInclude(JsonInclude.Include.NON_ABSENT)
-    private final Optional<Integer> code;
+    private final Integer code;
 
     public ErrorResponseDTO(String message) {
         super(Status.ERROR, null);
         this.message = message;
-        this.code = Optional.empty();
+        this.code = null;
     }
 
     public ErrorResponseDTO(String message, int code, Map<String, Object> data) {
         super(Status.ERROR, data);
         this.message = message;
-        this.code = Optional.of(code);
+        this.code = code;
     }
 
     public String getMessage() {
@@ -28,6 +28,15 @@ public class ErrorResponseDTO extends ResponseDTO<Map<String, Object>> {
     }
 
     public Optional<Integer> getCode() {
+        return Optional.ofNullable(code);
+    }
+
+    /**
+     * Returns the code without wrapping it, for serializing it without an allocation.
+     *
+     * @return the code, or null if there is none
+     */
+    Integer getCodeOrNull() {
         return code;
     }
 
@@ -3,10 +3,13 @@ package mhjohans.currency_api.dtos.response;
 import java.util.Optional;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 /**
- * Data Transfer Object (DTO) in JSend format for responses from the API.
+ * Data Transfer Object (DTO) in JSend format for responses from the API. Responses are written with
+ * {@link ResponseDTOSerializer} instead of reflectively.
  */
+@JsonSerialize(using = ResponseDTOSerializer.class)
 public abstract class ResponseDTO<T> {
 
     public enum Status {
@@ -19,19 +22,28 @@ public abstract class ResponseDTO<T> {
     private final Status status;
 
     @JsonInclude(JsonInclude.Include.NON_ABSENT)
-    private final Optional<T> data;
+    private final T data;
 
     protected ResponseDTO(Status status, T data) {
         this.status = status;
-        this.data = Optional.ofNullable(data);
+        this.data = data;
     }
 
     public Optional<T> getData() {
-        return data;
+        return Optional.ofNullable(data);
     }
 
     public Status getStatus() {
         return status;
     }
 
+    /**
+     * Returns the data without wrapping it, for serializing it without an allocation.
+     *
+     * @return the data, or null if there is none
+     */
+    T getDataOrNull() {
+        return data;
+    }
+
 }
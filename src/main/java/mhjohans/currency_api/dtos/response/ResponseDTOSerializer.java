@@ -0,0 +1,74 @@
+package mhjohans.currency_api.dtos.response;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTOSerializer;
+
+/**
+ * Writes the JSend success, fail and error envelopes directly to the generator, with the same output as the
+ * reflective serialization of {@link ResponseDTO} and its subclasses: the fields status, data, message and code in
+ * that order, with data and code left out when absent.
+ * <p>
+ * The field names and status values are pre-encoded once and copied to the output buffer of the generator as is,
+ * and conversion results and fail reasons are written without looking up their serializers. Any other data, e.g. a
+ * list of batch results or the data of an error, is written with the serializer of its type. The output follows the
+ * configuration of the generator, so pretty printing and character escaping are applied as before.
+ */
+public final class ResponseDTOSerializer extends StdSerializer<ResponseDTO<?>> {
+
+    private static final SerializedString STATUS = new SerializedString("status");
+
+    private static final SerializedString DATA = new SerializedString("data");
+
+    private static final SerializedString MESSAGE = new SerializedString("message");
+
+    private static final SerializedString CODE = new SerializedString("code");
+
+    private static final SerializedString SUCCESS = new SerializedString("success");
+
+    private static final SerializedString FAIL = new SerializedString("fail");
+
+    private static final SerializedString ERROR = new SerializedString("error");
+
+    public ResponseDTOSerializer() {
+        super(ResponseDTO.class, false);
+    }
+
+    @Override
+    public void serialize(ResponseDTO<?> value, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        generator.writeStartObject(value);
+        generator.writeFieldName(STATUS);
+        generator.writeString(switch (value.getStatus()) {
+            case SUCCESS -> SUCCESS;
+            case FAIL -> FAIL;
+            case ERROR -> ERROR;
+        });
+        Object data = value.getDataOrNull();
+        if (data != null) {
+            generator.writeFieldName(DATA);
+            if (data instanceof ConversionResultDTO conversionResult) {
+                ConversionResultDTOSerializer.write(conversionResult, generator);
+            } else if (data instanceof String reason) {
+                generator.writeString(reason);
+            } else {
+                provider.defaultSerializeValue(data, generator);
+            }
+        }
+        if (value instanceof ErrorResponseDTO errorResponse) {
+            generator.writeFieldName(MESSAGE);
+            generator.writeString(errorResponse.getMessage());
+            Integer code = errorResponse.getCodeOrNull();
+            if (code != null) {
+                generator.writeFieldName(CODE);
+                generator.writeNumber(code.intValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+}
@@ -15,6 +15,16 @@ public class ExternalApiException extends Exception {
         this.clientResponseException = clientResponseException;
     }
 
+    public ExternalApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.clientResponseException = null;
+    }
+
+    /**
+     * Returns the error response of the external API.
+     *
+     * @return the error response, or null if the external API could not be reached or is not an HTTP API
+     */
     public RestClientResponseException getClientResponseException() {
         return clientResponseException;
     }
@@ -0,0 +1,12 @@
+package mhjohans.currency_api.exceptions;
+
+/*
+ * Exception that is thrown when the request is invalid for other reasons than an invalid currency code
+ */
+public class InvalidRequestException extends Exception {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,13 @@
+package mhjohans.currency_api.exceptions;
+
+/*
+ * Exception thrown when a request is rejected because the number of concurrent requests has reached the adaptive
+ * concurrency limit of their path
+ */
+public class OverloadedException extends Exception {
+
+    public OverloadedException(String message) {
+        super(message, null, false, false);
+    }
+
+}
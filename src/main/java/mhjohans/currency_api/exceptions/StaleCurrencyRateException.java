@@ -0,0 +1,13 @@
+package mhjohans.currency_api.exceptions;
+
+/*
+ * Exception thrown when the available currency rates are older than the maximum allowed staleness and they cannot be
+ * refreshed from the external currency rate API
+ */
+public class StaleCurrencyRateException extends Exception {
+
+    public StaleCurrencyRateException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,167 @@
+package mhjohans.currency_api.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Limits the number of concurrent calls with a limit that adapts to the measured latency, so that calls beyond what
+ * the downstream can handle are rejected immediately instead of queueing up behind slow calls.
+ * <p>
+ * The limit follows the gradient between the long-term average latency and the latest latency: while the latency
+ * stays near its long-term average the limit grows by a small headroom, and when the latency rises the limit shrinks
+ * in proportion to the rise, by at most half at a time. Calls that fail because the downstream failed shrink the limit
+ * by a fixed backoff ratio. The headroom is only added while at least half of the limit is in use, so an idle limiter
+ * does not grow without bound, while a rise in latency shrinks the limit at any utilisation. The long-term average slowly follows a lasting change in latency, so that the limit recovers
+ * after the downstream has recovered.
+ * <p>
+ * Acquiring a permit is a single compare-and-set, and the limit is updated by at most one releasing thread at a time
+ * while the samples of the other threads are skipped, so the limiter stays cheap on fast paths. The limit, the number
+ * of calls in flight and the number of rejected calls are published as meters tagged with the name of the limiter.
+ */
+public final class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double rttTolerance;
+
+    private final double smoothing;
+
+    private final double longRttFactor;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    private final Counter rejectedCounter;
+
+    private volatile double limit;
+
+    // Guarded by the update lock
+    private double longRtt;
+
+    /**
+     * Creates a limiter and registers its meters.
+     *
+     * @param name the name of the limiter
+     * @param initialLimit the limit before any latency has been measured
+     * @param minLimit the lower bound of the limit
+     * @param maxLimit the upper bound of the limit
+     * @param rttTolerance the ratio of the latest to the long-term average latency that is tolerated without
+     *        shrinking the limit
+     * @param smoothing the weight of a new limit against the previous limit
+     * @param longWindow the number of samples the long-term average latency is averaged over
+     * @param meterRegistry the registry to register the meters in
+     */
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+            double rttTolerance, double smoothing, int longWindow, MeterRegistry meterRegistry) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.smoothing = smoothing;
+        this.longRttFactor = 2.0 / (longWindow + 1);
+        Gauge.builder("service.concurrency.limit.gauge", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current concurrency limit").tag("limiter", name).register(meterRegistry);
+        Gauge.builder("service.concurrency.in.flight.gauge", inFlight, AtomicInteger::get)
+                .description("Number of calls in flight").tag("limiter", name).register(meterRegistry);
+        this.rejectedCounter = Counter.builder("service.concurrency.rejected.counter")
+                .description("Number of calls rejected over the concurrency limit").tag("limiter", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Acquires a permit for a call unless the limit has been reached. A successful acquire must be followed by
+     * exactly one call to {@link #release(long, boolean)} or {@link #ignore()}.
+     *
+     * @return true if the permit was acquired, false if the call should be rejected
+     */
+    public boolean tryAcquire() {
+        int currentLimit = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= currentLimit) {
+                rejectedCounter.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases the permit of a completed call and updates the limit with its latency.
+     *
+     * @param rttNanos the latency of the call in nanoseconds
+     * @param dropped true if the call failed because the downstream failed or timed out
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int current = inFlight.getAndDecrement();
+        if (updateLock.tryLock()) {
+            try {
+                update(rttNanos, current, dropped);
+            } finally {
+                updateLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Releases the permit of a call without updating the limit, e.g. a call that was cancelled or failed for reasons
+     * unrelated to the downstream.
+     */
+    public void ignore() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Returns the current limit.
+     *
+     * @return the maximum number of concurrent calls
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Returns the number of calls in flight.
+     *
+     * @return the number of acquired permits not released yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void update(long rttNanos, int inFlightAtRelease, boolean dropped) {
+        double rtt = Math.max(rttNanos, 1);
+        double currentLimit = limit;
+        if (dropped) {
+            limit = Math.max(minLimit, currentLimit * BACKOFF_RATIO);
+            return;
+        }
+        if (longRtt == 0) {
+            longRtt = rtt;
+        }
+        longRtt += (rtt - longRtt) * longRttFactor;
+        // Follow a lasting drop in latency faster, so that the limit is not held back by an outdated average
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, rttTolerance * longRtt / rtt));
+        // Do not grow the limit while most of it is unused, but still shrink it when the latency rises
+        double headroom = inFlightAtRelease < currentLimit / 2 ? 0 : Math.sqrt(currentLimit);
+        double newLimit = currentLimit * gradient + headroom;
+        newLimit = currentLimit * (1 - smoothing) + newLimit * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+}
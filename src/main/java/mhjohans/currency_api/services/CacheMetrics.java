@@ -0,0 +1,97 @@
+package mhjohans.currency_api.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of an in-memory cache, all tagged with the name of the cache: the number of lookups by whether they hit a
+ * fresh value, a stale value or missed, the time taken to load the value by result, the number of cached entries and
+ * the age of the cached value.
+ */
+final class CacheMetrics {
+
+    private final Counter hitCounter;
+
+    private final Counter staleCounter;
+
+    private final Counter missCounter;
+
+    private final Timer successTimer;
+
+    private final Timer failureTimer;
+
+    /**
+     * Registers the meters of a cache.
+     *
+     * @param <T> the type of the cache
+     * @param name the name of the cache
+     * @param cache the cache, which is only weakly referenced by the gauges
+     * @param entries the function returning the number of cached entries
+     * @param ageSeconds the function returning the age of the cached value in seconds, or NaN if nothing is cached
+     * @param meterRegistry the registry to register the meters in
+     */
+    <T> CacheMetrics(String name, T cache, ToDoubleFunction<T> entries, ToDoubleFunction<T> ageSeconds,
+            MeterRegistry meterRegistry) {
+        hitCounter = createCounter(name, "hit", meterRegistry);
+        staleCounter = createCounter(name, "stale", meterRegistry);
+        missCounter = createCounter(name, "miss", meterRegistry);
+        successTimer = createTimer(name, "success", meterRegistry);
+        failureTimer = createTimer(name, "failure", meterRegistry);
+        Gauge.builder("service.cache.entries.gauge", cache, entries)
+                .description("Number of entries in the cache").tag("cache", name).register(meterRegistry);
+        Gauge.builder("service.cache.age.gauge", cache, ageSeconds)
+                .description("Age of the cached value in seconds").tag("cache", name).baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    void hit() {
+        hitCounter.increment();
+    }
+
+    void stale() {
+        staleCounter.increment();
+    }
+
+    void miss() {
+        missCounter.increment();
+    }
+
+    /**
+     * Runs a load of the cached value and records the time taken by its result.
+     *
+     * @param <V> the type of the loaded value
+     * @param <E> the type of the exception thrown if the load fails
+     * @param loader the loader to run
+     * @return the loaded value
+     * @throws E if the load fails
+     */
+    <V, E extends Exception> V recordLoad(SingleFlightLoader.Loader<V, E> loader) throws E {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            V value = loader.load();
+            success = true;
+            return value;
+        } finally {
+            (success ? successTimer : failureTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Counter createCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("service.cache.access.counter")
+                .description("Number of cache lookups by whether they hit a fresh or stale value or missed")
+                .tag("cache", name).tag("result", result).register(meterRegistry);
+    }
+
+    private static Timer createTimer(String name, String result, MeterRegistry meterRegistry) {
+        return Timer.builder("service.cache.load.timer")
+                .description("Time taken to load the cached value from the external API")
+                .publishPercentiles(0.5, 0.95, 0.99).publishPercentileHistogram()
+                .tag("cache", name).tag("result", result).register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,241 @@
+package mhjohans.currency_api.services;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sheds the conversion requests that exceed the concurrency the service can currently handle, before any work is
+ * done for them.
+ * <p>
+ * Requests are limited on two separate paths with their own {@link AdaptiveConcurrencyLimiter}: requests served from
+ * the cached rates and requests that have to wait for the external API, because the rate snapshot or the supported
+ * currencies have to be loaded or the rates of a past date have not been stored yet. The latency of the external API
+ * is orders of magnitude higher and fails independently of the service, so a slow external API only shrinks the
+ * limit of the upstream path and requests served from the cache are not rejected because of it.
+ * <p>
+ * Bulk requests, such as batches, multi-target conversions and streams, take time in proportion to their number of
+ * items rather than to the load of the service, so their latency would shrink the limits of the single conversions.
+ * They are instead limited by a fixed number of concurrent bulk requests and never update the adaptive limits with
+ * their latency. Only those that have to wait for the external API additionally hold a permit of the upstream path.
+ */
+@Service
+public class ConversionLimiter {
+
+    /**
+     * The path of a request by whether it is served from the cache or has to wait for the external API.
+     */
+    public enum Route {
+        CACHED, UPSTREAM
+    }
+
+    private final RateSnapshotService rateSnapshotService;
+
+    private final SupportedCurrenciesService supportedCurrenciesService;
+
+    private final HistoricalRateService historicalRateService;
+
+    private final AdaptiveConcurrencyLimiter cachedLimiter;
+
+    private final AdaptiveConcurrencyLimiter upstreamLimiter;
+
+    private final AdaptiveConcurrencyLimiter bulkLimiter;
+
+    ConversionLimiter(RateSnapshotService rateSnapshotService,
+            SupportedCurrenciesService supportedCurrenciesService, HistoricalRateService historicalRateService,
+            @Value("${conversion.concurrency.cached.initial-limit}") int cachedInitialLimit,
+            @Value("${conversion.concurrency.cached.min-limit}") int cachedMinLimit,
+            @Value("${conversion.concurrency.cached.max-limit}") int cachedMaxLimit,
+            @Value("${conversion.concurrency.upstream.initial-limit}") int upstreamInitialLimit,
+            @Value("${conversion.concurrency.upstream.min-limit}") int upstreamMinLimit,
+            @Value("${conversion.concurrency.upstream.max-limit}") int upstreamMaxLimit,
+            @Value("${conversion.concurrency.bulk.limit}") int bulkLimit,
+            @Value("${conversion.concurrency.rtt-tolerance}") double rttTolerance,
+            @Value("${conversion.concurrency.smoothing}") double smoothing,
+            @Value("${conversion.concurrency.long-window}") int longWindow, MeterRegistry meterRegistry) {
+        this.rateSnapshotService = rateSnapshotService;
+        this.supportedCurrenciesService = supportedCurrenciesService;
+        this.historicalRateService = historicalRateService;
+        this.cachedLimiter = new AdaptiveConcurrencyLimiter("cached", cachedInitialLimit, cachedMinLimit,
+                cachedMaxLimit, rttTolerance, smoothing, longWindow, meterRegistry);
+        this.upstreamLimiter = new AdaptiveConcurrencyLimiter("upstream", upstreamInitialLimit, upstreamMinLimit,
+                upstreamMaxLimit, rttTolerance, smoothing, longWindow, meterRegistry);
+        // The bulk limit never adapts, as it is never updated with a latency sample
+        this.bulkLimiter = new AdaptiveConcurrencyLimiter("bulk", bulkLimit, bulkLimit, bulkLimit, rttTolerance,
+                smoothing, longWindow, meterRegistry);
+    }
+
+    /**
+     * Determines the path of a conversion request from the state of the caches, without loading anything.
+     *
+     * @param date the past date of the rate, or null for the current rate
+     * @return the path the request will take
+     */
+    public Route route(LocalDate date) {
+        if (date != null) {
+            return historicalRateService.isStored(date) ? Route.CACHED : Route.UPSTREAM;
+        }
+        return rateSnapshotService.isLoadRequired() || supportedCurrenciesService.isLoadRequired() ? Route.UPSTREAM
+                : Route.CACHED;
+    }
+
+    /**
+     * Determines the path of a batch of conversion requests, which has to wait for the external API if any of them
+     * has to.
+     *
+     * @param dates the dates of the rates of the requests, with null for the current rate
+     * @return the path the batch will take
+     */
+    public Route route(Collection<LocalDate> dates) {
+        if (route((LocalDate) null) == Route.UPSTREAM) {
+            return Route.UPSTREAM;
+        }
+        return dates.stream().filter(Objects::nonNull).distinct().anyMatch(date -> route(date) == Route.UPSTREAM)
+                ? Route.UPSTREAM
+                : Route.CACHED;
+    }
+
+    /**
+     * Runs a call within the concurrency limit of its path, or rejects it immediately if the limit has been reached.
+     * The latency of the call updates the limit, and a call that fails because the external API failed shrinks it.
+     *
+     * @param <T> the type of the result
+     * @param route the path of the call
+     * @param callable the call to run
+     * @return the result of the call
+     * @throws OverloadedException if the concurrency limit of the path has been reached
+     * @throws Exception if the call fails
+     */
+    public <T> T call(Route route, Callable<T> callable) throws Exception {
+        AdaptiveConcurrencyLimiter limiter = acquire(getLimiter(route));
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = callable.call();
+        } catch (ExternalApiException | StaleCurrencyRateException e) {
+            limiter.release(System.nanoTime() - start, true);
+            throw e;
+        } catch (Exception | Error e) {
+            limiter.ignore();
+            throw e;
+        }
+        limiter.release(System.nanoTime() - start, false);
+        return result;
+    }
+
+    /**
+     * Subscribes to a non-blocking call within the concurrency limit of its path, or fails immediately with an
+     * {@link OverloadedException} if the limit has been reached. The permit is released exactly once when the call
+     * completes, fails or is cancelled.
+     *
+     * @param <T> the type of the result
+     * @param route the path of the call
+     * @param mono the call to subscribe to
+     * @return the result of the call
+     */
+    public <T> Mono<T> call(Route route, Mono<T> mono) {
+        return Mono.defer(() -> {
+            AdaptiveConcurrencyLimiter limiter;
+            try {
+                limiter = acquire(getLimiter(route));
+            } catch (OverloadedException e) {
+                return Mono.error(e);
+            }
+            long start = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+            return mono.doOnSuccess(result -> {
+                if (released.compareAndSet(false, true)) {
+                    limiter.release(System.nanoTime() - start, false);
+                }
+            }).doOnError(e -> {
+                if (released.compareAndSet(false, true)) {
+                    if (e instanceof ExternalApiException || e instanceof StaleCurrencyRateException) {
+                        limiter.release(System.nanoTime() - start, true);
+                    } else {
+                        limiter.ignore();
+                    }
+                }
+            }).doOnCancel(() -> {
+                if (released.compareAndSet(false, true)) {
+                    limiter.ignore();
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs a bulk call, such as a batch, a multi-target conversion or a stream, within the limit of concurrent bulk
+     * calls, or rejects it immediately if the limit has been reached. A bulk call on the upstream path also holds a
+     * permit of the upstream path. The latency of a bulk call does not update any limit, but a call that fails
+     * because the external API failed shrinks the limit of the upstream path.
+     *
+     * @param <T> the type of the result
+     * @param route the path of the call
+     * @param callable the call to run
+     * @return the result of the call
+     * @throws OverloadedException if the limit of concurrent bulk calls or of the upstream path has been reached
+     * @throws Exception if the call fails
+     */
+    public <T> T callBulk(Route route, Callable<T> callable) throws Exception {
+        acquire(bulkLimiter);
+        AdaptiveConcurrencyLimiter limiter = null;
+        try {
+            if (route == Route.UPSTREAM) {
+                limiter = acquire(upstreamLimiter);
+            }
+            return callable.call();
+        } catch (ExternalApiException | StaleCurrencyRateException e) {
+            if (limiter != null) {
+                limiter.release(0, true);
+                limiter = null;
+            }
+            throw e;
+        } finally {
+            if (limiter != null) {
+                limiter.ignore();
+            }
+            bulkLimiter.ignore();
+        }
+    }
+
+    /**
+     * Returns the limiter of a path.
+     *
+     * @param route the path
+     * @return the limiter of the path
+     */
+    AdaptiveConcurrencyLimiter getLimiter(Route route) {
+        return route == Route.CACHED ? cachedLimiter : upstreamLimiter;
+    }
+
+    /**
+     * Returns the limiter of the bulk calls.
+     *
+     * @return the limiter of the bulk calls
+     */
+    AdaptiveConcurrencyLimiter getBulkLimiter() {
+        return bulkLimiter;
+    }
+
+    /*
+     * Acquires a permit from the limiter, or throws if its limit has been reached
+     */
+    private static AdaptiveConcurrencyLimiter acquire(AdaptiveConcurrencyLimiter limiter)
+            throws OverloadedException {
+        if (!limiter.tryAcquire()) {
+            throw new OverloadedException("Too many concurrent conversions, the limit of "
+                    + limiter.getLimit() + " has been reached, try again later");
+        }
+        return limiter;
+    }
+
+}
@@ -1,25 +1,87 @@
 package mhjohans.currency_api.services;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.NumberFormat;
-import java.util.Currency;
-import java.util.Set;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.MultiConversionResultDTO;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
+import mhjohans.currency_api.dtos.response.SuccessResponseDTO;
 import mhjohans.currency_api.exceptions.ExternalApiException;
 import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.FixedPointConverter.Amount;
 
+/**
+ * Converts values between currencies with the current rate snapshot or the historical rates of a past date.
+ * <p>
+ * The values are given as decimal strings and converted with the fixed-point arithmetic of
+ * {@link FixedPointConverter}, and the converted values are rounded to the number of decimal digits of the target
+ * currency with the configured rounding mode.
+ * <p>
+ * The time taken by each stage of a single conversion is recorded with a timer tagged with the stage: validating the
+ * currency codes against the supported currencies, looking up the rate, converting the value and localizing the
+ * result. Batch conversions are not timed per stage to keep the cost per converted value constant.
+ */
 @Service
 public class ConversionService {
 
     private static final Logger logger = LoggerFactory.getLogger(ConversionService.class);
 
-    private final CurrencyRateService currencyRateService;
+    private final SupportedCurrenciesService supportedCurrenciesService;
 
-    ConversionService(CurrencyRateService currencyRateService) {
-        this.currencyRateService = currencyRateService;
+    private final RateSnapshotService rateSnapshotService;
+
+    private final CurrencyFormatService currencyFormatService;
+
+    private final HistoricalRateService historicalRateService;
+
+    private final RoundingMode roundingMode;
+
+    private final Timer validateTimer;
+
+    private final Timer lookupTimer;
+
+    private final Timer convertTimer;
+
+    private final Timer localizeTimer;
+
+    ConversionService(SupportedCurrenciesService supportedCurrenciesService,
+            RateSnapshotService rateSnapshotService, CurrencyFormatService currencyFormatService,
+            HistoricalRateService historicalRateService,
+            @Value("${conversion.rounding-mode}") RoundingMode roundingMode, MeterRegistry meterRegistry) {
+        if (roundingMode == RoundingMode.UNNECESSARY) {
+            throw new IllegalArgumentException("Converted values must be rounded, rounding mode cannot be UNNECESSARY");
+        }
+        this.supportedCurrenciesService = supportedCurrenciesService;
+        this.rateSnapshotService = rateSnapshotService;
+        this.currencyFormatService = currencyFormatService;
+        this.historicalRateService = historicalRateService;
+        this.roundingMode = roundingMode;
+        this.validateTimer = createStageTimer("validate", meterRegistry);
+        this.lookupTimer = createStageTimer("lookup", meterRegistry);
+        this.convertTimer = createStageTimer("convert", meterRegistry);
+        this.localizeTimer = createStageTimer("localize", meterRegistry);
     }
 
     /**
@@ -27,54 +89,372 @@ public class ConversionService {
      *
      * @param sourceCurrency the currency code to convert from as a string
      * @param targetCurrency the currency code to convert to as a string
-     * @param value the amount to convert as a double
+     * @param value the amount to convert as a decimal string
+     * @return the converted value as a localized currency string, flagged as stale if the currency rate is stale
+     */
+    public ConversionResultDTO convert(String sourceCurrency, String targetCurrency, String value)
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converting {} {} to {}...", value, sourceCurrency, targetCurrency);
+        }
+        long start = System.nanoTime();
+        SupportedCurrencies supportedCurrencies = supportedCurrenciesService.getSupportedCurrencies();
+        int sourceKey = validate(sourceCurrency, supportedCurrencies);
+        int targetKey = validate(targetCurrency, supportedCurrencies);
+        Amount amount = FixedPointConverter.parse(value);
+        start = lap(validateTimer, start);
+        // Derive the cross rate from the current rate snapshot shared by all currency pairs
+        return convert(rateSnapshotService.getSnapshot(), supportedCurrencies, sourceKey, targetKey, amount,
+                LocaleContextHolder.getLocale(), start);
+    }
+
+    /**
+     * Converts a given value from one currency to another with the currency rate of a past date.
+     *
+     * @param sourceCurrency the currency code to convert from as a string
+     * @param targetCurrency the currency code to convert to as a string
+     * @param value the amount to convert as a decimal string
+     * @param date the date of the currency rate, or null to convert with the current currency rate
+     * @return the converted value as a localized currency string
+     */
+    public ConversionResultDTO convert(String sourceCurrency, String targetCurrency, String value,
+            LocalDate date) throws InvalidCurrencyException, InvalidRequestException,
+            ExternalApiException, StaleCurrencyRateException {
+        return convert(sourceCurrency, targetCurrency, value, date, LocaleContextHolder.getLocale());
+    }
+
+    /**
+     * Converts a given value from one currency to another with the currency rate of a past date, formatting the
+     * converted value with the given locale. Used by both the blocking and the non-blocking conversion flows.
+     *
+     * @param sourceCurrency the currency code to convert from as a string
+     * @param targetCurrency the currency code to convert to as a string
+     * @param value the amount to convert as a decimal string
+     * @param date the date of the currency rate, or null to convert with the current currency rate
+     * @param locale the locale to format the converted value with
      * @return the converted value as a localized currency string
      */
-    public String convert(String sourceCurrency, String targetCurrency, double value)
-            throws InvalidCurrencyException, ExternalApiException {
-        logger.debug("Converting {} {} to {}...", value, sourceCurrency, targetCurrency);
-        validate(sourceCurrency);
-        validate(targetCurrency);
-        double rate = currencyRateService.getCurrencyRate(sourceCurrency, targetCurrency);
-        // Use BigDecimal to avoid rounding errors
-        BigDecimal convertedValue = BigDecimal.valueOf(rate).multiply(BigDecimal.valueOf(value));
-        logger.debug("Converted {} {} to {}.", value, sourceCurrency, convertedValue);
-        return localize(convertedValue, targetCurrency);
-    }
-
-    private void validate(String currency) throws InvalidCurrencyException, ExternalApiException {
-        logger.debug("Validating currency code: {}", currency);
+    ConversionResultDTO convert(String sourceCurrency, String targetCurrency, String value,
+            LocalDate date, Locale locale) throws InvalidCurrencyException,
+            InvalidRequestException, ExternalApiException, StaleCurrencyRateException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converting {} {} to {} on {}...", value, sourceCurrency, targetCurrency,
+                    date != null ? date : "the current date");
+        }
+        long start = System.nanoTime();
+        SupportedCurrencies supportedCurrencies = supportedCurrenciesService.getSupportedCurrencies();
+        int sourceKey = validate(sourceCurrency, supportedCurrencies);
+        int targetKey = validate(targetCurrency, supportedCurrencies);
+        Amount amount = FixedPointConverter.parse(value);
+        start = lap(validateTimer, start);
+        if (date == null) {
+            return convert(rateSnapshotService.getSnapshot(), supportedCurrencies, sourceKey, targetKey, amount,
+                    locale, start);
+        }
+        // Derive the cross rate from the quotes of the date in the historical rates store
+        double rate = historicalRateService.getRate(sourceKey, targetKey, date);
+        start = lap(lookupTimer, start);
+        BigDecimal convertedValue = convert(rate, amount, supportedCurrencies.getDecimalDigits(targetKey));
+        start = lap(convertTimer, start);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converted {} {} to {} on {}.", value, sourceCurrency, convertedValue, date);
+        }
+        String result = localize(convertedValue, CurrencyCodes.unpack(targetKey), locale);
+        lap(localizeTimer, start);
+        return new ConversionResultDTO(result);
+    }
+
+    /**
+     * Converts a value between two validated currencies with the given rate snapshot. Used by both the blocking and
+     * the non-blocking conversion flows after the supported currencies and the rate snapshot have been retrieved.
+     *
+     * @param rateMatrix the rate snapshot to derive the cross rate from
+     * @param supportedCurrencies the supported currencies with the number of decimal digits of the target currency
+     * @param sourceKey the packed code of the currency to convert from
+     * @param targetKey the packed code of the currency to convert to
+     * @param amount the amount to convert
+     * @param locale the locale to format the converted value with
+     * @return the converted value as a localized currency string, flagged as stale if the currency rate is stale
+     */
+    ConversionResultDTO convert(RateMatrix rateMatrix, SupportedCurrencies supportedCurrencies, int sourceKey,
+            int targetKey, Amount amount, Locale locale) throws InvalidCurrencyException {
+        return convert(rateMatrix, supportedCurrencies, sourceKey, targetKey, amount, locale, System.nanoTime());
+    }
+
+    /*
+     * Converts a value with the given rate snapshot, timing the stages from the start of the rate lookup
+     */
+    private ConversionResultDTO convert(RateMatrix rateMatrix, SupportedCurrencies supportedCurrencies,
+            int sourceKey, int targetKey, Amount amount, Locale locale, long lookupStart)
+            throws InvalidCurrencyException {
+        int targetOrdinal = getOrdinal(rateMatrix, targetKey);
+        int sourceOrdinal = getOrdinal(rateMatrix, sourceKey);
+        long start = lap(lookupTimer, lookupStart);
+        BigDecimal convertedValue = convert(rateMatrix.getRate(sourceOrdinal, targetOrdinal), amount,
+                supportedCurrencies.getDecimalDigits(targetKey));
+        start = lap(convertTimer, start);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converted {} {} to {}.", amount, CurrencyCodes.unpack(sourceKey),
+                    convertedValue);
+        }
+        String result = localize(convertedValue, rateMatrix.getCurrency(targetOrdinal), locale);
+        lap(localizeTimer, start);
+        return createResult(result, rateMatrix);
+    }
+
+    /**
+     * Converts a value from one currency to many currencies with the current rate snapshot, e.g. for showing a price
+     * in all the currencies of a price table. The currency codes and the value are validated once, and the cross
+     * rates from the source currency to all currencies are derived from the snapshot in a single pass.
+     *
+     * @param sourceCurrency the currency code to convert from as a string
+     * @param value the amount to convert as a decimal string
+     * @param targetCurrencies the currency codes to convert to, or null or empty to convert to all supported
+     *        currencies that have a rate in the snapshot
+     * @param localized true to format the converted values as localized currency strings, false to return them as
+     *        plain decimal strings
+     * @return the converted values keyed by target currency code in the order of the targets, flagged as stale if
+     *         the currency rates are stale
+     */
+    public MultiConversionResultDTO convertToMany(String sourceCurrency, String value,
+            List<String> targetCurrencies, boolean localized) throws InvalidCurrencyException,
+            InvalidRequestException, ExternalApiException, StaleCurrencyRateException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converting {} {} to {}...", value, sourceCurrency,
+                    targetCurrencies != null && !targetCurrencies.isEmpty() ? targetCurrencies : "all currencies");
+        }
+        SupportedCurrencies supportedCurrencies = supportedCurrenciesService.getSupportedCurrencies();
+        int sourceKey = validate(sourceCurrency, supportedCurrencies);
+        Amount amount = FixedPointConverter.parse(value);
+        RateMatrix rateMatrix = rateSnapshotService.getSnapshot();
+        int[] targetOrdinals;
+        if (targetCurrencies == null || targetCurrencies.isEmpty()) {
+            targetOrdinals = getSupportedOrdinals(rateMatrix, supportedCurrencies);
+        } else {
+            targetOrdinals = new int[targetCurrencies.size()];
+            for (int i = 0; i < targetOrdinals.length; i++) {
+                targetOrdinals[i] = getOrdinal(rateMatrix, validate(targetCurrencies.get(i), supportedCurrencies));
+            }
+        }
+        double[] rates = new double[rateMatrix.size()];
+        rateMatrix.getRates(getOrdinal(rateMatrix, sourceKey), rates);
+        Locale locale = LocaleContextHolder.getLocale();
+        Map<String, String> results = LinkedHashMap.newLinkedHashMap(targetOrdinals.length);
+        for (int targetOrdinal : targetOrdinals) {
+            String targetCurrency = rateMatrix.getCurrency(targetOrdinal);
+            BigDecimal convertedValue = convert(rates[targetOrdinal], amount,
+                    supportedCurrencies.getDecimalDigits(CurrencyCodes.pack(targetCurrency)));
+            results.put(targetCurrency, localized ? localize(convertedValue, targetCurrency, locale)
+                    : convertedValue.toPlainString());
+        }
+        logger.debug("Converted {} {} to {} currencies.", amount, sourceCurrency, results.size());
+        Duration rateAge = rateSnapshotService.getAge(rateMatrix);
+        if (rateSnapshotService.isStale(rateAge)) {
+            logger.debug("Converted with stale currency rates of age {}", rateAge);
+            return new MultiConversionResultDTO(results, true, rateAge.toSeconds());
+        }
+        return new MultiConversionResultDTO(results);
+    }
+
+    /**
+     * Converts a batch of values with a single rate snapshot and list of supported currencies shared by all
+     * conversions. Conversion requests with a date are converted with the currency rates of that date from the
+     * historical rates store instead. Invalid conversion requests do not fail the whole batch, instead each of them results in a fail
+     * entry in the position of the request.
+     *
+     * @param conversionRequests the conversion requests
+     * @return the JSend formatted results of the conversions in the order of the requests
+     */
+    public List<ResponseDTO<?>> convertAll(List<ConversionRequestDTO> conversionRequests)
+            throws ExternalApiException, StaleCurrencyRateException {
+        logger.debug("Converting a batch of {} values...", conversionRequests.size());
+        BatchConversion batchConversion = newBatchConversion();
+        List<ResponseDTO<?>> results = new ArrayList<>(conversionRequests.size());
+        for (ConversionRequestDTO conversionRequest : conversionRequests) {
+            results.add(batchConversion.convert(conversionRequest));
+        }
+        logger.debug("Converted a batch of {} values.", results.size());
+        return results;
+    }
+
+    /**
+     * Starts a batch of conversions that all use the current rate snapshot and list of supported currencies.
+     *
+     * @return the batch conversion for converting the values one by one
+     */
+    public BatchConversion newBatchConversion()
+            throws ExternalApiException, StaleCurrencyRateException {
+        return new BatchConversion(supportedCurrenciesService.getSupportedCurrencies(),
+                rateSnapshotService.getSnapshot());
+    }
+
+    /**
+     * Batch of conversions sharing the same rate snapshot, list of supported currencies and number formats. The
+     * batch holds no per-conversion state, so it can be used for any number of conversions in constant memory, but
+     * it is not thread-safe.
+     */
+    public final class BatchConversion {
+
+        private final SupportedCurrencies supportedCurrencies;
+
+        private final RateMatrix rateMatrix;
+
+        // Reuse the number format of each target currency across the batch, indexed by currency ordinal
+        private final NumberFormat[] numberFormats;
+
+        private final Locale locale;
+
+        private BatchConversion(SupportedCurrencies supportedCurrencies, RateMatrix rateMatrix) {
+            this.supportedCurrencies = supportedCurrencies;
+            this.rateMatrix = rateMatrix;
+            this.numberFormats = new NumberFormat[rateMatrix.size()];
+            this.locale = LocaleContextHolder.getLocale();
+        }
+
+        /**
+         * Converts a single value in the batch.
+         *
+         * @param conversionRequest the conversion request
+         * @return the JSend success entry with the conversion result, the fail entry if the request is invalid or
+         *         the error entry if the currency rates of its date cannot be retrieved
+         */
+        public ResponseDTO<?> convert(ConversionRequestDTO conversionRequest) {
+            if (conversionRequest == null || conversionRequest.value() == null) {
+                return new FailResponseDTO("Value cannot be null");
+            }
+            try {
+                int sourceKey = validate(conversionRequest.source(), supportedCurrencies);
+                int targetKey = validate(conversionRequest.target(), supportedCurrencies);
+                Amount amount = FixedPointConverter.parse(conversionRequest.value());
+                int targetScale = supportedCurrencies.getDecimalDigits(targetKey);
+                if (conversionRequest.date() != null) {
+                    BigDecimal convertedValue = ConversionService.this.convert(historicalRateService
+                            .getRate(sourceKey, targetKey, conversionRequest.date()), amount, targetScale);
+                    return new SuccessResponseDTO<>(
+                            new ConversionResultDTO(format(convertedValue, targetKey)));
+                }
+                int targetOrdinal = getOrdinal(rateMatrix, targetKey);
+                BigDecimal convertedValue = ConversionService.this.convert(
+                        rateMatrix.getRate(getOrdinal(rateMatrix, sourceKey), targetOrdinal), amount, targetScale);
+                return new SuccessResponseDTO<>(
+                        createResult(format(convertedValue, targetKey), rateMatrix));
+            } catch (InvalidCurrencyException | InvalidRequestException e) {
+                return new FailResponseDTO(e.getMessage());
+            } catch (ExternalApiException e) {
+                return new ErrorResponseDTO(e.getMessage());
+            }
+        }
+
+        /*
+         * Formats the value with the number format of the target currency, which is reused across the batch for the
+         * currencies in the rate snapshot
+         */
+        private String format(BigDecimal value, int targetKey) {
+            int targetOrdinal = rateMatrix.ordinal(targetKey);
+            if (targetOrdinal < 0) {
+                return currencyFormatService.format(value, locale, CurrencyCodes.unpack(targetKey), value.scale());
+            }
+            NumberFormat numberFormat = numberFormats[targetOrdinal];
+            if (numberFormat == null) {
+                numberFormat = currencyFormatService.newNumberFormat(locale,
+                        rateMatrix.getCurrency(targetOrdinal), value.scale());
+                numberFormats[targetOrdinal] = numberFormat;
+            }
+            return numberFormat.format(value);
+        }
+
+    }
+
+    /*
+     * Records the time elapsed since the start of a stage and returns the start of the next stage
+     */
+    private static long lap(Timer timer, long start) {
+        long end = System.nanoTime();
+        timer.record(end - start, TimeUnit.NANOSECONDS);
+        return end;
+    }
+
+    private static Timer createStageTimer(String stage, MeterRegistry meterRegistry) {
+        return Timer.builder("service.conversion.stage.timer")
+                .description("Time taken by a stage of a single conversion")
+                .publishPercentiles(0.5, 0.95, 0.99).tag("stage", stage).register(meterRegistry);
+    }
+
+    /*
+     * Converts the amount with fixed-point arithmetic and rounds it to the number of decimal digits of the target
+     * currency
+     */
+    private BigDecimal convert(double rate, Amount amount, int targetScale) {
+        return FixedPointConverter.convert(amount, rate, targetScale, roundingMode);
+    }
+
+    /*
+     * Flags the result as stale and includes the age of the currency rate if it is stale
+     */
+    private ConversionResultDTO createResult(String result, RateMatrix rateMatrix) {
+        Duration rateAge = rateSnapshotService.getAge(rateMatrix);
+        if (rateSnapshotService.isStale(rateAge)) {
+            logger.debug("Converted with a stale currency rate of age {}", rateAge);
+            return new ConversionResultDTO(result, true, rateAge.toSeconds());
+        }
+        return new ConversionResultDTO(result);
+    }
+
+    /*
+     * Validates the currency code and returns it packed into an integer key. The code is checked without allocating,
+     * and the error messages are only built for invalid codes.
+     */
+    static int validate(String currency, SupportedCurrencies supportedCurrencies)
+            throws InvalidCurrencyException {
         // Check if the currency code is null
         if (currency == null) {
             logger.debug("Currency code is null");
             throw new InvalidCurrencyException("Currency code cannot be null");
         }
-        // Clean up the received currency code of whitespace and convert to uppercase
-        String cleanedCurrency = currency.trim().toUpperCase();
-        logger.debug("Cleaned up currency code: {}", cleanedCurrency);
-        // Check if the currency code has correct length
-        if (cleanedCurrency.length() != 3) {
-            logger.debug("Currency code has incorrect length: {}", cleanedCurrency);
+        // Pack the currency code ignoring whitespace and case, which fails if it is not three letters long
+        int key = CurrencyCodes.pack(currency);
+        if (key == CurrencyCodes.INVALID && currency.trim().length() != 3) {
+            logger.debug("Currency code has incorrect length: {}", currency);
             throw new InvalidCurrencyException("Invalid currency code: "
                     + (currency.isEmpty() ? "currency code cannot be empty" : currency));
         }
         // Check if the currency code is not on the list of supported currencies
-        Set<String> supportedCurrencies = currencyRateService.getSupportedCurrencies();
-        if (!supportedCurrencies.contains(cleanedCurrency)) {
-            logger.debug("Currency code not supported: {}", cleanedCurrency);
+        if (!supportedCurrencies.contains(key)) {
+            logger.debug("Currency code not supported: {}", currency);
             throw new InvalidCurrencyException("Currency code not supported: " + currency);
         }
-        logger.debug("Currency code validated successfully");
+        return key;
+    }
+
+    private static int getOrdinal(RateMatrix rateMatrix, int key) throws InvalidCurrencyException {
+        int ordinal = rateMatrix.ordinal(key);
+        if (ordinal < 0) {
+            String currency = CurrencyCodes.unpack(key);
+            logger.debug("Currency rate not available: {}", currency);
+            throw new InvalidCurrencyException("Currency rate not available: " + currency);
+        }
+        return ordinal;
+    }
+
+    /*
+     * Returns the ordinals of the supported currencies in the rate snapshot in the order of their currency codes
+     */
+    private static int[] getSupportedOrdinals(RateMatrix rateMatrix, SupportedCurrencies supportedCurrencies) {
+        int[] ordinals = new int[rateMatrix.size()];
+        int count = 0;
+        for (int ordinal = 0; ordinal < rateMatrix.size(); ordinal++) {
+            if (supportedCurrencies.contains(CurrencyCodes.pack(rateMatrix.getCurrency(ordinal)))) {
+                ordinals[count++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(ordinals, count);
     }
 
-    private static String localize(BigDecimal value, String currencyCode) {
-        Currency currency = Currency.getInstance(currencyCode);
+    private String localize(BigDecimal value, String currencyCode, Locale locale) {
         // Formats the amount as a localized currency string based on the 'Accept-Language' header in the 
         // request or the default runtime locale if header is not present
-        NumberFormat numberFormat =
-                NumberFormat.getCurrencyInstance(LocaleContextHolder.getLocale());
-        numberFormat.setCurrency(currency);
-        return numberFormat.format(value);
+        return currencyFormatService.format(value, locale, currencyCode, value.scale());
     }
 
 }
@@ -0,0 +1,79 @@
+package mhjohans.currency_api.services;
+
+/**
+ * Packs three-letter ISO 4217 currency codes into compact integer keys. Each letter takes 5 bits, so every code fits
+ * into a key of 15 bits that can be used as an index into primitive arrays and bitsets.
+ */
+public final class CurrencyCodes {
+
+    /**
+     * Number of bits in a packed currency code.
+     */
+    public static final int BITS = 15;
+
+    /**
+     * Number of distinct packed currency codes, i.e. the exclusive upper bound of the keys.
+     */
+    public static final int CAPACITY = 1 << BITS;
+
+    /**
+     * Key returned for strings that are not valid currency codes.
+     */
+    public static final int INVALID = -1;
+
+    private static final int CODE_LENGTH = 3;
+
+    private CurrencyCodes() {}
+
+    /**
+     * Packs the currency code into an integer key without allocating. Leading and trailing whitespace is ignored and
+     * letters are matched regardless of their case.
+     *
+     * @param currency the currency code
+     * @return the key between 0 and {@link #CAPACITY} or {@link #INVALID} if the string does not consist of exactly
+     *         three ASCII letters
+     */
+    public static int pack(CharSequence currency) {
+        if (currency == null) {
+            return INVALID;
+        }
+        int start = 0;
+        int end = currency.length();
+        // Skip leading and trailing whitespace the same way as String.trim
+        while (start < end && currency.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && currency.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start != CODE_LENGTH) {
+            return INVALID;
+        }
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            // Setting the lowercase bit maps uppercase ASCII letters to lowercase
+            int letter = (currency.charAt(i) | 0x20) - 'a';
+            if (letter < 0 || letter > 'z' - 'a') {
+                return INVALID;
+            }
+            key = (key << 5) | letter;
+        }
+        return key;
+    }
+
+    /**
+     * Unpacks the key into an uppercase currency code.
+     *
+     * @param key the packed currency code
+     * @return the currency code
+     */
+    public static String unpack(int key) {
+        char[] letters = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            letters[i] = (char) ('A' + (key & 0x1F));
+            key >>>= 5;
+        }
+        return new String(letters);
+    }
+
+}
@@ -0,0 +1,170 @@
+package mhjohans.currency_api.services;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+/**
+ * Formats amounts as localized currency strings with pooled number formats.
+ * <p>
+ * Creating a currency number format requires loading the locale data and building a new decimal format, which is
+ * expensive compared to the formatting itself. Instead, a prototype format is created once for each pair of locale
+ * and currency, with the number of fraction digits if given, and formats cloned from it are pooled for reuse. Number
+ * formats are not thread-safe, so each format is used by one thread at a time, and the pools are shared by all threads
+ * instead of being bound to threads. The number of pooled formats per pair is bounded.
+ * <p>
+ * The locales come from the requests, so the pools are kept in the {@value #CACHE_NAME} cache, which is bounded by the
+ * size and idle time of its Caffeine specification. Its frequency-based admission keeps the pools of the frequently
+ * used pairs when the cache is full, instead of rarely used pairs evicting them.
+ */
+@Service
+public class CurrencyFormatService {
+
+    static final String CACHE_NAME = "number-formats";
+
+    private final Cache pools;
+
+    private final int maxPoolSize;
+
+    // Fraction digits of -1 keep the default fraction digits of the locale
+    private record FormatKey(Locale locale, String currencyCode, int fractionDigits) {
+    }
+
+    /**
+     * Creates the service with the pools kept in the {@value #CACHE_NAME} cache of the cache manager.
+     *
+     * @param cacheManager the cache manager, which must provide the {@value #CACHE_NAME} cache
+     * @param maxPoolSize the maximum number of idle formats pooled per locale and currency
+     * @throws IllegalStateException if the cache manager does not provide the {@value #CACHE_NAME} cache
+     */
+    CurrencyFormatService(CacheManager cacheManager,
+            @Value("${conversion.format.max-pool-size}") int maxPoolSize) {
+        this.pools = cacheManager.getCache(CACHE_NAME);
+        if (pools == null) {
+            throw new IllegalStateException("Cache " + CACHE_NAME + " is not provided by the cache manager "
+                    + cacheManager.getClass().getSimpleName() + ", define it under the caches properties");
+        }
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Formats the amount as a localized currency string.
+     *
+     * @param value the amount to format
+     * @param locale the locale to format the amount with
+     * @param currencyCode the code of the currency of the amount
+     * @return the localized currency string
+     */
+    public String format(BigDecimal value, Locale locale, String currencyCode) {
+        return format(value, locale, currencyCode, -1);
+    }
+
+    /**
+     * Formats the amount as a localized currency string with the given number of fraction digits, e.g. the number of
+     * decimal digits of the currency the amount has been rounded to.
+     *
+     * @param value the amount to format
+     * @param locale the locale to format the amount with
+     * @param currencyCode the code of the currency of the amount
+     * @param fractionDigits the number of fraction digits to format the amount with
+     * @return the localized currency string
+     */
+    public String format(BigDecimal value, Locale locale, String currencyCode, int fractionDigits) {
+        FormatPool pool = getPool(locale, currencyCode, fractionDigits);
+        NumberFormat numberFormat = pool.borrow();
+        try {
+            return numberFormat.format(value);
+        } finally {
+            pool.release(numberFormat);
+        }
+    }
+
+    /**
+     * Creates a number format owned by the caller, e.g. for formatting a batch of amounts on a single thread.
+     *
+     * @param locale the locale to format the amounts with
+     * @param currencyCode the code of the currency of the amounts
+     * @param fractionDigits the number of fraction digits to format the amounts with
+     * @return a new number format for the currency that is not shared with other callers
+     */
+    public NumberFormat newNumberFormat(Locale locale, String currencyCode, int fractionDigits) {
+        return getPool(locale, currencyCode, fractionDigits).create();
+    }
+
+    /**
+     * Returns the number of idle formats pooled for the locale, currency and fraction digits.
+     *
+     * @param locale the locale of the formats
+     * @param currencyCode the code of the currency of the formats
+     * @param fractionDigits the number of fraction digits of the formats, or -1 for the default of the locale
+     * @return the number of formats in the pool that are not in use
+     */
+    int getIdleCount(Locale locale, String currencyCode, int fractionDigits) {
+        return getPool(locale, currencyCode, fractionDigits).idle.size();
+    }
+
+    /*
+     * Returns the pool of the locale, currency and fraction digits, creating it once if it is not cached
+     */
+    private FormatPool getPool(Locale locale, String currencyCode, int fractionDigits) {
+        FormatKey key = new FormatKey(locale, currencyCode, fractionDigits);
+        FormatPool pool = pools.get(key, FormatPool.class);
+        if (pool != null) {
+            return pool;
+        }
+        return pools.get(key, () -> new FormatPool(key, maxPoolSize));
+    }
+
+    private static final class FormatPool {
+
+        private final NumberFormat prototype;
+
+        private final Queue<NumberFormat> idle = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        private final int maxSize;
+
+        FormatPool(FormatKey key, int maxSize) {
+            this.prototype = NumberFormat.getCurrencyInstance(key.locale());
+            this.prototype.setCurrency(Currency.getInstance(key.currencyCode()));
+            if (key.fractionDigits() >= 0) {
+                this.prototype.setMinimumFractionDigits(key.fractionDigits());
+                this.prototype.setMaximumFractionDigits(key.fractionDigits());
+            }
+            this.maxSize = maxSize;
+        }
+
+        NumberFormat create() {
+            return (NumberFormat) prototype.clone();
+        }
+
+        NumberFormat borrow() {
+            NumberFormat numberFormat = idle.poll();
+            if (numberFormat == null) {
+                return create();
+            }
+            idleCount.decrementAndGet();
+            return numberFormat;
+        }
+
+        void release(NumberFormat numberFormat) {
+            // Keep at most the maximum number of idle formats and let the rest be garbage collected
+            if (idleCount.incrementAndGet() <= maxSize) {
+                idle.offer(numberFormat);
+            } else {
+                idleCount.decrementAndGet();
+            }
+        }
+
+    }
+
+}
@@ -1,22 +1,14 @@
 package mhjohans.currency_api.services;
 
-import java.util.Objects;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
-import org.springframework.web.client.RestClientResponseException;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
-import mhjohans.currency_api.dtos.CurrencyDTO;
-import mhjohans.currency_api.dtos.CurrencyRateDTO;
 import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.providers.RateProvider;
+import mhjohans.currency_api.services.providers.RateProviderRouter;
 
 @Service
 @CircuitBreaker(name = "currencyRateServiceCircuitBreaker")
@@ -24,99 +16,73 @@ public class CurrencyRateService {
 
     private static final Logger logger = LoggerFactory.getLogger(CurrencyRateService.class);
 
-    private final RestClient restClient;
+    private final RateProviderRouter rateProviderRouter;
 
-    CurrencyRateService(RestClient restClient) {
-        this.restClient = restClient;
+    CurrencyRateService(RateProviderRouter rateProviderRouter) {
+        this.rateProviderRouter = rateProviderRouter;
     }
 
     /**
-     * Retrieves the list of supported currencies from the external API.
+     * Retrieves the list of supported currencies from the rate providers.
      * <ul>
-     * <li>Result is cached to improve performance on repeat calls. The data is not expected to change frequently so a long TTL is used.
+     * <li>Result is not cached here, instead it is kept and reloaded once it has expired by
+     * {@link SupportedCurrenciesService}. The data is not expected to change frequently so a long TTL is used.
+     * <li>The call is routed to the healthiest rate provider and hedged with the next one if it is slow to answer,
+     * see {@link RateProviderRouter}.
      * <li>A retry policy is used to retry the API call if it fails.
      * <li>A circuit breaker is used to stop the API call if it fails too many times.
      * </ul>
-     * 
+     *
      * See {@link mhjohans.currency_api.configurations.ResilienceConfiguration} for the resilience configuration.
      *
-     * @return  a list of currency code strings representing the supported currencies
+     * @return  the set of supported currencies
      */
-    @Cacheable("supportedCurrencies")
     @Retry(name = "supportedCurrenciesRetry")
-    public Set<String> getSupportedCurrencies() throws ExternalApiException {
-        logger.debug("Getting supported currencies from external API");
-        try {
-            Set<CurrencyDTO> supportedCurrencies = restClient.get().uri("/currencies").retrieve()
-                    .body(new ParameterizedTypeReference<Set<CurrencyDTO>>() {});
-            Objects.requireNonNull(supportedCurrencies, "Supported currencies cannot be null");
-            if (logger.isTraceEnabled()) {
-                logger.trace("Got supported currencies from external API: {}", supportedCurrencies);
-            } else {
-                logger.debug("Got {} supported currencies from external API",
-                        supportedCurrencies.size());
-            }
-            return supportedCurrencies.stream().map(CurrencyDTO::code).collect(Collectors.toSet());
-        } catch (RestClientResponseException e) {
-            logger.warn("Error retrieving supported currencies from external API", e);
-            throw new ExternalApiException("Failed to retrieve supported currencies", e);
-        }
+    public SupportedCurrencies getSupportedCurrencies() throws ExternalApiException {
+        logger.debug("Getting supported currencies from rate providers");
+        return rateProviderRouter.call(RateProvider::getSupportedCurrencies);
     }
 
     /**
-     * Retrieves the currency rate from the external API based on the source and target currency codes.
+     * Retrieves the rates of all currencies against the base currency of a rate provider with a single call and
+     * collects them into a rate matrix, from which the rate of any currency pair can be derived.
      * <ul>
-     * <li>Result is cached to improve performance on repeat calls. Rate of calls to external API is on average limited to the number of 
-     * unique currency rates requested per cache time-to-live, e.g. 6 calls per minute if the cache TTL is 1 minute and 6 different pairs of 
-     * currencies are requested.
+     * <li>Result is not cached here, instead it is kept and refreshed ahead of time by {@link RateSnapshotService}. Rate
+     * of calls to external API is limited to one call per refresh interval regardless of the number of unique currency
+     * pairs requested, e.g. 1 call per minute if the refresh interval is 1 minute.
+     * <li>The call is routed to the healthiest rate provider and hedged with the next one if it is slow to answer,
+     * see {@link RateProviderRouter}.
      * <li>A retry policy is used to retry the API call if it fails.
      * <li>A circuit breaker is used to stop the API call if it fails too many times.
      * </ul>
-     * 
+     *
      * See {@link mhjohans.currency_api.configurations.ResilienceConfiguration} for the resilience configuration.
      *
-     * @param sourceCurrency the code of the source currency
-     * @param targetCurrency the code of the target currency
-     * @return the currency rate as a double
+     * @return the rate matrix of all currencies available from the rate provider
      */
-    @Cacheable(value = "currencyRates", sync = true)
     @Retry(name = "currencyRateRetry")
-    public double getCurrencyRate(String sourceCurrency, String targetCurrency)
-            throws ExternalApiException {
-        logger.debug(
-                "Getting currency rate from external API: source currency {}, target currency {}",
-                sourceCurrency, targetCurrency);
-        try {
-            CurrencyRateDTO currencyRate =
-                    restClient.get().uri("/rates/{from}/{to}", sourceCurrency, targetCurrency)
-                            .retrieve().body(CurrencyRateDTO.class);
-            logger.debug("Got currency rate from external API: {}", currencyRate);
-            Objects.requireNonNull(currencyRate, "Currency rate cannot be null");
-            return currencyRate.quote();
-        } catch (RestClientResponseException e) {
-            logger.warn("Error retrieving currency rate from external API", e);
-            throw new ExternalApiException("Failed to retrieve currency rate", e);
-        }
-    }
-
-    /**
-     * Empties the cache for supported currencies on a scheduled interval defined in
-     * the application properties file.
-     */
-    @Scheduled(fixedRateString = "${currency-rates-api.supported-currencies.cache-ttl}")
-    @CacheEvict(value = "supportedCurrencies", allEntries = true)
-    void evictSupportedCurrenciesCache() {
-        logger.trace("Evicting supported currencies cache");
+    public RateMatrix getRateMatrix() throws ExternalApiException {
+        logger.debug("Getting currency rates from rate providers");
+        return rateProviderRouter.call(RateProvider::getRateMatrix);
     }
 
     /**
-     * Empties the cache for currency rates on a scheduled interval defined in the
-     * application properties file.
+     * Retrieves the rates of all currencies against the base currency of a rate provider on a past date and collects
+     * them into a rate matrix. Used to fill the {@link HistoricalRateStore}, which keeps the rates of each date once
+     * they have been retrieved.
+     * <ul>
+     * <li>The call is routed and hedged like the calls for the current rates.
+     * <li>A retry policy is used to retry the API call if it fails.
+     * <li>A circuit breaker is used to stop the API call if it fails too many times.
+     * </ul>
+     *
+     * @param date the date of the rates
+     * @return the rate matrix of all currencies available from the rate provider on the date
      */
-    @Scheduled(fixedRateString = "${currency-rates-api.currency-rates.cache-ttl}")
-    @CacheEvict(value = "currencyRates", allEntries = true)
-    void evictCurrencyRatesCache() {
-        logger.trace("Evicting currency rates cache");
+    @Retry(name = "currencyRateRetry")
+    public RateMatrix getRateMatrix(LocalDate date) throws ExternalApiException {
+        logger.debug("Getting currency rates on {} from rate providers", date);
+        return rateProviderRouter.call(rateProvider -> rateProvider.getRateMatrix(date));
     }
 
 }
@@ -0,0 +1,256 @@
+package mhjohans.currency_api.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares the snapshots between the replicas through a directory on a volume shared by the replicas.
+ * <p>
+ * The leader lease is a small file holding the identifier of the leader and the expiry time of the lease, which is
+ * only read and written while holding an exclusive file lock on it. The leader writes each published snapshot with its
+ * version number to a temporary file and atomically moves it in place, so readers never see a partially written
+ * snapshot. The other replicas poll the version number of the snapshot file on a scheduled interval and decode the
+ * snapshot only when the version has changed.
+ */
+@Component
+@ConditionalOnProperty(name = "currency-rates-api.shared-snapshots.mode", havingValue = "file")
+public class FileRateSnapshotBus implements RateSnapshotBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileRateSnapshotBus.class);
+
+    private static final String LEASE_FILE = "leader.lease";
+
+    private static final String SNAPSHOT_FILE = "rate-snapshot.bin";
+
+    private static final int LEASE_SIZE = 3 * Long.BYTES;
+
+    private static final int HEADER_SIZE = 3 * Long.BYTES;
+
+    // File locks are held by the process, so replicas in the same process also serialize on this lock
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Path leasePath;
+
+    private final Path snapshotPath;
+
+    private final Duration leaseDuration;
+
+    private final UUID replicaId = UUID.randomUUID();
+
+    private final List<Consumer<VersionedRateSnapshot>> subscribers = new CopyOnWriteArrayList<>();
+
+    private volatile VersionedRateSnapshot lastRead;
+
+    private volatile long lastDeliveredVersion;
+
+    FileRateSnapshotBus(@Value("${currency-rates-api.shared-snapshots.path}") Path directory,
+            @Value("${currency-rates-api.shared-snapshots.lease-duration}") Duration leaseDuration)
+            throws IOException {
+        Files.createDirectories(directory);
+        this.leasePath = directory.resolve(LEASE_FILE);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.leaseDuration = leaseDuration;
+        logger.info("Sharing currency rate snapshots in {} as replica {}", directory, replicaId);
+    }
+
+    @Override
+    public String getReplicaId() {
+        return replicaId.toString();
+    }
+
+    @Override
+    public boolean acquireLeadership() {
+        synchronized (PROCESS_LOCK) {
+            try (FileChannel channel = FileChannel.open(leasePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    return acquireLeadership(channel);
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to acquire the leader lease in {}", leasePath, e);
+                return false;
+            }
+        }
+    }
+
+    /*
+     * Takes over or renews the lease unless another replica holds it, while the lock of the lease file is held
+     */
+    private boolean acquireLeadership(FileChannel channel) throws IOException {
+        ByteBuffer lease = ByteBuffer.allocate(LEASE_SIZE);
+        boolean held = channel.read(lease, 0) == LEASE_SIZE;
+        lease.flip();
+        UUID leaderId = held ? new UUID(lease.getLong(), lease.getLong()) : null;
+        Instant leaseExpiry = held ? Instant.ofEpochMilli(lease.getLong()) : Instant.MIN;
+        Instant now = Instant.now();
+        if (!replicaId.equals(leaderId) && !now.isAfter(leaseExpiry)) {
+            return false;
+        }
+        if (!replicaId.equals(leaderId)) {
+            logger.info("Replica {} acquired the leader lease from {}", replicaId, leaderId);
+        }
+        lease.clear();
+        lease.putLong(replicaId.getMostSignificantBits()).putLong(replicaId.getLeastSignificantBits())
+                .putLong(now.plus(leaseDuration).toEpochMilli()).flip();
+        channel.write(lease, 0);
+        channel.force(false);
+        return true;
+    }
+
+    @Override
+    public boolean publish(RateMatrix rateMatrix) {
+        synchronized (PROCESS_LOCK) {
+            // Hold the lease lock while writing, so a replica that has just lost the lease cannot overwrite the
+            // snapshot of the new leader
+            try (FileChannel channel = FileChannel.open(leasePath, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    return publish(channel, rateMatrix);
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to publish currency rate snapshot to {}", snapshotPath, e);
+                return false;
+            }
+        }
+    }
+
+    /*
+     * Writes the next version of the snapshot if this replica still holds the lease, while the lock of the lease file
+     * is held
+     */
+    private boolean publish(FileChannel channel, RateMatrix rateMatrix) throws IOException {
+        ByteBuffer lease = ByteBuffer.allocate(LEASE_SIZE);
+        if (channel.read(lease, 0) != LEASE_SIZE
+                || !replicaId.equals(new UUID(lease.getLong(0), lease.getLong(Long.BYTES)))
+                || Instant.now().isAfter(Instant.ofEpochMilli(lease.getLong(2 * Long.BYTES)))) {
+            logger.warn("Replica {} lost the leader lease, not publishing {}", replicaId, rateMatrix);
+            return false;
+        }
+        long version = readVersion() + 1;
+        write(version, rateMatrix);
+        lastDeliveredVersion = version;
+        logger.debug("Replica {} published version {} of {}", replicaId, version, rateMatrix);
+        return true;
+    }
+
+    @Override
+    public Optional<VersionedRateSnapshot> getLatest() {
+        try {
+            long version = readVersion();
+            VersionedRateSnapshot cached = lastRead;
+            if (cached != null && cached.version() == version) {
+                return Optional.of(cached);
+            }
+            Optional<VersionedRateSnapshot> latest = read();
+            latest.ifPresent(snapshot -> lastRead = snapshot);
+            return latest;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read currency rate snapshot from {}", snapshotPath, e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<VersionedRateSnapshot> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Notifies the subscribers of a snapshot published by another replica since the last poll, on a scheduled
+     * interval defined in the application properties file.
+     */
+    @Scheduled(fixedRateString = "${currency-rates-api.shared-snapshots.poll-interval}")
+    void poll() {
+        getLatest().filter(snapshot -> snapshot.version() > lastDeliveredVersion).ifPresent(snapshot -> {
+            lastDeliveredVersion = snapshot.version();
+            if (!snapshot.publisher().equals(getReplicaId())) {
+                logger.debug("Received version {} of {} from replica {}", snapshot.version(),
+                        snapshot.rateMatrix(), snapshot.publisher());
+                subscribers.forEach(subscriber -> subscriber.accept(snapshot));
+            }
+        });
+    }
+
+    /*
+     * Reads the version number from the header of the snapshot file, or zero if nothing has been published
+     */
+    private long readVersion() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Long.BYTES);
+            return channel.read(header, 0) == Long.BYTES ? header.getLong(0) : 0;
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    /*
+     * Reads and decodes the snapshot file, ignoring a missing or corrupt file
+     */
+    private Optional<VersionedRateSnapshot> read() throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (buffer.remaining() < HEADER_SIZE) {
+            return Optional.empty();
+        }
+        long version = buffer.getLong();
+        UUID publisher = new UUID(buffer.getLong(), buffer.getLong());
+        return RateSnapshotFileService.decode(buffer.slice())
+                .map(snapshot -> new VersionedRateSnapshot(version, publisher.toString(), snapshot.rateMatrix()));
+    }
+
+    /*
+     * Writes the versioned snapshot to a temporary file and atomically replaces the snapshot file with it
+     */
+    private void write(long version, RateMatrix rateMatrix) throws IOException {
+        ByteBuffer encoded = RateSnapshotFileService.encode(new RateSnapshotFileService.Snapshot(rateMatrix, null));
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(version)
+                .putLong(replicaId.getMostSignificantBits()).putLong(replicaId.getLeastSignificantBits()).flip();
+        Path temporaryFile = Files.createTempFile(snapshotPath.getParent(), SNAPSHOT_FILE, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (encoded.hasRemaining()) {
+                    channel.write(encoded);
+                }
+                channel.force(true);
+            }
+            Files.move(temporaryFile, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+}
@@ -0,0 +1,351 @@
+package mhjohans.currency_api.services;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+
+/**
+ * Converts decimal amounts with fixed-point arithmetic on scaled longs.
+ * <p>
+ * An amount is parsed from its decimal string exactly into an unscaled long and a scale, without going through a
+ * binary floating-point value. The rate is turned into a decimal with {@value #RATE_DIGITS} significant digits, which
+ * recovers the decimal quotes of the rate providers exactly, as every decimal with at most 15 significant digits
+ * survives the round trip through a double. The product of the amount and the rate is computed exactly as a 128-bit
+ * integer and rounded to the number of decimal digits of the target currency with an explicit rounding mode, so the
+ * result is the same as with {@link BigDecimal} arithmetic but without allocating. Only when the rounded result does
+ * not fit in a long, or the rate is outside the range of the fixed-point rates, the amount is converted with
+ * {@link BigDecimal} instead.
+ */
+final class FixedPointConverter {
+
+    /**
+     * Maximum number of significant digits and decimal digits of an amount, so that it fits in a long.
+     */
+    static final int MAX_DIGITS = 18;
+
+    /**
+     * Number of significant digits of the rates.
+     */
+    static final int RATE_DIGITS = 15;
+
+    /**
+     * Result of {@link #multiply} when the result is not representable with fixed-point arithmetic.
+     */
+    static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+
+    private static final MathContext RATE_CONTEXT = new MathContext(RATE_DIGITS, RoundingMode.HALF_EVEN);
+
+    private static final long MIN_SCALED_RATE = 100_000_000_000_000L;
+
+    private static final long MAX_SCALED_RATE = 1_000_000_000_000_000L;
+
+    // Powers of ten that are exact doubles
+    private static final int MAX_RATE_SCALE = 22;
+
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[MAX_RATE_SCALE + 1];
+
+    // Digits of the largest power of ten below 2^30, so that a 32-bit limb shifted by the remainder of a division by
+    // it fits in a long
+    private static final int CHUNK_DIGITS = 9;
+
+    // Powers of ten that fit in a long
+    private static final long[] LONG_POWERS_OF_TEN = new long[19];
+
+    private static final long LIMB_MASK = 0xFFFF_FFFFL;
+
+    // Approximation of log10(2) as 1233 / 2^12, exact enough for the exponents of the fixed-point rates
+    private static final int LOG10_2_NUMERATOR = 1233;
+
+    private static final int LOG10_2_SHIFT = 12;
+
+    static {
+        DOUBLE_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_RATE_SCALE; i++) {
+            DOUBLE_POWERS_OF_TEN[i] = DOUBLE_POWERS_OF_TEN[i - 1] * 10;
+        }
+        LONG_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Amount parsed from a decimal string.
+     *
+     * @param unscaled the amount multiplied by ten to the power of the scale
+     * @param scale the number of decimal digits of the amount
+     */
+    record Amount(long unscaled, int scale) {
+
+        BigDecimal toBigDecimal() {
+            return BigDecimal.valueOf(unscaled, scale);
+        }
+
+        @Override
+        public String toString() {
+            return toBigDecimal().toPlainString();
+        }
+
+    }
+
+    private FixedPointConverter() {
+    }
+
+    /**
+     * Parses an amount from a decimal string, e.g. {@code 1234.56} or {@code -0.5}. Plain decimals are parsed
+     * without allocating anything besides the amount, and other notations accepted by {@link BigDecimal}, such as
+     * exponents, through a {@link BigDecimal}.
+     *
+     * @param value the decimal string, which may be surrounded by whitespace
+     * @return the exact amount
+     * @throws InvalidRequestException if the value is not a decimal number or has more than {@value #MAX_DIGITS}
+     *         significant or decimal digits
+     */
+    static Amount parse(String value) throws InvalidRequestException {
+        if (value == null) {
+            throw new InvalidRequestException("Value cannot be null");
+        }
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        int index = start;
+        boolean negative = false;
+        if (index < end && (value.charAt(index) == '-' || value.charAt(index) == '+')) {
+            negative = value.charAt(index) == '-';
+            index++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int scale = -1;
+        for (; index < end; index++) {
+            char c = value.charAt(index);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || significantDigits == MAX_DIGITS || scale == MAX_DIGITS) {
+                // Leave other notations and the edge cases to BigDecimal
+                return parseBigDecimal(value.substring(start, end));
+            }
+            digits++;
+            if (unscaled != 0 || c != '0') {
+                significantDigits++;
+            }
+            unscaled = unscaled * 10 + (c - '0');
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            throw new InvalidRequestException("Invalid value: " + value.substring(start, end));
+        }
+        return new Amount(negative ? -unscaled : unscaled, Math.max(scale, 0));
+    }
+
+    /**
+     * Converts an amount with a rate and rounds the result to the given number of decimal digits, with fixed-point
+     * arithmetic if possible and with {@link BigDecimal} arithmetic if not.
+     *
+     * @param amount the amount to convert
+     * @param rate the rate to multiply the amount with
+     * @param targetScale the number of decimal digits of the result
+     * @param roundingMode the rounding mode of the result
+     * @return the converted amount with the target scale
+     * @throws ArithmeticException if the rounding mode is {@link RoundingMode#UNNECESSARY} and rounding is necessary
+     */
+    static BigDecimal convert(Amount amount, double rate, int targetScale, RoundingMode roundingMode) {
+        long result = multiply(amount.unscaled(), amount.scale(), rate, targetScale, roundingMode);
+        if (result != NOT_REPRESENTABLE) {
+            return BigDecimal.valueOf(result, targetScale);
+        }
+        return convertBigDecimal(amount, rate, targetScale, roundingMode);
+    }
+
+    /**
+     * Multiplies a scaled amount with a rate and rounds the product to the target scale without allocating.
+     *
+     * @param unscaled the unscaled amount
+     * @param scale the scale of the amount
+     * @param rate the rate to multiply the amount with
+     * @param targetScale the scale of the result
+     * @param roundingMode the rounding mode of the result
+     * @return the unscaled result with the target scale, or {@link #NOT_REPRESENTABLE} if it does not fit in a long
+     *         or the rate is outside the range of the fixed-point rates
+     * @throws ArithmeticException if the rounding mode is {@link RoundingMode#UNNECESSARY} and rounding is necessary
+     */
+    static long multiply(long unscaled, int scale, double rate, int targetScale, RoundingMode roundingMode) {
+        int rateScale = getRateScale(rate);
+        if (rateScale < 0 || unscaled == Long.MIN_VALUE) {
+            return NOT_REPRESENTABLE;
+        }
+        long scaledRate = scaleRate(rate, rateScale);
+        // The number of digits to drop from the product, of which the last one decides the rounding
+        int drop = scale + rateScale - targetScale;
+        if (drop < 1) {
+            return NOT_REPRESENTABLE;
+        }
+        boolean negative = unscaled < 0;
+        long magnitude = Math.abs(unscaled);
+        // Exact unsigned 128-bit product
+        long high = Math.unsignedMultiplyHigh(magnitude, scaledRate);
+        long low = magnitude * scaledRate;
+        boolean sticky = false;
+        // Drop up to nine digits at a time while the product does not fit in a long, by dividing its four 32-bit
+        // limbs, but keep the last digit to drop, which decides the rounding
+        while ((high != 0 || low < 0) && drop > 1) {
+            int digits = Math.min(drop - 1, CHUNK_DIGITS);
+            long divisor = LONG_POWERS_OF_TEN[digits];
+            long limb = high >>> 32;
+            long quotient3 = limb / divisor;
+            limb = ((limb - quotient3 * divisor) << 32) | (high & LIMB_MASK);
+            long quotient2 = limb / divisor;
+            limb = ((limb - quotient2 * divisor) << 32) | (low >>> 32);
+            long quotient1 = limb / divisor;
+            limb = ((limb - quotient1 * divisor) << 32) | (low & LIMB_MASK);
+            long quotient0 = limb / divisor;
+            sticky |= limb != quotient0 * divisor;
+            high = (quotient3 << 32) | quotient2;
+            low = (quotient1 << 32) | quotient0;
+            drop -= digits;
+        }
+        if (high != 0 || low < 0) {
+            // The rounded result would not fit in a long either
+            return NOT_REPRESENTABLE;
+        }
+        // Drop the remaining digits but the last one, which decides the rounding
+        if (drop > LONG_POWERS_OF_TEN.length) {
+            sticky |= low != 0;
+            low = 0;
+        } else if (drop > 1) {
+            long divisor = LONG_POWERS_OF_TEN[drop - 1];
+            long quotient = low / divisor;
+            sticky |= low != quotient * divisor;
+            low = quotient;
+        }
+        long truncated = low / 10;
+        int digit = (int) (low - truncated * 10);
+        low = truncated;
+        if (round(roundingMode, negative, digit, sticky, low)) {
+            if (low == Long.MAX_VALUE) {
+                return NOT_REPRESENTABLE;
+            }
+            low++;
+        }
+        return negative ? -low : low;
+    }
+
+    /**
+     * Returns the rate as the decimal with {@value #RATE_DIGITS} significant digits used by the fixed-point
+     * arithmetic, e.g. for converting with {@link BigDecimal} arithmetic with the same rate.
+     *
+     * @param rate the rate
+     * @return the rate rounded to {@value #RATE_DIGITS} significant digits
+     */
+    static BigDecimal toDecimalRate(double rate) {
+        int rateScale = getRateScale(rate);
+        if (rateScale < 0) {
+            return new BigDecimal(rate, RATE_CONTEXT);
+        }
+        return BigDecimal.valueOf(scaleRate(rate, rateScale), rateScale);
+    }
+
+    /*
+     * Returns the scale that turns the rate into an integer with the number of significant digits of the rates, or -1
+     * if the rate is outside the range of the fixed-point rates
+     */
+    private static int getRateScale(double rate) {
+        if (!(rate > 0) || rate == Double.POSITIVE_INFINITY) {
+            return -1;
+        }
+        // Estimate the decimal exponent from the binary exponent, which is either exact or one too low
+        int rateScale = RATE_DIGITS - 1 - ((Math.getExponent(rate) * LOG10_2_NUMERATOR) >> LOG10_2_SHIFT);
+        if (rateScale < 0 || rateScale > MAX_RATE_SCALE + 1) {
+            return -1;
+        }
+        if (rateScale > MAX_RATE_SCALE) {
+            return scaleRate(rate, MAX_RATE_SCALE) >= MIN_SCALED_RATE ? MAX_RATE_SCALE : -1;
+        }
+        long scaledRate = scaleRate(rate, rateScale);
+        if (scaledRate >= MAX_SCALED_RATE) {
+            return rateScale > 0 ? rateScale - 1 : -1;
+        }
+        if (scaledRate < MIN_SCALED_RATE) {
+            return rateScale < MAX_RATE_SCALE ? rateScale + 1 : -1;
+        }
+        return rateScale;
+    }
+
+    /*
+     * Multiplies the rate with an exact power of ten, which is correctly rounded, and rounds it to an integer
+     */
+    private static long scaleRate(double rate, int rateScale) {
+        return Math.round(rate * DOUBLE_POWERS_OF_TEN[rateScale]);
+    }
+
+    /*
+     * Decides whether to round the truncated magnitude up from the first dropped digit and whether any of the other
+     * dropped digits is not zero
+     */
+    private static boolean round(RoundingMode roundingMode, boolean negative, int digit, boolean sticky,
+            long truncated) {
+        boolean inexact = digit != 0 || sticky;
+        return switch (roundingMode) {
+            case UP -> inexact;
+            case DOWN -> false;
+            case CEILING -> !negative && inexact;
+            case FLOOR -> negative && inexact;
+            case HALF_UP -> digit >= 5;
+            case HALF_DOWN -> digit > 5 || (digit == 5 && sticky);
+            case HALF_EVEN -> digit > 5 || (digit == 5 && (sticky || (truncated & 1) != 0));
+            case UNNECESSARY -> {
+                if (inexact) {
+                    throw new ArithmeticException("Rounding necessary");
+                }
+                yield false;
+            }
+        };
+    }
+
+    private static BigDecimal convertBigDecimal(Amount amount, double rate, int targetScale,
+            RoundingMode roundingMode) {
+        return amount.toBigDecimal().multiply(toDecimalRate(rate)).setScale(targetScale, roundingMode);
+    }
+
+    private static Amount parseBigDecimal(String value) throws InvalidRequestException {
+        BigDecimal decimal;
+        try {
+            decimal = new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid value: " + value);
+        }
+        if (decimal.signum() == 0) {
+            return new Amount(0, 0);
+        }
+        // Reject huge exponents before rescaling, which would build a power of ten of the size of the exponent
+        long integerDigits = (long) decimal.precision() - decimal.scale();
+        long minScale = (long) decimal.scale() - decimal.precision() + 1;
+        if (integerDigits > MAX_DIGITS || minScale > MAX_DIGITS) {
+            throw new InvalidRequestException(
+                    "Value must have at most " + MAX_DIGITS + " significant and decimal digits: " + value);
+        }
+        if (decimal.scale() > MAX_DIGITS) {
+            decimal = decimal.stripTrailingZeros();
+        }
+        if (decimal.scale() < 0) {
+            decimal = decimal.setScale(0);
+        }
+        if (decimal.precision() > MAX_DIGITS || decimal.scale() > MAX_DIGITS) {
+            throw new InvalidRequestException(
+                    "Value must have at most " + MAX_DIGITS + " significant and decimal digits: " + value);
+        }
+        return new Amount(decimal.unscaledValue().longValue(), decimal.scale());
+    }
+
+}
@@ -0,0 +1,161 @@
+package mhjohans.currency_api.services;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+
+/**
+ * Provides the currency rates of past dates from the {@link HistoricalRateStore}, retrieving the rates of a date from
+ * the external API only the first time the date is requested. The store can also be backfilled with a range of dates
+ * ahead of time, so that conversions of historic values never have to wait for the external API.
+ * <p>
+ * Only dates before the current date are served, because the rates of the current date may still change and are
+ * served from the current rate snapshot instead.
+ */
+@Service
+public class HistoricalRateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalRateService.class);
+
+    private final HistoricalRateStore historicalRateStore;
+
+    private final CurrencyRateService currencyRateService;
+
+    private final int maxBackfillDays;
+
+    // Serializes the loads from the external API, so that each date is retrieved only once
+    private final ReentrantLock loadLock = new ReentrantLock();
+
+    /**
+     * Result of a backfill.
+     *
+     * @param loaded the number of dates retrieved from the external API
+     * @param skipped the number of dates that had already been stored
+     */
+    public record BackfillResult(int loaded, int skipped) {
+    }
+
+    HistoricalRateService(HistoricalRateStore historicalRateStore,
+            CurrencyRateService currencyRateService,
+            @Value("${currency-rates-api.history.max-backfill-days}") int maxBackfillDays) {
+        this.historicalRateStore = historicalRateStore;
+        this.currencyRateService = currencyRateService;
+        this.maxBackfillDays = maxBackfillDays;
+    }
+
+    /**
+     * Derives the cross rate between two currencies on a past date from their stored quotes against the base
+     * currency, retrieving the rates of the date from the external API if they have not been stored yet.
+     *
+     * @param sourceKey the packed code of the currency to convert from
+     * @param targetKey the packed code of the currency to convert to
+     * @param date the date of the rate
+     * @return the currency rate from the source currency to the target currency on the date
+     * @throws InvalidRequestException if the date is not a past date within the range of the store
+     * @throws InvalidCurrencyException if either currency has no rate on the date
+     * @throws ExternalApiException if the rates of the date cannot be retrieved from the external API
+     */
+    public double getRate(int sourceKey, int targetKey, LocalDate date)
+            throws InvalidRequestException, InvalidCurrencyException, ExternalApiException {
+        validate(date);
+        if (!historicalRateStore.contains(date)) {
+            load(date);
+        }
+        double sourceQuote = getQuote(sourceKey, date);
+        double targetQuote = getQuote(targetKey, date);
+        return sourceKey == targetKey ? 1.0 : targetQuote / sourceQuote;
+    }
+
+    /**
+     * Checks whether the rates of a date have been stored, so that they can be served without calling the external
+     * API.
+     *
+     * @param date the date of the rates
+     * @return true if the rates of the date have been stored
+     */
+    public boolean isStored(LocalDate date) {
+        return historicalRateStore.contains(date);
+    }
+
+    /**
+     * Retrieves the rates of all dates in the range from the external API and stores them, skipping the dates that
+     * have already been stored. The backfill stops at the first date that cannot be retrieved, and the dates stored
+     * before it are kept.
+     *
+     * @param from the first date of the range
+     * @param to the last date of the range, inclusive
+     * @return the number of dates retrieved and skipped
+     * @throws InvalidRequestException if the range is empty, too long or not within the past dates of the store
+     * @throws ExternalApiException if the rates of a date cannot be retrieved from the external API
+     */
+    public BackfillResult backfill(LocalDate from, LocalDate to)
+            throws InvalidRequestException, ExternalApiException {
+        if (from.isAfter(to)) {
+            throw new InvalidRequestException("Backfill start date cannot be after the end date");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxBackfillDays) {
+            throw new InvalidRequestException(
+                    "Backfill range exceeds the maximum of " + maxBackfillDays + " days");
+        }
+        validate(from);
+        validate(to);
+        logger.info("Backfilling historical currency rates from {} to {}", from, to);
+        int loaded = 0;
+        int skipped = 0;
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            if (load(date)) {
+                loaded++;
+            } else {
+                skipped++;
+            }
+        }
+        historicalRateStore.flush();
+        logger.info("Backfilled historical currency rates from {} to {}: {} loaded, {} skipped", from, to,
+                loaded, skipped);
+        return new BackfillResult(loaded, skipped);
+    }
+
+    private void validate(LocalDate date) throws InvalidRequestException {
+        if (!date.isBefore(LocalDate.now())) {
+            throw new InvalidRequestException("Date must be before the current date: " + date);
+        }
+        if (!historicalRateStore.isInRange(date)) {
+            throw new InvalidRequestException("Date must be between " + historicalRateStore.getStartDate()
+                    + " and " + historicalRateStore.getEndDate() + ": " + date);
+        }
+    }
+
+    /*
+     * Retrieves and stores the rates of the date unless another caller has already stored them
+     */
+    private boolean load(LocalDate date) throws ExternalApiException {
+        loadLock.lock();
+        try {
+            if (historicalRateStore.contains(date)) {
+                return false;
+            }
+            historicalRateStore.put(date, currencyRateService.getRateMatrix(date));
+            return true;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+
+    private double getQuote(int key, LocalDate date) throws InvalidCurrencyException {
+        double quote = historicalRateStore.getQuote(key, date);
+        if (quote <= 0) {
+            String currency = CurrencyCodes.unpack(key);
+            logger.debug("Currency rate not available on {}: {}", date, currency);
+            throw new InvalidCurrencyException("Currency rate not available on " + date + ": " + currency);
+        }
+        return quote;
+    }
+
+}
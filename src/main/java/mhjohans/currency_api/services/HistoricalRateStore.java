@@ -0,0 +1,285 @@
+package mhjohans.currency_api.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Embedded time-series store of the daily quotes of each currency against the base currency of the external API.
+ * <p>
+ * The quotes of each currency are stored in a column of doubles indexed by the number of days since the start date
+ * of the store, and each column is kept in its own file that is memory-mapped for the lifetime of the application.
+ * Looking up the quote of a currency on a given date is then a single read from the mapped column without allocating
+ * or decoding anything, and only the pages of the columns that are actually read are loaded into memory. The files
+ * are created with their full size up front, so they are sparse on file systems that support it and the days that
+ * have not been stored read as zero, which is not a valid quote.
+ * <p>
+ * The base currency is stored in its own column with the quote of 1 on every stored date, which also marks the date
+ * as stored. The quote of the base currency is written with release semantics after all the other quotes of the date
+ * and read with acquire semantics before them, so a reader that sees the date as stored also sees all of its quotes
+ * without taking the lock of the writer. The base currency of the store is the base currency of the first stored
+ * rates, and rates against other base currencies are converted to quotes against it.
+ * <p>
+ * The base currency, the start date and the maximum number of days of the store are kept in a metadata file next to
+ * the columns. As the position of each quote in its column depends on the start date, the store refuses to open
+ * columns that were stored with a different start date or number of days than configured, instead of reading their
+ * quotes from the wrong dates.
+ */
+@Service
+public class HistoricalRateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoricalRateStore.class);
+
+    private static final String COLUMN_FILE_SUFFIX = ".col";
+
+    private static final String METADATA_FILE = "store.properties";
+
+    private static final String BASE_CURRENCY_PROPERTY = "base-currency";
+
+    private static final String START_DATE_PROPERTY = "start-date";
+
+    private static final String MAX_DAYS_PROPERTY = "max-days";
+
+    // Doubles in the mapped columns, in the big-endian byte order of the column files
+    private static final VarHandle QUOTE =
+            MethodHandles.byteBufferViewVarHandle(double[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+
+    private final LocalDate startDate;
+
+    private final int maxDays;
+
+    // Columns indexed by packed currency code, null for currencies without stored quotes
+    private final AtomicReferenceArray<ByteBuffer> columns =
+            new AtomicReferenceArray<>(CurrencyCodes.CAPACITY);
+
+    private final List<MappedByteBuffer> mappedBuffers = new ArrayList<>();
+
+    private volatile String baseCurrency;
+
+    HistoricalRateStore(@Value("${currency-rates-api.history.path}") Path directory,
+            @Value("${currency-rates-api.history.start-date}") String startDate,
+            @Value("${currency-rates-api.history.max-days}") int maxDays) {
+        this.directory = directory;
+        this.startDate = LocalDate.parse(startDate);
+        this.maxDays = maxDays;
+    }
+
+    /**
+     * Maps the columns of all currencies stored so far on startup.
+     *
+     * @throws IllegalStateException if the columns were stored with a different start date or maximum number of
+     *         days than configured
+     */
+    @PostConstruct
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        Properties metadata = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(METADATA_FILE), StandardCharsets.US_ASCII)) {
+            metadata.load(reader);
+        } catch (NoSuchFileException e) {
+            logger.debug("No historical currency rates stored in {}", directory);
+            return;
+        }
+        String storedStartDate = metadata.getProperty(START_DATE_PROPERTY);
+        String storedMaxDays = metadata.getProperty(MAX_DAYS_PROPERTY);
+        if (!startDate.toString().equals(storedStartDate) || !String.valueOf(maxDays).equals(storedMaxDays)) {
+            throw new IllegalStateException("Historical currency rates in " + directory + " were stored from "
+                    + storedStartDate + " for " + storedMaxDays + " days, but are configured from " + startDate
+                    + " for " + maxDays + " days; restore the configuration or use another directory");
+        }
+        baseCurrency = metadata.getProperty(BASE_CURRENCY_PROPERTY);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + COLUMN_FILE_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                int key = CurrencyCodes.pack(fileName.substring(0, fileName.length() - COLUMN_FILE_SUFFIX.length()));
+                if (key != CurrencyCodes.INVALID) {
+                    columns.set(key, map(file));
+                }
+            }
+        }
+        logger.info("Opened historical currency rates against {} from {}", baseCurrency, directory);
+    }
+
+    /**
+     * Forces the changes to the mapped columns to be written to the files on shutdown.
+     */
+    @PreDestroy
+    synchronized void flush() {
+        for (MappedByteBuffer mappedBuffer : mappedBuffers) {
+            mappedBuffer.force();
+        }
+    }
+
+    /**
+     * Stores the quotes of all currencies in the rate matrix on the given date, replacing any quotes already stored
+     * on the date.
+     *
+     * @param date the date to store the quotes on
+     * @param rateMatrix the rate matrix, which must contain the base currency of the store
+     * @throws IllegalArgumentException if the date is out of the range of the store or the rate matrix does not
+     *         contain the base currency of the store
+     */
+    public synchronized void put(LocalDate date, RateMatrix rateMatrix) {
+        int index = index(date);
+        if (index < 0) {
+            throw new IllegalArgumentException("Date out of the range of the historical rates store: " + date);
+        }
+        if (baseCurrency == null) {
+            writeMetadata(rateMatrix.getBaseCurrency());
+        }
+        int baseOrdinal = rateMatrix.ordinal(baseCurrency);
+        if (baseOrdinal < 0) {
+            throw new IllegalArgumentException(
+                    "Currency rates must contain the base currency of the store: " + baseCurrency);
+        }
+        // Convert the quotes to quotes against the base currency of the store, which is a no-op for the same base
+        double baseQuote = rateMatrix.getBaseRate(baseOrdinal);
+        for (int ordinal = 0; ordinal < rateMatrix.size(); ordinal++) {
+            int key = CurrencyCodes.pack(rateMatrix.getCurrency(ordinal));
+            if (key != CurrencyCodes.INVALID && ordinal != baseOrdinal) {
+                QUOTE.set(getOrCreateColumn(key), offset(index), rateMatrix.getBaseRate(ordinal) / baseQuote);
+            }
+        }
+        // Mark the date as stored with a release write, which orders it after all of its quotes
+        QUOTE.setRelease(getOrCreateColumn(CurrencyCodes.pack(baseCurrency)), offset(index), 1.0);
+    }
+
+    /**
+     * Checks whether the quotes have been stored on the given date.
+     *
+     * @param date the date
+     * @return true if the quotes have been stored on the date
+     */
+    public boolean contains(LocalDate date) {
+        String base = baseCurrency;
+        int index = index(date);
+        if (base == null || index < 0) {
+            return false;
+        }
+        // Acquire read of the marker, so that the quotes read after it are at least as new as the marker
+        ByteBuffer column = columns.get(CurrencyCodes.pack(base));
+        return column != null && (double) QUOTE.getAcquire(column, offset(index)) > 0;
+    }
+
+    /**
+     * Returns the quote of a currency against the base currency of the store on the given date. The quotes of a date
+     * are complete only once {@link #contains(LocalDate)} has returned true for the date.
+     *
+     * @param key the packed currency code
+     * @param date the date
+     * @return the quote of the currency, or zero if no quote has been stored for the currency on the date
+     * @see CurrencyCodes
+     */
+    public double getQuote(int key, LocalDate date) {
+        int index = index(date);
+        if (index < 0 || key < 0 || key >= CurrencyCodes.CAPACITY) {
+            return 0;
+        }
+        ByteBuffer column = columns.get(key);
+        return column != null ? (double) QUOTE.get(column, offset(index)) : 0;
+    }
+
+    /**
+     * Checks whether the date is within the range of dates that can be stored.
+     *
+     * @param date the date
+     * @return true if quotes can be stored on the date
+     */
+    public boolean isInRange(LocalDate date) {
+        return index(date) >= 0;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return startDate.plusDays(maxDays - 1L);
+    }
+
+    /**
+     * Returns the base currency of the stored quotes.
+     *
+     * @return the code of the base currency, or null if nothing has been stored yet
+     */
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    private int index(LocalDate date) {
+        long index = ChronoUnit.DAYS.between(startDate, date);
+        return index >= 0 && index < maxDays ? (int) index : -1;
+    }
+
+    private static int offset(int index) {
+        return index * Double.BYTES;
+    }
+
+    private ByteBuffer getOrCreateColumn(int key) {
+        ByteBuffer column = columns.get(key);
+        if (column == null) {
+            column = map(directory.resolve(CurrencyCodes.unpack(key) + COLUMN_FILE_SUFFIX));
+            columns.set(key, column);
+        }
+        return column;
+    }
+
+    /*
+     * Maps the column file, creating it with the full size of the store if it does not exist
+     */
+    private ByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer mappedBuffer =
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) maxDays * Double.BYTES);
+            mappedBuffers.add(mappedBuffer);
+            return mappedBuffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to map historical currency rates from " + file, e);
+        }
+    }
+
+    /*
+     * Writes the metadata of the store with the base currency of the first stored rates
+     */
+    private void writeMetadata(String currency) {
+        Properties metadata = new Properties();
+        metadata.setProperty(BASE_CURRENCY_PROPERTY, currency);
+        metadata.setProperty(START_DATE_PROPERTY, startDate.toString());
+        metadata.setProperty(MAX_DAYS_PROPERTY, String.valueOf(maxDays));
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(METADATA_FILE), StandardCharsets.US_ASCII)) {
+            metadata.store(writer, "Historical currency rates");
+            baseCurrency = currency;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store the metadata of historical currency rates", e);
+        }
+    }
+
+}
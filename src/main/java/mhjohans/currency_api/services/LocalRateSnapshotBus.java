@@ -0,0 +1,122 @@
+package mhjohans.currency_api.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stand-in for a shared snapshot store that shares the snapshots between the replicas running in the same process
+ * through a {@link Hub}, for testing the shared mode without external infrastructure.
+ */
+@Component
+@ConditionalOnProperty(name = "currency-rates-api.shared-snapshots.mode", havingValue = "local")
+public class LocalRateSnapshotBus implements RateSnapshotBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalRateSnapshotBus.class);
+
+    private final Hub hub;
+
+    private final Duration leaseDuration;
+
+    private final String replicaId = UUID.randomUUID().toString();
+
+    /**
+     * Shared state of the replicas in the process: the leader lease, the latest published snapshot and the
+     * subscribers of all replicas.
+     */
+    public static final class Hub {
+
+        // Hub shared by all application contexts in the process
+        static final Hub DEFAULT = new Hub();
+
+        private String leaderId;
+
+        private Instant leaseExpiry = Instant.MIN;
+
+        private VersionedRateSnapshot latest;
+
+        private final List<Subscriber> subscribers = new ArrayList<>();
+
+        private record Subscriber(String replicaId, Consumer<VersionedRateSnapshot> consumer) {
+        }
+
+    }
+
+    LocalRateSnapshotBus(@Value("${currency-rates-api.shared-snapshots.lease-duration}") Duration leaseDuration) {
+        this(Hub.DEFAULT, leaseDuration);
+    }
+
+    LocalRateSnapshotBus(Hub hub, Duration leaseDuration) {
+        this.hub = hub;
+        this.leaseDuration = leaseDuration;
+    }
+
+    @Override
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    @Override
+    public boolean acquireLeadership() {
+        synchronized (hub) {
+            Instant now = Instant.now();
+            if (replicaId.equals(hub.leaderId) || now.isAfter(hub.leaseExpiry)) {
+                if (!replicaId.equals(hub.leaderId)) {
+                    logger.info("Replica {} acquired the leader lease", replicaId);
+                }
+                hub.leaderId = replicaId;
+                hub.leaseExpiry = now.plus(leaseDuration);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public boolean publish(RateMatrix rateMatrix) {
+        VersionedRateSnapshot published;
+        List<Hub.Subscriber> subscribers;
+        synchronized (hub) {
+            if (!replicaId.equals(hub.leaderId) || Instant.now().isAfter(hub.leaseExpiry)) {
+                logger.warn("Replica {} lost the leader lease, not publishing {}", replicaId, rateMatrix);
+                return false;
+            }
+            long version = hub.latest != null ? hub.latest.version() + 1 : 1;
+            published = new VersionedRateSnapshot(version, replicaId, rateMatrix);
+            hub.latest = published;
+            subscribers = List.copyOf(hub.subscribers);
+        }
+        // Notify outside of the lock, the subscribers only swap in the snapshot
+        for (Hub.Subscriber subscriber : subscribers) {
+            if (!subscriber.replicaId().equals(replicaId)) {
+                subscriber.consumer().accept(published);
+            }
+        }
+        logger.debug("Replica {} published version {} of {}", replicaId, published.version(), rateMatrix);
+        return true;
+    }
+
+    @Override
+    public Optional<VersionedRateSnapshot> getLatest() {
+        synchronized (hub) {
+            return Optional.ofNullable(hub.latest);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<VersionedRateSnapshot> subscriber) {
+        synchronized (hub) {
+            hub.subscribers.add(new Hub.Subscriber(replicaId, subscriber));
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package mhjohans.currency_api.services;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+
+/**
+ * Immutable matrix of currency rates that are all quoted against a single base currency.
+ * <p>
+ * The quotes are stored in a dense primitive array indexed by currency ordinal, which is the position of the
+ * currency code in the sorted list of codes. Any cross rate between two currencies can then be derived from the
+ * base quotes as {@code base[target] / base[source]} without further calls to the external API.
+ */
+public final class RateMatrix {
+
+    private final String baseCurrency;
+
+    private final String[] currencies;
+
+    private final double[] baseRates;
+
+    // Ordinals indexed by packed currency code, -1 for currencies not in the matrix
+    private final short[] ordinals;
+
+    private final LocalDate date;
+
+    private final Instant timestamp;
+
+    private RateMatrix(String baseCurrency, String[] currencies, double[] baseRates, LocalDate date,
+            Instant timestamp) {
+        this.baseCurrency = baseCurrency;
+        this.currencies = currencies;
+        this.baseRates = baseRates;
+        this.date = date;
+        this.timestamp = timestamp;
+        this.ordinals = new short[CurrencyCodes.CAPACITY];
+        Arrays.fill(ordinals, (short) -1);
+        for (int i = 0; i < currencies.length; i++) {
+            int key = CurrencyCodes.pack(currencies[i]);
+            if (key != CurrencyCodes.INVALID) {
+                ordinals[key] = (short) i;
+            }
+        }
+    }
+
+    /**
+     * Creates a rate matrix from the rates returned by the external API. All rates must share the same base
+     * currency, which is added to the matrix with the quote of 1.
+     *
+     * @param rates the currency rates quoted against a single base currency
+     * @param timestamp the time when the rates were retrieved
+     * @return the rate matrix containing the base currency and all quote currencies
+     */
+    public static RateMatrix of(Collection<CurrencyRateDTO> rates, Instant timestamp) {
+        if (rates.isEmpty()) {
+            throw new IllegalArgumentException("Currency rates cannot be empty");
+        }
+        CurrencyRateDTO first = rates.iterator().next();
+        Map<String, Double> quotes = HashMap.newHashMap(rates.size());
+        for (CurrencyRateDTO rate : rates) {
+            if (!first.baseCurrency().equals(rate.baseCurrency())) {
+                throw new IllegalArgumentException("Currency rates must have the same base currency: "
+                        + first.baseCurrency() + " and " + rate.baseCurrency());
+            }
+            quotes.put(rate.quoteCurrency(), rate.quote());
+        }
+        return of(first.baseCurrency(), quotes, first.date(), timestamp);
+    }
+
+    /**
+     * Creates a rate matrix from the given quotes against the base currency.
+     *
+     * @param baseCurrency the code of the base currency
+     * @param quotes the quotes of each currency against the base currency
+     * @param date the date of the quotes
+     * @param timestamp the time when the quotes were retrieved
+     * @return the rate matrix containing the base currency and all quote currencies
+     */
+    public static RateMatrix of(String baseCurrency, Map<String, Double> quotes, LocalDate date,
+            Instant timestamp) {
+        Map<String, Double> allQuotes = new HashMap<>(quotes);
+        allQuotes.put(baseCurrency, 1.0);
+        if (allQuotes.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many currencies in rate matrix: " + allQuotes.size());
+        }
+        String[] currencies = allQuotes.keySet().toArray(String[]::new);
+        Arrays.sort(currencies);
+        double[] baseRates = new double[currencies.length];
+        for (int i = 0; i < currencies.length; i++) {
+            baseRates[i] = allQuotes.get(currencies[i]);
+        }
+        return new RateMatrix(baseCurrency, currencies, baseRates, date, timestamp);
+    }
+
+    /**
+     * Returns the ordinal of the given currency code in the matrix.
+     *
+     * @param currency the currency code
+     * @return the ordinal of the currency or -1 if the matrix does not contain a rate for the currency
+     */
+    public int ordinal(String currency) {
+        return ordinal(CurrencyCodes.pack(currency));
+    }
+
+    /**
+     * Returns the ordinal of the given packed currency code in the matrix.
+     *
+     * @param key the packed currency code
+     * @return the ordinal of the currency or -1 if the matrix does not contain a rate for the currency
+     * @see CurrencyCodes
+     */
+    public int ordinal(int key) {
+        return key >= 0 && key < CurrencyCodes.CAPACITY ? ordinals[key] : -1;
+    }
+
+    /**
+     * Derives the cross rate between two currencies from their quotes against the base currency.
+     *
+     * @param sourceOrdinal the ordinal of the source currency
+     * @param targetOrdinal the ordinal of the target currency
+     * @return the currency rate from the source currency to the target currency
+     */
+    public double getRate(int sourceOrdinal, int targetOrdinal) {
+        if (sourceOrdinal == targetOrdinal) {
+            return 1.0;
+        }
+        return baseRates[targetOrdinal] / baseRates[sourceOrdinal];
+    }
+
+    /**
+     * Derives the cross rates from one currency to all currencies in the matrix in a single pass over the quotes,
+     * which the compiler can vectorize. The rates are the same as the ones returned by
+     * {@link #getRate(int, int)}.
+     *
+     * @param sourceOrdinal the ordinal of the source currency
+     * @param rates the array to write the currency rates to, indexed by the ordinal of the target currency and at
+     *        least as long as the number of currencies in the matrix
+     */
+    public void getRates(int sourceOrdinal, double[] rates) {
+        double sourceRate = baseRates[sourceOrdinal];
+        for (int i = 0; i < baseRates.length; i++) {
+            rates[i] = baseRates[i] / sourceRate;
+        }
+    }
+
+    /**
+     * Returns the quote of a currency against the base currency.
+     *
+     * @param ordinal the ordinal of the currency
+     * @return the quote of the currency against the base currency
+     */
+    public double getBaseRate(int ordinal) {
+        return baseRates[ordinal];
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public int size() {
+        return currencies.length;
+    }
+
+    public String getCurrency(int ordinal) {
+        return currencies[ordinal];
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "RateMatrix[baseCurrency=" + baseCurrency + ", size=" + currencies.length + ", date="
+                + date + ", timestamp=" + timestamp + "]";
+    }
+
+}
@@ -0,0 +1,68 @@
+package mhjohans.currency_api.services;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Shares the rate snapshots between the replicas of the service, so that only one elected replica calls the external
+ * API and the number of calls stays constant regardless of the number of replicas.
+ * <p>
+ * The replica holding the leader lease refreshes the snapshot and publishes it with the next version number. The
+ * other replicas are notified of each published snapshot and use the latest published snapshot instead of calling
+ * the external API. The lease is renewed by the leader whenever it refreshes, and if the leader stops renewing it,
+ * another replica takes over once the lease has expired.
+ * <p>
+ * The shared mode is enabled with the {@code currency-rates-api.shared-snapshots.mode} property, see
+ * {@link LocalRateSnapshotBus} and {@link FileRateSnapshotBus} for the implementations.
+ */
+public interface RateSnapshotBus {
+
+    /**
+     * Rate snapshot published by the leader replica.
+     *
+     * @param version the version number, which increases with each published snapshot
+     * @param publisher the identifier of the replica that published the snapshot
+     * @param rateMatrix the rate matrix
+     */
+    record VersionedRateSnapshot(long version, String publisher, RateMatrix rateMatrix) {
+    }
+
+    /**
+     * Returns the identifier of this replica.
+     *
+     * @return the identifier of the replica
+     */
+    String getReplicaId();
+
+    /**
+     * Acquires or renews the leader lease for this replica unless another replica holds an unexpired lease.
+     *
+     * @return true if this replica is the leader
+     */
+    boolean acquireLeadership();
+
+    /**
+     * Publishes a snapshot to the other replicas with the next version number, unless this replica has lost the
+     * leader lease since acquiring it.
+     *
+     * @param rateMatrix the rate matrix to publish
+     * @return true if the snapshot was published
+     */
+    boolean publish(RateMatrix rateMatrix);
+
+    /**
+     * Returns the latest published snapshot.
+     *
+     * @return the latest published snapshot, or empty if nothing has been published yet
+     */
+    Optional<VersionedRateSnapshot> getLatest();
+
+    /**
+     * Subscribes to the snapshots published by the other replicas. The subscriber is notified of each new version at
+     * most once and in the order of the versions, but it may skip versions.
+     *
+     * @param subscriber the subscriber to notify
+     */
+    void subscribe(Consumer<VersionedRateSnapshot> subscriber);
+
+}
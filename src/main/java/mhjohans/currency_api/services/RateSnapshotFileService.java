@@ -0,0 +1,253 @@
+package mhjohans.currency_api.services;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Persists the current rate snapshot and list of supported currencies to a compact binary file, so that the service
+ * can serve conversions immediately after a restart instead of waiting for the external API.
+ * <p>
+ * The file is written periodically and on shutdown by writing a new file next to the current one and atomically
+ * moving it in its place, so that a crash while writing never leaves a partial file behind. On startup the file is
+ * memory-mapped and decoded in one pass, and the snapshot is restored if it is within the maximum age. The restored
+ * snapshot keeps its original timestamp, so the usual stale-serving rules of {@link RateSnapshotService} apply while
+ * the first scheduled refresh catches up in the background.
+ * <p>
+ * The file starts with a magic number and a format version followed by the rate matrix, stored as the base currency,
+ * date and timestamp and the quote of each currency keyed by its packed currency code, and the supported currencies,
+ * stored as the time they were loaded and their packed currency codes each followed by the number of decimal digits
+ * of the currency.
+ */
+@Service
+public class RateSnapshotFileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateSnapshotFileService.class);
+
+    private static final int MAGIC = 0x43524154;
+
+    private static final short VERSION = 2;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final RateSnapshotService rateSnapshotService;
+
+    private final SupportedCurrenciesService supportedCurrenciesService;
+
+    private final Path path;
+
+    private final Duration maxAge;
+
+    private RateMatrix lastWrittenRateMatrix;
+
+    private SupportedCurrenciesService.Loaded lastWrittenSupportedCurrencies;
+
+    /**
+     * Snapshot decoded from the file.
+     *
+     * @param rateMatrix the rate matrix
+     * @param supportedCurrencies the supported currencies, or null if they had not been loaded when written
+     */
+    record Snapshot(RateMatrix rateMatrix, SupportedCurrenciesService.Loaded supportedCurrencies) {
+    }
+
+    RateSnapshotFileService(RateSnapshotService rateSnapshotService,
+            SupportedCurrenciesService supportedCurrenciesService,
+            @Value("${currency-rates-api.snapshot.path}") Path path,
+            @Value("${currency-rates-api.snapshot.max-age}") Duration maxAge) {
+        this.rateSnapshotService = rateSnapshotService;
+        this.supportedCurrenciesService = supportedCurrenciesService;
+        this.path = path;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Restores the snapshot from the file on startup before any requests are served, unless the file is missing,
+     * unreadable or older than the maximum age.
+     */
+    @PostConstruct
+    void restore() {
+        Optional<Snapshot> snapshot = read();
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        RateMatrix rateMatrix = snapshot.get().rateMatrix();
+        Duration age = rateSnapshotService.getAge(rateMatrix);
+        if (age.compareTo(maxAge) > 0) {
+            logger.info("Not restoring currency rate snapshot with age {} exceeding the maximum age of {}",
+                    age, maxAge);
+            return;
+        }
+        rateSnapshotService.restore(rateMatrix);
+        SupportedCurrenciesService.Loaded supportedCurrencies = snapshot.get().supportedCurrencies();
+        if (supportedCurrencies != null) {
+            supportedCurrenciesService.restore(supportedCurrencies.supportedCurrencies(),
+                    supportedCurrencies.loadedAt());
+        }
+        lastWrittenRateMatrix = rateMatrix;
+        lastWrittenSupportedCurrencies = supportedCurrencies;
+    }
+
+    /**
+     * Writes the current snapshot to the file on a scheduled interval defined in the application properties file,
+     * unless nothing has changed since the last write.
+     */
+    @Scheduled(fixedRateString = "${currency-rates-api.snapshot.write-interval}",
+            initialDelayString = "${currency-rates-api.snapshot.write-interval}")
+    synchronized void write() {
+        RateMatrix rateMatrix = rateSnapshotService.getLoadedSnapshot();
+        SupportedCurrenciesService.Loaded supportedCurrencies = supportedCurrenciesService.getLoaded();
+        if (rateMatrix == null || (rateMatrix == lastWrittenRateMatrix
+                && supportedCurrencies == lastWrittenSupportedCurrencies)) {
+            logger.trace("Currency rate snapshot not changed since the last write");
+            return;
+        }
+        try {
+            write(new Snapshot(rateMatrix, supportedCurrencies));
+            lastWrittenRateMatrix = rateMatrix;
+            lastWrittenSupportedCurrencies = supportedCurrencies;
+            logger.debug("Wrote currency rate snapshot to {}: {}", path, rateMatrix);
+        } catch (IOException e) {
+            logger.warn("Failed to write currency rate snapshot to {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    void writeOnShutdown() {
+        write();
+    }
+
+    /*
+     * Reads and decodes the memory-mapped file, ignoring a missing or corrupt file
+     */
+    Optional<Snapshot> read() {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Optional<Snapshot> snapshot = decode(buffer);
+            snapshot.ifPresent(s -> logger.debug("Read currency rate snapshot from {}: {}", path,
+                    s.rateMatrix()));
+            return snapshot;
+        } catch (NoSuchFileException e) {
+            logger.debug("No currency rate snapshot file at {}", path);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read currency rate snapshot from {}", path, e);
+        }
+        return Optional.empty();
+    }
+
+    /*
+     * Writes the encoded snapshot to a temporary file and atomically replaces the file with it
+     */
+    void write(Snapshot snapshot) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = encode(snapshot);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    static ByteBuffer encode(Snapshot snapshot) {
+        RateMatrix rateMatrix = snapshot.rateMatrix();
+        SupportedCurrenciesService.Loaded supportedCurrencies = snapshot.supportedCurrencies();
+        int[] supportedKeys = supportedCurrencies != null
+                ? supportedCurrencies.supportedCurrencies().keys()
+                : new int[0];
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Short.BYTES
+                + Integer.BYTES + 2 * Long.BYTES + Integer.BYTES
+                + rateMatrix.size() * (Integer.BYTES + Double.BYTES)
+                + Long.BYTES + Integer.BYTES + supportedKeys.length * (Integer.BYTES + Byte.BYTES));
+        buffer.putInt(MAGIC).putShort(VERSION);
+        // Rate matrix
+        buffer.putInt(CurrencyCodes.pack(rateMatrix.getBaseCurrency()));
+        buffer.putLong(rateMatrix.getDate() != null ? rateMatrix.getDate().toEpochDay() : NO_DATE);
+        buffer.putLong(rateMatrix.getTimestamp().toEpochMilli());
+        int countPosition = buffer.position();
+        buffer.putInt(0);
+        int count = 0;
+        for (int ordinal = 0; ordinal < rateMatrix.size(); ordinal++) {
+            int key = CurrencyCodes.pack(rateMatrix.getCurrency(ordinal));
+            if (key != CurrencyCodes.INVALID) {
+                buffer.putInt(key).putDouble(rateMatrix.getBaseRate(ordinal));
+                count++;
+            }
+        }
+        buffer.putInt(countPosition, count);
+        // Supported currencies
+        buffer.putLong(supportedCurrencies != null ? supportedCurrencies.loadedAt().toEpochMilli()
+                : Long.MIN_VALUE);
+        buffer.putInt(supportedCurrencies != null ? supportedKeys.length : -1);
+        for (int key : supportedKeys) {
+            buffer.putInt(key).put((byte) supportedCurrencies.supportedCurrencies().getDecimalDigits(key));
+        }
+        return buffer.flip();
+    }
+
+    static Optional<Snapshot> decode(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                logger.warn("Ignoring currency rate snapshot with unknown format");
+                return Optional.empty();
+            }
+            // Rate matrix
+            String baseCurrency = CurrencyCodes.unpack(buffer.getInt());
+            long epochDay = buffer.getLong();
+            Instant timestamp = Instant.ofEpochMilli(buffer.getLong());
+            int count = buffer.getInt();
+            Map<String, Double> quotes = HashMap.newHashMap(count);
+            for (int i = 0; i < count; i++) {
+                quotes.put(CurrencyCodes.unpack(buffer.getInt()), buffer.getDouble());
+            }
+            RateMatrix rateMatrix = RateMatrix.of(baseCurrency, quotes,
+                    epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null, timestamp);
+            // Supported currencies
+            long loadedAt = buffer.getLong();
+            int supportedCount = buffer.getInt();
+            SupportedCurrenciesService.Loaded supportedCurrencies = null;
+            if (supportedCount >= 0) {
+                Map<String, Integer> decimalDigits = LinkedHashMap.newLinkedHashMap(supportedCount);
+                for (int i = 0; i < supportedCount; i++) {
+                    decimalDigits.put(CurrencyCodes.unpack(buffer.getInt()), (int) buffer.get());
+                }
+                supportedCurrencies = new SupportedCurrenciesService.Loaded(
+                        SupportedCurrencies.of(decimalDigits), Instant.ofEpochMilli(loadedAt));
+            }
+            return Optional.of(new Snapshot(rateMatrix, supportedCurrencies));
+        } catch (BufferUnderflowException e) {
+            logger.warn("Ignoring truncated currency rate snapshot");
+            return Optional.empty();
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package mhjohans.currency_api.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.RateSnapshotBus.VersionedRateSnapshot;
+import reactor.core.publisher.Mono;
+
+/**
+ * Holds the current snapshot of currency rates and refreshes it ahead of time in the background.
+ * <p>
+ * The next snapshot is built from the external API while the current one keeps serving requests, and is then swapped
+ * in with a single atomic reference update. Request threads therefore never wait for the external API once the first
+ * snapshot has been loaded, and a failed refresh keeps the last good snapshot in use.
+ * <p>
+ * All loads and refreshes go through a {@link SingleFlightLoader}, so concurrent loads share a single call to the
+ * external API.
+ * <p>
+ * Snapshots older than the maximum age are stale. A stale snapshot is still served until it reaches the maximum
+ * staleness, while a revalidation is triggered in the background. Beyond the maximum staleness the snapshot is
+ * refreshed synchronously and if that fails, the rates are no longer served.
+ * <p>
+ * In the shared mode, only the replica holding the leader lease of the {@link RateSnapshotBus} calls the external API
+ * and publishes each new snapshot. The other replicas swap in the published snapshots as they arrive and take the
+ * latest published snapshot on their own refreshes. They only fall back to the external API if the latest published
+ * snapshot is stale, i.e. the leader has failed to refresh it, until one of them takes over the expired lease.
+ * <p>
+ * Listeners are notified of each snapshot swapped in, e.g. to push the changed rates to subscribed clients with
+ * {@link RateUpdateService}.
+ * <p>
+ * Lookups, loads, the number of currencies and the age of the snapshot are measured as the {@code currencyRates}
+ * cache with {@link CacheMetrics}.
+ */
+@Service
+public class RateSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateSnapshotService.class);
+
+    private final CurrencyRateService currencyRateService;
+
+    private final TaskExecutor taskExecutor;
+
+    private final Duration maxAge;
+
+    private final Duration maxStaleness;
+
+    private final AtomicReference<RateMatrix> snapshot = new AtomicReference<>();
+
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    private final SingleFlightLoader<RateMatrix> loader;
+
+    private final RateSnapshotBus rateSnapshotBus;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final List<Consumer<RateMatrix>> listeners = new CopyOnWriteArrayList<>();
+
+    RateSnapshotService(CurrencyRateService currencyRateService,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+            @Value("${currency-rates-api.currency-rates.max-age}") Duration maxAge,
+            @Value("${currency-rates-api.currency-rates.max-staleness}") Duration maxStaleness,
+            MeterRegistry meterRegistry, Optional<RateSnapshotBus> rateSnapshotBus) {
+        this.currencyRateService = currencyRateService;
+        this.taskExecutor = taskExecutor;
+        this.maxAge = maxAge;
+        this.maxStaleness = maxStaleness;
+        this.loader = new SingleFlightLoader<>("currencyRates", meterRegistry);
+        this.rateSnapshotBus = rateSnapshotBus.orElse(null);
+        this.cacheMetrics = new CacheMetrics("currencyRates", snapshot,
+                current -> current.get() != null ? current.get().size() : 0,
+                current -> current.get() != null ? getAge(current.get()).toMillis() / 1000.0 : Double.NaN,
+                meterRegistry);
+    }
+
+    /**
+     * Subscribes to the snapshots published by the leader replica in the shared mode.
+     */
+    @PostConstruct
+    void subscribe() {
+        if (rateSnapshotBus != null) {
+            rateSnapshotBus.subscribe(this::accept);
+        }
+    }
+
+    /**
+     * Adds a listener that is notified of each new snapshot after it has been swapped in. The listener is called on
+     * the thread that swapped in the snapshot, e.g. the scheduled refresh or a request thread, so it must return
+     * quickly and hand any further work over to another thread.
+     *
+     * @param listener the listener to notify with the new rate matrix
+     */
+    public void addListener(Consumer<RateMatrix> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the current snapshot of currency rates.
+     * <ul>
+     * <li>Only the very first call before any snapshot has been loaded waits for the external API, and concurrent first
+     * calls share the same load.
+     * <li>A stale snapshot is returned as is and a revalidation is triggered in the background.
+     * <li>A snapshot older than the maximum staleness is refreshed synchronously before returning it.
+     * </ul>
+     *
+     * @return the current rate matrix
+     * @throws StaleCurrencyRateException if the snapshot is older than the maximum staleness and cannot be refreshed
+     */
+    public RateMatrix getSnapshot() throws ExternalApiException, StaleCurrencyRateException {
+        RateMatrix current = snapshot.get();
+        if (current == null) {
+            logger.debug("No currency rate snapshot available, loading it synchronously");
+            cacheMetrics.miss();
+            return load(null);
+        }
+        Duration age = getAge(current);
+        if (!isStale(age)) {
+            cacheMetrics.hit();
+            return current;
+        }
+        if (age.compareTo(maxStaleness) <= 0) {
+            logger.debug("Serving stale currency rate snapshot with age {}", age);
+            cacheMetrics.stale();
+            revalidate();
+            return current;
+        }
+        logger.debug("Currency rate snapshot with age {} exceeds the maximum staleness, loading it synchronously",
+                age);
+        cacheMetrics.miss();
+        try {
+            return load(current);
+        } catch (Exception e) {
+            throw new StaleCurrencyRateException(
+                    "Currency rates are older than the maximum staleness of " + maxStaleness, e);
+        }
+    }
+
+    /**
+     * Returns the current snapshot of currency rates without blocking, for the reactive web stack. The same rules
+     * apply as in {@link #getSnapshot()}, but the snapshot is loaded with the given non-blocking loader, which should
+     * share a single load between concurrent subscribers. Background revalidations and scheduled refreshes still run
+     * on the task executor and the scheduler, never on the calling event loop thread.
+     *
+     * @param loader the non-blocking loader of a new rate matrix from the external API
+     * @return the current rate matrix, or a {@link StaleCurrencyRateException} error if the snapshot is older than
+     *         the maximum staleness and cannot be refreshed
+     */
+    public Mono<RateMatrix> getSnapshot(Mono<RateMatrix> loader) {
+        RateMatrix current = snapshot.get();
+        if (current == null) {
+            logger.debug("No currency rate snapshot available, loading it asynchronously");
+            cacheMetrics.miss();
+            return loader.map(next -> swap(null, next));
+        }
+        Duration age = getAge(current);
+        if (!isStale(age)) {
+            cacheMetrics.hit();
+            return Mono.just(current);
+        }
+        if (age.compareTo(maxStaleness) <= 0) {
+            logger.debug("Serving stale currency rate snapshot with age {}", age);
+            cacheMetrics.stale();
+            revalidate();
+            return Mono.just(current);
+        }
+        logger.debug("Currency rate snapshot with age {} exceeds the maximum staleness, loading it asynchronously",
+                age);
+        cacheMetrics.miss();
+        return loader.map(next -> swap(current, next))
+                .onErrorMap(e -> new StaleCurrencyRateException(
+                        "Currency rates are older than the maximum staleness of " + maxStaleness, e));
+    }
+
+    /**
+     * Checks whether the next call to {@link #getSnapshot()} has to load the snapshot from the external API before
+     * returning, i.e. no snapshot has been loaded yet or it is older than the maximum staleness.
+     *
+     * @return true if the snapshot has to be loaded synchronously
+     */
+    public boolean isLoadRequired() {
+        RateMatrix current = snapshot.get();
+        return current == null || getAge(current).compareTo(maxStaleness) > 0;
+    }
+
+    /**
+     * Returns the current snapshot without loading it.
+     *
+     * @return the current rate matrix, or null if no snapshot has been loaded yet
+     */
+    RateMatrix getLoadedSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Restores a previously loaded snapshot, e.g. from a snapshot file on startup, unless a snapshot has already been
+     * loaded. The restored snapshot keeps its original timestamp, so it is served as stale and revalidated in the
+     * background if it is older than the maximum age.
+     *
+     * @param rateMatrix the previously loaded rate matrix
+     */
+    void restore(RateMatrix rateMatrix) {
+        if (snapshot.compareAndSet(null, rateMatrix)) {
+            logger.info("Restored currency rate snapshot: {}", rateMatrix);
+            notifyListeners(rateMatrix);
+        }
+    }
+
+    /**
+     * Swaps in a snapshot published by the leader replica, unless the current snapshot is already newer.
+     *
+     * @param published the published snapshot
+     */
+    void accept(VersionedRateSnapshot published) {
+        RateMatrix next = published.rateMatrix();
+        RateMatrix previous = snapshot.getAndAccumulate(next, (current, candidate) -> current == null
+                || candidate.getTimestamp().isAfter(current.getTimestamp()) ? candidate : current);
+        if (previous == null || next.getTimestamp().isAfter(previous.getTimestamp())) {
+            logger.debug("Accepted version {} of currency rate snapshot from replica {}: {}", published.version(),
+                    published.publisher(), next);
+            notifyListeners(next);
+        }
+    }
+
+    /**
+     * Returns the age of the given snapshot.
+     *
+     * @param rateMatrix the snapshot of currency rates
+     * @return the time elapsed since the rates were retrieved
+     */
+    public Duration getAge(RateMatrix rateMatrix) {
+        return Duration.between(rateMatrix.getTimestamp(), Instant.now());
+    }
+
+    /**
+     * Checks whether a snapshot with the given age is stale.
+     *
+     * @param age the age of the snapshot
+     * @return true if the age exceeds the maximum age of a fresh snapshot
+     */
+    public boolean isStale(Duration age) {
+        return age.compareTo(maxAge) > 0;
+    }
+
+    /**
+     * Builds the next snapshot of currency rates on a scheduled interval defined in the application properties file
+     * and swaps it in place of the current one, unless the current one is newer. If the refresh fails, the current
+     * snapshot is kept.
+     */
+    @Scheduled(fixedRateString = "${currency-rates-api.currency-rates.refresh-interval}")
+    void refresh() {
+        logger.trace("Refreshing currency rate snapshot");
+        try {
+            RateMatrix next = loader.load(() -> cacheMetrics.recordLoad(this::fetch));
+            // A snapshot accepted from the leader meanwhile may be newer than the one fetched, so it is kept
+            RateMatrix previous = snapshot.getAndAccumulate(next, (current, candidate) -> current == null
+                    || !current.getTimestamp().isAfter(candidate.getTimestamp()) ? candidate : current);
+            if (previous != null && previous.getTimestamp().isAfter(next.getTimestamp())) {
+                logger.debug("Kept newer currency rate snapshot: {}, refreshed: {}", previous, next);
+            } else if (next != previous) {
+                logger.debug("Refreshed currency rate snapshot: {}, previous: {}", next, previous);
+                notifyListeners(next);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to refresh currency rate snapshot, keeping the last snapshot: {}",
+                    snapshot.get(), e);
+        }
+    }
+
+    /*
+     * Triggers a background refresh of the snapshot unless one is already running
+     */
+    private void revalidate() {
+        if (revalidating.compareAndSet(false, true)) {
+            taskExecutor.execute(() -> {
+                try {
+                    refresh();
+                } finally {
+                    revalidating.set(false);
+                }
+            });
+        }
+    }
+
+    /*
+     * Swaps in the loaded snapshot unless the expected snapshot has already been replaced by another load or refresh
+     */
+    private RateMatrix swap(RateMatrix expected, RateMatrix next) {
+        if (snapshot.compareAndSet(expected, next)) {
+            notifyListeners(next);
+            return next;
+        }
+        return snapshot.get();
+    }
+
+    /*
+     * Loads a new snapshot synchronously or waits for the load in flight, unless another thread has already replaced
+     * the expected snapshot
+     */
+    private RateMatrix load(RateMatrix expected) throws ExternalApiException {
+        return loader.load(() -> {
+            RateMatrix current = snapshot.get();
+            if (current != expected) {
+                return current;
+            }
+            RateMatrix next = cacheMetrics.recordLoad(this::fetch);
+            snapshot.set(next);
+            notifyListeners(next);
+            return next;
+        });
+    }
+
+    /*
+     * Notifies the listeners of a new snapshot without letting a failing listener fail the swap or the other listeners
+     */
+    private void notifyListeners(RateMatrix next) {
+        for (Consumer<RateMatrix> listener : listeners) {
+            try {
+                listener.accept(next);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to notify listener of currency rate snapshot: {}", next, e);
+            }
+        }
+    }
+
+    /*
+     * Retrieves the next snapshot from the external API and publishes it if this replica is the leader in the shared
+     * mode, or otherwise takes the latest published snapshot unless it is stale
+     */
+    private RateMatrix fetch() throws ExternalApiException {
+        if (rateSnapshotBus == null) {
+            return currencyRateService.getRateMatrix();
+        }
+        if (rateSnapshotBus.acquireLeadership()) {
+            RateMatrix next = currencyRateService.getRateMatrix();
+            rateSnapshotBus.publish(next);
+            return next;
+        }
+        Optional<VersionedRateSnapshot> latest = rateSnapshotBus.getLatest();
+        if (latest.isPresent() && !isStale(getAge(latest.get().rateMatrix()))) {
+            return latest.get().rateMatrix();
+        }
+        logger.debug("No fresh currency rate snapshot published by the leader, retrieving it from the external API");
+        return currencyRateService.getRateMatrix();
+    }
+
+}
@@ -0,0 +1,393 @@
+package mhjohans.currency_api.services;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import mhjohans.currency_api.dtos.RateUpdateDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+/**
+ * Pushes the changed currency rates to clients subscribed to currency pairs, so that clients do not have to poll the
+ * conversion endpoints to notice that the rates have changed.
+ * <p>
+ * A subscription first receives the current rates of all its pairs, and after that an update with only the pairs
+ * whose rate has changed whenever {@link RateSnapshotService} swaps in a new snapshot. A snapshot with unchanged
+ * rates sends nothing.
+ * <p>
+ * The snapshot listener only schedules a dispatch on the task executor, so the thread that swapped in the snapshot
+ * never waits for the subscribers. One dispatch runs at a time and compares the rates of each subscription with the
+ * snapshot it was last updated with, converting each changed rate to a decimal once for all subscriptions. Snapshots
+ * swapped in during a dispatch are coalesced into a single further dispatch.
+ * <p>
+ * Each subscription sends its updates on its own virtual thread, separate from the task executor, so a blocking send
+ * to a slow client never pins a thread shared with the other subscribers or the background tasks. A subscription
+ * sends one update at a time, so there are never more sending threads than subscriptions. Changes that arrive while
+ * the previous update of a subscription is still being sent are merged into its next update, so a slow subscriber
+ * holds at most one pending rate per pair and never delays the dispatch or the other subscribers.
+ */
+@Service
+public class RateUpdateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateUpdateService.class);
+
+    private static final char PAIR_SEPARATOR = '/';
+
+    private final RateSnapshotService rateSnapshotService;
+
+    private final SupportedCurrenciesService supportedCurrenciesService;
+
+    private final TaskExecutor taskExecutor;
+
+    private final Executor sendExecutor;
+
+    private final int maxPairs;
+
+    private final int maxSubscriptions;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    // Number of subscriptions reserved, including those being subscribed but not added yet
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+
+    // Number of dispatches requested since the running dispatch started, 0 if no dispatch is running
+    private final AtomicInteger dispatches = new AtomicInteger();
+
+    private final Timer dispatchTimer;
+
+    private final Counter updateCounter;
+
+    /**
+     * Subscriber that receives the rate updates of a subscription.
+     */
+    @FunctionalInterface
+    public interface RateUpdateSubscriber {
+
+        /**
+         * Sends a rate update to the client. Updates of a subscription are sent one at a time and in order, but not
+         * always on the same thread.
+         *
+         * @param update the rate update
+         * @throws Exception if the update could not be sent, which cancels the subscription
+         */
+        void send(RateUpdateDTO update) throws Exception;
+
+    }
+
+    @Autowired
+    RateUpdateService(RateSnapshotService rateSnapshotService, SupportedCurrenciesService supportedCurrenciesService,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+            @Value("${rate-updates.max-pairs}") int maxPairs,
+            @Value("${rate-updates.max-subscriptions}") int maxSubscriptions, MeterRegistry meterRegistry) {
+        this(rateSnapshotService, supportedCurrenciesService, taskExecutor,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rate-update-", 0).factory()), maxPairs,
+                maxSubscriptions, meterRegistry);
+    }
+
+    RateUpdateService(RateSnapshotService rateSnapshotService, SupportedCurrenciesService supportedCurrenciesService,
+            TaskExecutor taskExecutor, Executor sendExecutor, int maxPairs, int maxSubscriptions,
+            MeterRegistry meterRegistry) {
+        this.rateSnapshotService = rateSnapshotService;
+        this.supportedCurrenciesService = supportedCurrenciesService;
+        this.taskExecutor = taskExecutor;
+        this.sendExecutor = sendExecutor;
+        this.maxPairs = maxPairs;
+        this.maxSubscriptions = maxSubscriptions;
+        Gauge.builder("service.rate.updates.subscriptions.gauge", subscriptions, Set::size)
+                .description("Number of subscriptions to rate updates").register(meterRegistry);
+        this.dispatchTimer = Timer.builder("service.rate.updates.dispatch.timer")
+                .description("Time taken to find the changed rates of all subscriptions after a new snapshot")
+                .register(meterRegistry);
+        this.updateCounter = Counter.builder("service.rate.updates.sent.counter")
+                .description("Number of rate updates sent to subscribers").register(meterRegistry);
+    }
+
+    /**
+     * Listens to the snapshots swapped in by the rate snapshot service.
+     */
+    @PostConstruct
+    void listen() {
+        rateSnapshotService.addListener(rateMatrix -> scheduleDispatch());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (sendExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Subscribes to the rates of the given currency pairs. The current rates of the pairs are sent right away, and
+     * the changed rates whenever a new snapshot is swapped in, until the subscription is cancelled. Pairs whose
+     * currencies have no rate in the current snapshot are sent once they have.
+     *
+     * @param pairs the currency pairs as {@code SOURCE/TARGET} strings, e.g. {@code USD/EUR}
+     * @param subscriber the subscriber to send the rate updates to
+     * @return the subscription, which has to be cancelled once the client is gone
+     * @throws InvalidRequestException if there are no pairs, too many pairs or a pair is malformed
+     * @throws InvalidCurrencyException if a currency of a pair is not supported
+     * @throws OverloadedException if the maximum number of subscriptions has been reached
+     */
+    public Subscription subscribe(List<String> pairs, RateUpdateSubscriber subscriber)
+            throws InvalidRequestException, InvalidCurrencyException, OverloadedException, ExternalApiException,
+            StaleCurrencyRateException {
+        if (pairs == null || pairs.isEmpty()) {
+            throw new InvalidRequestException("Currency pairs cannot be empty");
+        }
+        if (pairs.size() > maxPairs) {
+            throw new InvalidRequestException("Number of currency pairs exceeds the maximum of " + maxPairs + " pairs");
+        }
+        SupportedCurrencies supportedCurrencies = supportedCurrenciesService.getSupportedCurrencies();
+        int[] sourceKeys = new int[pairs.size()];
+        int[] targetKeys = new int[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            String pair = pairs.get(i);
+            int separator = pair != null ? pair.indexOf(PAIR_SEPARATOR) : -1;
+            if (separator < 0) {
+                throw new InvalidRequestException("Invalid currency pair: " + pair);
+            }
+            sourceKeys[i] = ConversionService.validate(pair.substring(0, separator), supportedCurrencies);
+            targetKeys[i] = ConversionService.validate(pair.substring(separator + 1), supportedCurrencies);
+        }
+        RateMatrix rateMatrix = rateSnapshotService.getSnapshot();
+        // Reserve the slot atomically, so that concurrent subscriptions cannot exceed the maximum
+        if (subscriptionCount.incrementAndGet() > maxSubscriptions) {
+            subscriptionCount.decrementAndGet();
+            throw new OverloadedException(
+                    "Number of rate update subscriptions has reached the maximum of " + maxSubscriptions);
+        }
+        Subscription subscription = new Subscription(sourceKeys, targetKeys, subscriber);
+        subscription.update(rateMatrix, new HashMap<>());
+        subscriptions.add(subscription);
+        // The first update may have failed to be scheduled and cancelled the subscription before it was added
+        if (subscription.isCancelled()) {
+            subscriptions.remove(subscription);
+        }
+        logger.debug("Subscribed to rate updates of {}", pairs);
+        // Dispatch once more in case a snapshot was swapped in before the subscription was added
+        if (rateSnapshotService.getLoadedSnapshot() != rateMatrix) {
+            scheduleDispatch();
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the number of active subscriptions.
+     *
+     * @return the number of subscriptions that have not been cancelled
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /*
+     * Starts a dispatch on the task executor unless one is already running, in which case the running dispatch runs
+     * once more with the latest snapshot
+     */
+    private void scheduleDispatch() {
+        if (dispatches.getAndIncrement() == 0) {
+            try {
+                taskExecutor.execute(this::dispatch);
+            } catch (RuntimeException e) {
+                dispatches.set(0);
+                logger.warn("Failed to schedule dispatch of rate updates", e);
+            }
+        }
+    }
+
+    /*
+     * Updates all subscriptions with the latest snapshot until no further dispatch has been requested
+     */
+    private void dispatch() {
+        int requested = dispatches.get();
+        do {
+            RateMatrix next = rateSnapshotService.getLoadedSnapshot();
+            try {
+                dispatchTimer.record(() -> {
+                    // Decimal rates by packed currency pair, shared by the subscriptions to the same pair
+                    Map<Integer, BigDecimal> decimalRates = new HashMap<>();
+                    for (Subscription subscription : subscriptions) {
+                        subscription.update(next, decimalRates);
+                    }
+                });
+            } catch (RuntimeException e) {
+                logger.warn("Failed to dispatch rate updates of currency rate snapshot: {}", next, e);
+            }
+            requested = dispatches.addAndGet(-requested);
+        } while (requested != 0);
+    }
+
+    /*
+     * Returns the cross rate of the currencies with the given packed codes, or NaN if the snapshot has no rate for
+     * either of them
+     */
+    private static double getRate(RateMatrix rateMatrix, int sourceKey, int targetKey) {
+        int sourceOrdinal = rateMatrix.ordinal(sourceKey);
+        int targetOrdinal = rateMatrix.ordinal(targetKey);
+        if (sourceOrdinal < 0 || targetOrdinal < 0) {
+            return Double.NaN;
+        }
+        return rateMatrix.getRate(sourceOrdinal, targetOrdinal);
+    }
+
+    /*
+     * Returns the rate as a decimal with the significant digits of the quotes and without trailing zeros
+     */
+    private static BigDecimal toDecimalRate(double rate) {
+        BigDecimal decimalRate = FixedPointConverter.toDecimalRate(rate).stripTrailingZeros();
+        return decimalRate.scale() < 0 ? decimalRate.setScale(0) : decimalRate;
+    }
+
+    /**
+     * Subscription to the rate updates of a set of currency pairs.
+     */
+    public final class Subscription {
+
+        private final int[] sourceKeys;
+
+        private final int[] targetKeys;
+
+        private final RateUpdateSubscriber subscriber;
+
+        // Snapshot the subscription was last updated with, only accessed by one dispatch at a time
+        private RateMatrix rateMatrix;
+
+        // Changed rates that have not been sent yet and whether a send is running, guarded by the subscription
+        private Map<String, BigDecimal> pendingRates;
+
+        private RateMatrix pendingRateMatrix;
+
+        private boolean sending;
+
+        private volatile boolean cancelled;
+
+        private Subscription(int[] sourceKeys, int[] targetKeys, RateUpdateSubscriber subscriber) {
+            this.sourceKeys = sourceKeys;
+            this.targetKeys = targetKeys;
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Cancels the subscription, after which no more updates are sent.
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+            }
+            subscriptions.remove(this);
+            subscriptionCount.decrementAndGet();
+            logger.debug("Cancelled subscription to rate updates");
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /*
+         * Collects the rates of the pairs that have changed since the previous snapshot and sends them, or the rates
+         * of all the pairs if this is the first snapshot of the subscription
+         */
+        private void update(RateMatrix next, Map<Integer, BigDecimal> decimalRates) {
+            RateMatrix previous = rateMatrix;
+            if (next == null || next == previous) {
+                return;
+            }
+            Map<String, BigDecimal> changedRates = new LinkedHashMap<>();
+            for (int i = 0; i < sourceKeys.length; i++) {
+                double rate = getRate(next, sourceKeys[i], targetKeys[i]);
+                if (Double.isNaN(rate)
+                        || previous != null && rate == getRate(previous, sourceKeys[i], targetKeys[i])) {
+                    continue;
+                }
+                changedRates.put(CurrencyCodes.unpack(sourceKeys[i]) + PAIR_SEPARATOR
+                        + CurrencyCodes.unpack(targetKeys[i]),
+                        decimalRates.computeIfAbsent(sourceKeys[i] << CurrencyCodes.BITS | targetKeys[i],
+                                pairKey -> toDecimalRate(rate)));
+            }
+            rateMatrix = next;
+            if (previous == null || !changedRates.isEmpty()) {
+                offer(changedRates, next);
+            }
+        }
+
+        /*
+         * Merges the changed rates into the pending rates and starts sending them unless a send is already running
+         */
+        private void offer(Map<String, BigDecimal> changedRates, RateMatrix next) {
+            synchronized (this) {
+                if (pendingRates == null) {
+                    pendingRates = changedRates;
+                } else {
+                    pendingRates.putAll(changedRates);
+                }
+                pendingRateMatrix = next;
+                if (sending || cancelled) {
+                    return;
+                }
+                sending = true;
+            }
+            try {
+                sendExecutor.execute(this::send);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to schedule sending of rate update, cancelling subscription", e);
+                cancel();
+            }
+        }
+
+        /*
+         * Sends the pending rates until there are no more of them
+         */
+        private void send() {
+            while (!cancelled) {
+                RateUpdateDTO update;
+                synchronized (this) {
+                    if (pendingRates == null) {
+                        sending = false;
+                        return;
+                    }
+                    update = new RateUpdateDTO(pendingRates, pendingRateMatrix.getDate(),
+                            pendingRateMatrix.getTimestamp());
+                    pendingRates = null;
+                }
+                try {
+                    subscriber.send(update);
+                    updateCounter.increment();
+                } catch (Exception e) {
+                    logger.debug("Failed to send rate update, cancelling subscription: {}", e.getMessage());
+                    cancel();
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package mhjohans.currency_api.services;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.services.FixedPointConverter.Amount;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking conversion flow for the reactive web stack. The conversion itself is shared with
+ * {@link ConversionService}, only the lookups of the supported currencies and the rate snapshot are non-blocking.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConversionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveConversionService.class);
+
+    private final ReactiveCurrencyRateService reactiveCurrencyRateService;
+
+    private final RateSnapshotService rateSnapshotService;
+
+    private final ConversionService conversionService;
+
+    ReactiveConversionService(ReactiveCurrencyRateService reactiveCurrencyRateService,
+            RateSnapshotService rateSnapshotService, ConversionService conversionService) {
+        this.reactiveCurrencyRateService = reactiveCurrencyRateService;
+        this.rateSnapshotService = rateSnapshotService;
+        this.conversionService = conversionService;
+    }
+
+    /**
+     * Converts a given value from one currency to another without blocking the calling thread.
+     *
+     * @param sourceCurrency the currency code to convert from as a string
+     * @param targetCurrency the currency code to convert to as a string
+     * @param value the amount to convert as a decimal string
+     * @param date the past date of the currency rate, or null to convert with the current currency rate
+     * @param locale the locale to format the converted value with
+     * @return the converted value as a localized currency string, flagged as stale if the currency rate is stale, or
+     *         an {@link InvalidCurrencyException}, {@link InvalidRequestException},
+     *         {@link mhjohans.currency_api.exceptions.ExternalApiException} or
+     *         {@link mhjohans.currency_api.exceptions.StaleCurrencyRateException} error
+     */
+    public Mono<ConversionResultDTO> convert(String sourceCurrency, String targetCurrency,
+            String value, LocalDate date, Locale locale) {
+        if (date != null) {
+            // Historical rates are read from the memory-mapped store and may have to be retrieved with the blocking
+            // REST client on the first request of a date, so the conversion is moved off the event loop
+            return Mono.fromCallable(() -> conversionService.convert(sourceCurrency, targetCurrency,
+                    value, date, locale)).subscribeOn(Schedulers.boundedElastic());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converting {} {} to {}...", value, sourceCurrency, targetCurrency);
+        }
+        return reactiveCurrencyRateService.getSupportedCurrencies().flatMap(supportedCurrencies -> {
+            int sourceKey;
+            int targetKey;
+            Amount amount;
+            try {
+                sourceKey = ConversionService.validate(sourceCurrency, supportedCurrencies);
+                targetKey = ConversionService.validate(targetCurrency, supportedCurrencies);
+                amount = FixedPointConverter.parse(value);
+            } catch (InvalidCurrencyException | InvalidRequestException e) {
+                return Mono.error(e);
+            }
+            return rateSnapshotService.getSnapshot(reactiveCurrencyRateService.getRateMatrix())
+                    .handle((rateMatrix, sink) -> {
+                        try {
+                            sink.next(conversionService.convert(rateMatrix, supportedCurrencies, sourceKey,
+                                    targetKey, amount, locale));
+                        } catch (InvalidCurrencyException e) {
+                            sink.error(e);
+                        }
+                    });
+        });
+    }
+
+}
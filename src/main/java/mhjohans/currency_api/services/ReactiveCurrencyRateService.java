@@ -0,0 +1,85 @@
+package mhjohans.currency_api.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.retry.RetryOperator;
+import io.github.resilience4j.retry.RetryRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.providers.RateProvider;
+import mhjohans.currency_api.services.providers.RateProviderRouter;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link CurrencyRateService} for the reactive web stack.
+ * <p>
+ * The rate providers are called through their non-blocking web clients, routed, hedged and scored by
+ * {@link RateProviderRouter} like the blocking calls. The same retry policies and circuit breaker as in
+ * {@link CurrencyRateService} are applied with the Reactor operators of Resilience4j, so neither the calls nor the
+ * waits between retries block any thread.
+ * <p>
+ * The supported currencies are kept by {@link SupportedCurrenciesService}, so the list restored from the snapshot
+ * file is used and an expired list is reloaded in the background, and the providers are only called here while no
+ * list has been loaded yet. Concurrent subscribers that arrive while a call is in flight share the result of that call
+ * instead of making calls of their own. The rate matrix is not cached here but kept by {@link RateSnapshotService},
+ * and failures are not cached, so the next subscriber after a failure makes a new call.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCurrencyRateService {
+
+    private final SupportedCurrenciesService supportedCurrenciesService;
+
+    private final Mono<SupportedCurrencies> supportedCurrenciesLoad;
+
+    private final Mono<SupportedCurrencies> loadedSupportedCurrencies;
+
+    private final Mono<RateMatrix> rateMatrix;
+
+    ReactiveCurrencyRateService(RateProviderRouter rateProviderRouter,
+            SupportedCurrenciesService supportedCurrenciesService, CircuitBreakerRegistry circuitBreakerRegistry,
+            RetryRegistry retryRegistry) {
+        CircuitBreaker circuitBreaker =
+                circuitBreakerRegistry.circuitBreaker("currencyRateServiceCircuitBreaker");
+        this.supportedCurrenciesService = supportedCurrenciesService;
+        this.supportedCurrenciesLoad = rateProviderRouter.callReactive(RateProvider::fetchSupportedCurrencies)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(RetryOperator.of(retryRegistry.retry("supportedCurrenciesRetry")))
+                .doOnNext(supportedCurrencies -> supportedCurrenciesService.restore(supportedCurrencies,
+                        Instant.now()))
+                // Share the call in flight without caching the result beyond it
+                .cache(value -> Duration.ZERO, error -> Duration.ZERO, () -> Duration.ZERO);
+        this.loadedSupportedCurrencies = Mono.fromCallable(supportedCurrenciesService::getSupportedCurrencies);
+        this.rateMatrix = rateProviderRouter.callReactive(RateProvider::fetchRateMatrix)
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .transformDeferred(RetryOperator.of(retryRegistry.retry("currencyRateRetry")))
+                .cache(value -> Duration.ZERO, error -> Duration.ZERO, () -> Duration.ZERO);
+    }
+
+    /**
+     * Retrieves the set of supported currencies from the rate providers, or the list loaded so far if there is one.
+     *
+     * @return the set of supported currencies, or an {@link ExternalApiException} error if no list has been loaded
+     *         yet and the call fails
+     */
+    public Mono<SupportedCurrencies> getSupportedCurrencies() {
+        return Mono.defer(() -> supportedCurrenciesService.isLoadRequired() ? supportedCurrenciesLoad
+                : loadedSupportedCurrencies);
+    }
+
+    /**
+     * Retrieves the rates of all currencies against the base currency of a rate provider with a single call and
+     * collects them into a rate matrix.
+     *
+     * @return the rate matrix of all currencies available from the rate provider, or an {@link ExternalApiException}
+     *         error if the call fails
+     */
+    public Mono<RateMatrix> getRateMatrix() {
+        return rateMatrix;
+    }
+
+}
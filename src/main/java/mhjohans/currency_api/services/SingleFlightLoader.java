@@ -0,0 +1,142 @@
+package mhjohans.currency_api.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Shares a single load of a value between all concurrent callers, so that a burst of requests arriving while the
+ * value is missing or expired results in exactly one call to the external API.
+ * <p>
+ * The first caller runs the load on its own thread and the callers arriving while it is in flight wait for its
+ * result, or its failure, instead of starting loads of their own. Callers that still have a previous value can use it
+ * instead of waiting. The number of loads, shared loads and previous values used instead of waiting are counted, and
+ * whether a load is in flight is published as a gauge, all tagged with the name of the loader.
+ *
+ * @param <V> the type of the loaded value
+ */
+public final class SingleFlightLoader<V> {
+
+    /**
+     * Loads a new value.
+     *
+     * @param <V> the type of the loaded value
+     * @param <E> the type of the exception thrown if the load fails
+     */
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+
+        V load() throws E;
+
+    }
+
+    private final AtomicReference<CompletableFuture<V>> inFlight = new AtomicReference<>();
+
+    private final Counter loadedCounter;
+
+    private final Counter sharedCounter;
+
+    private final Counter previousCounter;
+
+    public SingleFlightLoader(String name, MeterRegistry meterRegistry) {
+        Gauge.builder("service.single.flight.in.flight.gauge", inFlight,
+                load -> load.get() != null ? 1 : 0)
+                .description("Whether a load is in flight").tag("loader", name)
+                .register(meterRegistry);
+        loadedCounter = createCounter(name, "loaded", meterRegistry);
+        sharedCounter = createCounter(name, "shared", meterRegistry);
+        previousCounter = createCounter(name, "previous", meterRegistry);
+    }
+
+    /**
+     * Loads a new value, or waits for the load already in flight and returns its result.
+     *
+     * @param <E> the type of the exception thrown if the load fails
+     * @param loader the loader to run if no load is in flight
+     * @return the loaded value
+     * @throws E if the load fails, which is also thrown to all callers sharing the load
+     */
+    public <E extends Exception> V load(Loader<V, E> loader) throws E {
+        while (true) {
+            CompletableFuture<V> load = inFlight.get();
+            if (load != null) {
+                sharedCounter.increment();
+                return join(load);
+            }
+            CompletableFuture<V> newLoad = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, newLoad)) {
+                loadedCounter.increment();
+                return run(loader, newLoad);
+            }
+        }
+    }
+
+    /**
+     * Returns the previous value without waiting if a load is in flight, otherwise loads a new value. Without a
+     * previous value the caller waits for the load like in {@link #load(Loader)}.
+     *
+     * @param <E> the type of the exception thrown if the load fails
+     * @param loader the loader to run if no load is in flight
+     * @param previous the previous value, or null if there is none
+     * @return the previous value or the loaded value
+     * @throws E if the load fails
+     */
+    public <E extends Exception> V loadOrGetPrevious(Loader<V, E> loader, V previous) throws E {
+        if (previous != null && inFlight.get() != null) {
+            previousCounter.increment();
+            return previous;
+        }
+        return load(loader);
+    }
+
+    /**
+     * Checks whether a load is in flight.
+     *
+     * @return true if a load is in flight
+     */
+    public boolean isLoading() {
+        return inFlight.get() != null;
+    }
+
+    private <E extends Exception> V run(Loader<V, E> loader, CompletableFuture<V> load) throws E {
+        try {
+            V value = loader.load();
+            load.complete(value);
+            return value;
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.compareAndSet(load, null);
+        }
+    }
+
+    /*
+     * Waits for the load in flight and throws its failure as is to the waiting caller
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V join(CompletableFuture<V> load) throws E {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause;
+        }
+    }
+
+    private static Counter createCounter(String name, String result, MeterRegistry meterRegistry) {
+        return Counter.builder("service.single.flight.counter")
+                .description("Number of calls to the loader by how their value was obtained")
+                .tag("loader", name).tag("result", result).register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,305 @@
+package mhjohans.currency_api.services;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.FailResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+/**
+ * Converts streams of rows read from CSV or NDJSON input and writes the converted rows to the output as soon as each
+ * row has been read. Only a single row is held in memory at a time and the rows are read only as fast as the output
+ * can be written, so streams of any size can be converted in constant memory.
+ * <p>
+ * A stream is routed by the rows it actually reads: each row with a date whose rates have not been stored yet is
+ * converted within the concurrency limit of the upstream path, as it has to wait for the external API, and fails
+ * with an error row if that limit has been reached.
+ */
+@Service
+public class StreamingConversionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingConversionService.class);
+
+    private static final String CSV_HEADER = "source,target,value";
+
+    private static final String CSV_HEADER_WITH_DATE = CSV_HEADER + ",date";
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private final ConversionService conversionService;
+
+    private final ConversionLimiter conversionLimiter;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectReader conversionRequestReader;
+
+    private final ObjectWriter rowWriter;
+
+    private final int maxLineLength;
+
+    StreamingConversionService(ConversionService conversionService, ConversionLimiter conversionLimiter,
+            ObjectMapper objectMapper, @Value("${conversion.stream.max-line-length}") int maxLineLength) {
+        this.conversionService = conversionService;
+        this.conversionLimiter = conversionLimiter;
+        this.objectMapper = objectMapper;
+        this.conversionRequestReader = objectMapper.readerFor(ConversionRequestDTO.class);
+        // Leave flushing to the buffers of the generator and the response instead of flushing every row
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Converts all rows from the input and writes the results to the output in the order of the rows. All rows are
+     * converted with the same rate snapshot, except for the rows with a date, which are converted with the currency
+     * rates of that date from the historical rates store.
+     * <ul>
+     * <li>CSV rows have the columns source, target and value and an optional date column, and the output rows have
+     * the additional columns status and result, where the result is either the converted value or the reason why
+     * the row could not be converted. An optional header row is copied to the output with the additional columns.
+     * Quoted fields are not supported, so rows containing quotes are rejected instead of being split incorrectly.
+     * <li>NDJSON rows are objects with the fields source, target and value and an optional date field, and each
+     * output row is a JSend success, fail or error entry.
+     * </ul>
+     *
+     * @param reader the input to read the rows from
+     * @param writer the output to write the converted rows to
+     * @param format the format of both the input and the output
+     * @return the number of converted rows
+     */
+    public long convert(Reader reader, Writer writer, Format format)
+            throws IOException, ExternalApiException, StaleCurrencyRateException {
+        ConversionService.BatchConversion batchConversion = conversionService.newBatchConversion();
+        LineReader lineReader = new LineReader(reader, maxLineLength);
+        JsonGenerator jsonGenerator = null;
+        if (format == Format.NDJSON) {
+            // Write each entry on its own line without the default separator between root values
+            jsonGenerator = objectMapper.createGenerator(writer);
+            jsonGenerator.setRootValueSeparator(null);
+        }
+        long rows = 0;
+        String line;
+        while ((line = lineReader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (format == Format.CSV) {
+                if (rows == 0 && (line.trim().equalsIgnoreCase(CSV_HEADER)
+                        || line.trim().equalsIgnoreCase(CSV_HEADER_WITH_DATE))) {
+                    writer.write(line.trim() + ",status,result\n");
+                    continue;
+                }
+                String[] columns = line.indexOf('"') < 0 ? line.split(",", -1) : null;
+                writeCsvRow(writer, line, columns,
+                        convertCsvRow(batchConversion, columns, lineReader));
+            } else {
+                rowWriter.writeValue(jsonGenerator, convertJsonRow(batchConversion, line, lineReader));
+                jsonGenerator.writeRaw('\n');
+            }
+            rows++;
+        }
+        if (jsonGenerator != null) {
+            jsonGenerator.flush();
+        }
+        writer.flush();
+        logger.debug("Converted a stream of {} rows", rows);
+        return rows;
+    }
+
+    private ResponseDTO<?> convertCsvRow(ConversionService.BatchConversion batchConversion,
+            String[] columns, LineReader lineReader) {
+        if (lineReader.isTruncated()) {
+            return new FailResponseDTO("Row exceeds the maximum length");
+        }
+        if (columns == null) {
+            return new FailResponseDTO("Quoted fields are not supported");
+        }
+        if (columns.length != 3 && columns.length != 4) {
+            return new FailResponseDTO(
+                    "Row must have the columns source, target and value, and optionally date");
+        }
+        LocalDate date = null;
+        if (columns.length == 4 && !columns[3].isBlank()) {
+            try {
+                date = LocalDate.parse(columns[3].trim());
+            } catch (DateTimeParseException e) {
+                return new FailResponseDTO("Invalid date: " + columns[3].trim());
+            }
+        }
+        return convertRow(batchConversion,
+                new ConversionRequestDTO(columns[0], columns[1], columns[2].trim(), date));
+    }
+
+    private ResponseDTO<?> convertJsonRow(ConversionService.BatchConversion batchConversion,
+            String line, LineReader lineReader) {
+        if (lineReader.isTruncated()) {
+            return new FailResponseDTO("Row exceeds the maximum length");
+        }
+        ConversionRequestDTO conversionRequest;
+        try {
+            conversionRequest = conversionRequestReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return new FailResponseDTO("Invalid row: " + e.getOriginalMessage());
+        }
+        return convertRow(batchConversion, conversionRequest);
+    }
+
+    /*
+     * Converts a row within the concurrency limit of the upstream path if its date has not been stored yet
+     */
+    private ResponseDTO<?> convertRow(ConversionService.BatchConversion batchConversion,
+            ConversionRequestDTO conversionRequest) {
+        if (conversionRequest == null || conversionRequest.date() == null
+                || conversionLimiter.route(conversionRequest.date()) == ConversionLimiter.Route.CACHED) {
+            return batchConversion.convert(conversionRequest);
+        }
+        try {
+            return conversionLimiter.call(ConversionLimiter.Route.UPSTREAM,
+                    () -> batchConversion.convert(conversionRequest));
+        } catch (OverloadedException e) {
+            return new ErrorResponseDTO(e.getMessage());
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // The conversion of a row reports its failures as rows instead of throwing checked exceptions
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, String line, String[] columns,
+            ResponseDTO<?> result) throws IOException {
+        // Copy the input columns, or the whole row into the first column if it does not have the expected columns
+        if (columns != null && (columns.length == 3 || columns.length == 4)) {
+            for (String column : columns) {
+                writer.write(escapeCsv(column.trim()));
+                writer.write(',');
+            }
+        } else {
+            writer.write(escapeCsv(line.trim()));
+            writer.write(",,,");
+        }
+        writer.write(result.getStatus().name().toLowerCase(Locale.ROOT));
+        writer.write(',');
+        Optional<?> data = result.getData();
+        String value = data.map(d -> d instanceof ConversionResultDTO conversionResult
+                ? conversionResult.result()
+                : d.toString())
+                .orElse(result instanceof ErrorResponseDTO errorResponse ? errorResponse.getMessage()
+                        : "");
+        writer.write(escapeCsv(value));
+        writer.write('\n');
+    }
+
+    /*
+     * Quotes the CSV field if it contains separators, quotes or line breaks
+     */
+    private static String escapeCsv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0
+                && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /*
+     * Reads lines from the input without holding more than the maximum line length in memory. The rest of a line
+     * exceeding the maximum length is skipped and the line is marked as truncated. Lines end with a line feed, and a
+     * carriage return right before it is dropped, while carriage returns anywhere else are kept in the line.
+     */
+    private static final class LineReader {
+
+        private final Reader reader;
+
+        private final int maxLineLength;
+
+        private final StringBuilder line;
+
+        private final char[] buffer = new char[8192];
+
+        private int position;
+
+        private int limit;
+
+        private boolean truncated;
+
+        // Carriage return read but not yet known to end the line
+        private boolean carriageReturn;
+
+        LineReader(Reader reader, int maxLineLength) {
+            this.reader = reader;
+            this.maxLineLength = maxLineLength;
+            this.line = new StringBuilder(Math.min(maxLineLength, 256));
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            truncated = false;
+            while (true) {
+                if (position == limit) {
+                    limit = reader.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (carriageReturn) {
+                            carriageReturn = false;
+                            append('\r');
+                        }
+                        return line.isEmpty() && !truncated ? null : line.toString();
+                    }
+                }
+                char c = buffer[position++];
+                if (carriageReturn) {
+                    carriageReturn = false;
+                    if (c == '\n') {
+                        return line.toString();
+                    }
+                    append('\r');
+                }
+                if (c == '\n') {
+                    return line.toString();
+                }
+                if (c == '\r') {
+                    carriageReturn = true;
+                } else {
+                    append(c);
+                }
+            }
+        }
+
+        private void append(char c) {
+            if (line.length() < maxLineLength) {
+                line.append(c);
+            } else {
+                truncated = true;
+            }
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package mhjohans.currency_api.services;
+
+import java.util.Collection;
+import java.util.Currency;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import mhjohans.currency_api.dtos.CurrencyDTO;
+
+/**
+ * Immutable set of supported currencies stored as a bitset indexed by the packed currency code, so that checking a
+ * currency code takes a single array lookup and no allocations. The number of decimal digits of the minor unit of each
+ * currency, which is the scale of the converted amounts in the currency, is looked up from an array indexed the same
+ * way.
+ *
+ * @see CurrencyCodes
+ */
+public final class SupportedCurrencies {
+
+    private static final Logger logger = LoggerFactory.getLogger(SupportedCurrencies.class);
+
+    /**
+     * Number of decimal digits of the currencies whose minor unit is neither given nor defined in ISO 4217.
+     */
+    public static final int DEFAULT_DECIMAL_DIGITS = 2;
+
+    private final long[] bits = new long[CurrencyCodes.CAPACITY / Long.SIZE];
+
+    private final byte[] decimalDigits = new byte[CurrencyCodes.CAPACITY];
+
+    private final int size;
+
+    private <T> SupportedCurrencies(Collection<T> currencies, Function<T, String> code,
+            ToIntFunction<T> decimalDigits) {
+        int count = 0;
+        for (T currency : currencies) {
+            int key = CurrencyCodes.pack(code.apply(currency));
+            if (key == CurrencyCodes.INVALID) {
+                logger.warn("Ignoring invalid supported currency code: {}", code.apply(currency));
+                continue;
+            }
+            if (!contains(key)) {
+                bits[key >>> 6] |= 1L << key;
+                int digits = decimalDigits.applyAsInt(currency);
+                this.decimalDigits[key] = (byte) (digits >= 0 && digits <= FixedPointConverter.MAX_DIGITS ? digits
+                        : getDefaultDecimalDigits(CurrencyCodes.unpack(key)));
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * Creates the set of supported currencies from the given currency codes, with the number of decimal digits of
+     * each currency defined in ISO 4217. Codes that are not three letters long are ignored.
+     *
+     * @param currencies the supported currency codes
+     * @return the set of supported currencies
+     */
+    public static SupportedCurrencies of(Collection<String> currencies) {
+        return new SupportedCurrencies(currencies, Function.identity(),
+                SupportedCurrencies::getDefaultDecimalDigits);
+    }
+
+    /**
+     * Creates the set of supported currencies from the currencies given by the external API, with the number of
+     * decimal digits of each currency given by it. Codes that are not three letters long are ignored, and missing or
+     * invalid numbers of decimal digits are replaced with the ones defined in ISO 4217.
+     *
+     * @param currencies the supported currencies
+     * @return the set of supported currencies
+     */
+    public static SupportedCurrencies ofCurrencies(Collection<CurrencyDTO> currencies) {
+        return new SupportedCurrencies(currencies, CurrencyDTO::code,
+                currency -> currency.decimalDigits() != null ? currency.decimalDigits() : -1);
+    }
+
+    /**
+     * Creates the set of supported currencies from the given currency codes and the number of decimal digits of each
+     * currency, e.g. as restored from a file.
+     *
+     * @param decimalDigits the number of decimal digits by supported currency code
+     * @return the set of supported currencies
+     */
+    static SupportedCurrencies of(Map<String, Integer> decimalDigits) {
+        return new SupportedCurrencies(decimalDigits.keySet(), Function.identity(), decimalDigits::get);
+    }
+
+    /**
+     * Checks whether the currency is supported.
+     *
+     * @param key the packed currency code
+     * @return true if the currency is supported
+     */
+    public boolean contains(int key) {
+        return key >= 0 && key < CurrencyCodes.CAPACITY && (bits[key >>> 6] & (1L << key)) != 0;
+    }
+
+    /**
+     * Returns the packed codes of all supported currencies in ascending order.
+     *
+     * @return the packed currency codes
+     */
+    public int[] keys() {
+        int[] keys = new int[size];
+        int index = 0;
+        for (int i = 0; i < bits.length; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                keys[index++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the number of decimal digits of the minor unit of a supported currency.
+     *
+     * @param key the packed code of a supported currency
+     * @return the number of decimal digits
+     */
+    public int getDecimalDigits(int key) {
+        return decimalDigits[key];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Returns the number of decimal digits defined in ISO 4217, or the default for codes without a minor unit in it
+     */
+    private static int getDefaultDecimalDigits(String currency) {
+        try {
+            int digits = Currency.getInstance(currency).getDefaultFractionDigits();
+            return digits >= 0 ? digits : DEFAULT_DECIMAL_DIGITS;
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_DECIMAL_DIGITS;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SupportedCurrencies[size=" + size + "]";
+    }
+
+}
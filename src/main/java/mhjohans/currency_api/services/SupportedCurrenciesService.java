@@ -0,0 +1,172 @@
+package mhjohans.currency_api.services;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+import io.micrometer.core.instrument.MeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+
+/**
+ * Holds the list of supported currencies and reloads it from the external API once it has expired.
+ * <p>
+ * Once the list has expired, callers keep getting the previous list right away while it is reloaded in the
+ * background on the task executor, so no caller waits for the external API or its retries while a previous list is
+ * available. Only before the very first load do callers wait, and then they all share the same load through a
+ * {@link SingleFlightLoader}. If a reload fails, the previous list is kept and the next caller triggers another
+ * reload.
+ * <p>
+ * Lookups, loads, the number of currencies and the age of the list are measured as the {@code supportedCurrencies}
+ * cache with {@link CacheMetrics}.
+ */
+@Service
+public class SupportedCurrenciesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SupportedCurrenciesService.class);
+
+    private final CurrencyRateService currencyRateService;
+
+    private final TaskExecutor taskExecutor;
+
+    private final Duration cacheTtl;
+
+    private final SingleFlightLoader<SupportedCurrencies> loader;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    private volatile Loaded loaded;
+
+    /**
+     * Supported currencies with the time when they were loaded from the external API.
+     *
+     * @param supportedCurrencies the set of supported currencies
+     * @param loadedAt the time when the set was loaded
+     */
+    record Loaded(SupportedCurrencies supportedCurrencies, Instant loadedAt) {
+    }
+
+    SupportedCurrenciesService(CurrencyRateService currencyRateService,
+            @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) TaskExecutor taskExecutor,
+            @Value("${currency-rates-api.supported-currencies.cache-ttl}") Duration cacheTtl,
+            MeterRegistry meterRegistry) {
+        this.currencyRateService = currencyRateService;
+        this.taskExecutor = taskExecutor;
+        this.cacheTtl = cacheTtl;
+        this.loader = new SingleFlightLoader<>("supportedCurrencies", meterRegistry);
+        this.cacheMetrics = new CacheMetrics("supportedCurrencies", this,
+                service -> service.loaded != null ? service.loaded.supportedCurrencies().size() : 0,
+                service -> service.loaded != null
+                        ? Duration.between(service.loaded.loadedAt(), Instant.now()).toMillis() / 1000.0
+                        : Double.NaN,
+                meterRegistry);
+    }
+
+    /**
+     * Returns the list of supported currencies. An expired list is returned as is and reloaded from the external API
+     * in the background, and only if no list has been loaded yet is it loaded synchronously.
+     *
+     * @return the set of supported currencies
+     * @throws ExternalApiException if no list has been loaded yet and the load fails
+     */
+    public SupportedCurrencies getSupportedCurrencies() throws ExternalApiException {
+        Loaded current = loaded;
+        if (current == null) {
+            logger.debug("No supported currencies available, loading them synchronously");
+            cacheMetrics.miss();
+            return loader.load(() -> load(null));
+        }
+        if (Instant.now().isBefore(current.loadedAt().plus(cacheTtl))) {
+            cacheMetrics.hit();
+            return current.supportedCurrencies();
+        }
+        logger.debug("Serving expired supported currencies loaded at {}", current.loadedAt());
+        cacheMetrics.stale();
+        revalidate(current);
+        return current.supportedCurrencies();
+    }
+
+    /**
+     * Checks whether the next call to {@link #getSupportedCurrencies()} has to wait for the external API, i.e. no list
+     * has been loaded yet. An expired list is reloaded in the background without waiting.
+     *
+     * @return true if the list has to be loaded
+     */
+    public boolean isLoadRequired() {
+        return loaded == null;
+    }
+
+    /**
+     * Returns the supported currencies loaded so far without loading them.
+     *
+     * @return the loaded supported currencies, or null if they have not been loaded yet
+     */
+    Loaded getLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Restores previously loaded supported currencies, e.g. from a snapshot file on startup, unless they have already
+     * been loaded. The restored list expires at the same time as it would have without the restart.
+     *
+     * @param supportedCurrencies the set of supported currencies
+     * @param loadedAt the time when the set was loaded from the external API
+     */
+    synchronized void restore(SupportedCurrencies supportedCurrencies, Instant loadedAt) {
+        if (loaded == null) {
+            loaded = new Loaded(supportedCurrencies, loadedAt);
+        }
+    }
+
+    /*
+     * Triggers a background reload of the list unless one is already running
+     */
+    private void revalidate(Loaded expected) {
+        if (revalidating.compareAndSet(false, true)) {
+            try {
+                taskExecutor.execute(() -> {
+                    try {
+                        loader.load(() -> load(expected));
+                    } catch (Exception e) {
+                        // Already logged by the load, which keeps the previous list
+                    } finally {
+                        revalidating.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                revalidating.set(false);
+                logger.warn("Failed to schedule reload of supported currencies", e);
+            }
+        }
+    }
+
+    /*
+     * Loads the list unless another caller has already reloaded it, and keeps the previous list if the load fails
+     */
+    private SupportedCurrencies load(Loaded expected) throws ExternalApiException {
+        Loaded current = loaded;
+        if (current != expected) {
+            return current.supportedCurrencies();
+        }
+        try {
+            SupportedCurrencies supportedCurrencies =
+                    cacheMetrics.recordLoad(currencyRateService::getSupportedCurrencies);
+            loaded = new Loaded(supportedCurrencies, Instant.now());
+            return supportedCurrencies;
+        } catch (ExternalApiException | RuntimeException e) {
+            if (current == null) {
+                throw e;
+            }
+            logger.warn("Failed to reload supported currencies, keeping the previous list", e);
+            return current.supportedCurrencies();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package mhjohans.currency_api.services.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+
+/**
+ * Provides fixed currency rates from a local JSON file in the same format as the rates of SWOP API, for running the
+ * application and tests without network access or API keys. The supported currencies are the currencies in the file,
+ * and the same rates are returned for every date. The file is read on every call, so it can be edited while the
+ * application is running.
+ */
+@Component
+public class FileRateProvider implements RateProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileRateProvider.class);
+
+    private final Resource resource;
+
+    private final ObjectMapper objectMapper;
+
+    FileRateProvider(@Value("${currency-rates-api.providers.file.path}") Resource resource,
+            ObjectMapper objectMapper) {
+        this.resource = resource;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public SupportedCurrencies getSupportedCurrencies() throws ExternalApiException {
+        List<CurrencyRateDTO> currencyRates = read();
+        List<String> currencies = new ArrayList<>(currencyRates.size() + 1);
+        currencies.add(currencyRates.getFirst().baseCurrency());
+        currencyRates.forEach(currencyRate -> currencies.add(currencyRate.quoteCurrency()));
+        return SupportedCurrencies.of(currencies);
+    }
+
+    @Override
+    public RateMatrix getRateMatrix() throws ExternalApiException {
+        return RateMatrix.of(read(), Instant.now());
+    }
+
+    @Override
+    public RateMatrix getRateMatrix(LocalDate date) throws ExternalApiException {
+        return getRateMatrix();
+    }
+
+    private List<CurrencyRateDTO> read() throws ExternalApiException {
+        logger.debug("Reading currency rates from {}", resource);
+        try (InputStream inputStream = resource.getInputStream()) {
+            List<CurrencyRateDTO> currencyRates =
+                    objectMapper.readValue(inputStream, new TypeReference<List<CurrencyRateDTO>>() {});
+            if (currencyRates == null || currencyRates.isEmpty()) {
+                throw new IOException("No currency rates in " + resource);
+            }
+            return currencyRates;
+        } catch (IOException e) {
+            logger.warn("Error reading currency rates from {}", resource, e);
+            throw new ExternalApiException("Failed to read currency rates from " + resource, e);
+        }
+    }
+
+}
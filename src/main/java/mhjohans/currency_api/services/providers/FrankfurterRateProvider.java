@@ -0,0 +1,122 @@
+package mhjohans.currency_api.services.providers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import mhjohans.currency_api.dtos.FrankfurterRatesDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+import reactor.core.publisher.Mono;
+
+/**
+ * Provides the reference rates of the European Central Bank from the <a href="https://frankfurter.app">Frankfurter</a>
+ * API, which requires no API key. The rates are published once per working day, so they cover fewer currencies and
+ * change less often than the rates of SWOP API. The blocking calls are made with a REST client and the reactive calls
+ * with a non-blocking web client.
+ */
+@Component
+public class FrankfurterRateProvider implements RateProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrankfurterRateProvider.class);
+
+    private final RestClient restClient;
+
+    private final WebClient webClient;
+
+    FrankfurterRateProvider(@Qualifier("frankfurterRestClient") RestClient restClient,
+            @Qualifier("frankfurterWebClient") WebClient webClient) {
+        this.restClient = restClient;
+        this.webClient = webClient;
+    }
+
+    @Override
+    public String getName() {
+        return "frankfurter";
+    }
+
+    @Override
+    public SupportedCurrencies getSupportedCurrencies() throws ExternalApiException {
+        logger.debug("Getting supported currencies from Frankfurter API");
+        try {
+            Map<String, String> supportedCurrencies = restClient.get().uri("/currencies").retrieve()
+                    .body(new ParameterizedTypeReference<Map<String, String>>() {});
+            Objects.requireNonNull(supportedCurrencies, "Supported currencies cannot be null");
+            logger.debug("Got {} supported currencies from Frankfurter API", supportedCurrencies.size());
+            return SupportedCurrencies.of(supportedCurrencies.keySet());
+        } catch (RestClientResponseException e) {
+            logger.warn("Error retrieving supported currencies from Frankfurter API", e);
+            throw new ExternalApiException("Failed to retrieve supported currencies", e);
+        }
+    }
+
+    @Override
+    public RateMatrix getRateMatrix() throws ExternalApiException {
+        return getRateMatrix("latest");
+    }
+
+    @Override
+    public RateMatrix getRateMatrix(LocalDate date) throws ExternalApiException {
+        return getRateMatrix(date.toString());
+    }
+
+    @Override
+    public Mono<SupportedCurrencies> fetchSupportedCurrencies() {
+        logger.debug("Fetching supported currencies from Frankfurter API");
+        return webClient.get().uri("/currencies").retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, String>>() {})
+                .switchIfEmpty(Mono.error(() -> new NullPointerException("Supported currencies cannot be null")))
+                .map(supportedCurrencies -> {
+                    logger.debug("Got {} supported currencies from Frankfurter API", supportedCurrencies.size());
+                    return SupportedCurrencies.of(supportedCurrencies.keySet());
+                })
+                .onErrorMap(WebClientResponseException.class, e -> {
+                    logger.warn("Error fetching supported currencies from Frankfurter API", e);
+                    return WebClientErrors.toExternalApiException("Failed to retrieve supported currencies", e);
+                });
+    }
+
+    @Override
+    public Mono<RateMatrix> fetchRateMatrix() {
+        logger.debug("Fetching latest currency rates from Frankfurter API");
+        return webClient.get().uri("/{date}", "latest").retrieve().bodyToMono(FrankfurterRatesDTO.class)
+                .switchIfEmpty(Mono.error(() -> new NullPointerException("Currency rates cannot be null")))
+                .map(currencyRates -> {
+                    RateMatrix rateMatrix = RateMatrix.of(currencyRates.base(), currencyRates.rates(),
+                            currencyRates.date(), Instant.now());
+                    logger.debug("Got latest currency rates from Frankfurter API: {}", rateMatrix);
+                    return rateMatrix;
+                })
+                .onErrorMap(WebClientResponseException.class, e -> {
+                    logger.warn("Error fetching latest currency rates from Frankfurter API", e);
+                    return WebClientErrors.toExternalApiException("Failed to retrieve currency rates", e);
+                });
+    }
+
+    private RateMatrix getRateMatrix(String date) throws ExternalApiException {
+        logger.debug("Getting {} currency rates from Frankfurter API", date);
+        try {
+            FrankfurterRatesDTO currencyRates =
+                    restClient.get().uri("/{date}", date).retrieve().body(FrankfurterRatesDTO.class);
+            Objects.requireNonNull(currencyRates, "Currency rates cannot be null");
+            RateMatrix rateMatrix = RateMatrix.of(currencyRates.base(), currencyRates.rates(),
+                    currencyRates.date(), Instant.now());
+            logger.debug("Got {} currency rates from Frankfurter API: {}", date, rateMatrix);
+            return rateMatrix;
+        } catch (RestClientResponseException e) {
+            logger.warn("Error retrieving {} currency rates from Frankfurter API", date, e);
+            throw new ExternalApiException("Failed to retrieve currency rates", e);
+        }
+    }
+
+}
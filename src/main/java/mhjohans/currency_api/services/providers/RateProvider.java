@@ -0,0 +1,74 @@
+package mhjohans.currency_api.services.providers;
+
+import java.time.LocalDate;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Source of currency rates, such as an external currency rate API. The providers enabled in the application
+ * properties are called by the {@link RateProviderRouter} in the order of their health scores.
+ * <p>
+ * The reactive web stack calls the providers through the methods returning a {@link Mono}. Providers calling an HTTP
+ * API override them with a non-blocking web client, while the others run their blocking calls on the bounded elastic
+ * scheduler.
+ */
+public interface RateProvider {
+
+    /**
+     * Returns the name of the provider, which is used to enable it in the application properties and to tag its
+     * metrics.
+     *
+     * @return the name of the provider
+     */
+    String getName();
+
+    /**
+     * Retrieves the list of supported currencies.
+     *
+     * @return the set of supported currencies
+     * @throws ExternalApiException if the provider returns an error
+     */
+    SupportedCurrencies getSupportedCurrencies() throws ExternalApiException;
+
+    /**
+     * Retrieves the current rates of all currencies against the base currency of the provider.
+     *
+     * @return the rate matrix of all currencies available from the provider
+     * @throws ExternalApiException if the provider returns an error
+     */
+    RateMatrix getRateMatrix() throws ExternalApiException;
+
+    /**
+     * Retrieves the rates of all currencies against the base currency of the provider on a past date.
+     *
+     * @param date the date of the rates
+     * @return the rate matrix of all currencies available from the provider on the date
+     * @throws ExternalApiException if the provider returns an error
+     */
+    RateMatrix getRateMatrix(LocalDate date) throws ExternalApiException;
+
+    /**
+     * Retrieves the list of supported currencies without blocking the calling thread.
+     *
+     * @return the set of supported currencies, or an {@link ExternalApiException} error if the provider returns an
+     *         error
+     */
+    default Mono<SupportedCurrencies> fetchSupportedCurrencies() {
+        return Mono.fromCallable(this::getSupportedCurrencies).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Retrieves the current rates of all currencies against the base currency of the provider without blocking the
+     * calling thread.
+     *
+     * @return the rate matrix of all currencies available from the provider, or an {@link ExternalApiException} error
+     *         if the provider returns an error
+     */
+    default Mono<RateMatrix> fetchRateMatrix() {
+        return Mono.fromCallable(() -> getRateMatrix()).subscribeOn(Schedulers.boundedElastic());
+    }
+
+}
@@ -0,0 +1,338 @@
+package mhjohans.currency_api.services.providers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Routes calls to the enabled rate providers in the order of their health scores and hedges slow calls.
+ * <p>
+ * A call is first sent to the healthiest provider. If it has not answered within its hedge delay, which is the 95th
+ * percentile of its recent response times, the call is also sent to the next provider, and so on up to the maximum
+ * number of hedged requests. The first successful answer is returned and the calls still in flight are cancelled. If
+ * a call fails before the hedge delay, the next provider is called immediately instead of waiting.
+ * <p>
+ * The health score of each provider is the moving average of its success rate divided by one plus the 95th
+ * percentile of its response times in seconds, so that failing providers are called last and of the healthy providers
+ * the fastest one is called first. The response times and health scores are published as metrics tagged with the
+ * name of the provider.
+ * <p>
+ * Calls from the reactive web stack are routed and hedged in the same way without blocking, with the hedge delays
+ * timed by the Reactor schedulers, and share the health scores with the blocking calls.
+ * <p>
+ * The providers are not required to quote the same currencies, so with providers of different coverage the currencies
+ * and rates of consecutive results can differ depending on which provider answered first.
+ */
+@Component
+public class RateProviderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateProviderRouter.class);
+
+    // Weight of the latest call in the moving average of the success rate
+    private static final double SUCCESS_RATE_WEIGHT = 0.2;
+
+    /**
+     * Call to a rate provider.
+     *
+     * @param <T> the type of the result
+     */
+    @FunctionalInterface
+    public interface ProviderCall<T> {
+
+        T call(RateProvider rateProvider) throws ExternalApiException;
+
+    }
+
+    private final List<ProviderHealth> providers;
+
+    private final int maxHedgedRequests;
+
+    private final Duration initialHedgeDelay;
+
+    private final Duration minHedgeDelay;
+
+    private final Duration maxHedgeDelay;
+
+    private final ExecutorService executorService =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("rate-provider-", 0).factory());
+
+    private final Counter hedgeCounter;
+
+    RateProviderRouter(List<RateProvider> rateProviders,
+            @Value("${currency-rates-api.providers.enabled}") List<String> enabledProviders,
+            @Value("${currency-rates-api.providers.hedging.max-requests}") int maxHedgedRequests,
+            @Value("${currency-rates-api.providers.hedging.initial-delay}") Duration initialHedgeDelay,
+            @Value("${currency-rates-api.providers.hedging.min-delay}") Duration minHedgeDelay,
+            @Value("${currency-rates-api.providers.hedging.max-delay}") Duration maxHedgeDelay,
+            MeterRegistry meterRegistry) {
+        this.providers = new ArrayList<>(enabledProviders.size());
+        for (String name : enabledProviders) {
+            RateProvider rateProvider = rateProviders.stream()
+                    .filter(provider -> provider.getName().equals(name.trim())).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown rate provider: " + name));
+            providers.add(new ProviderHealth(rateProvider, meterRegistry));
+        }
+        if (providers.isEmpty()) {
+            throw new IllegalArgumentException("At least one rate provider must be enabled");
+        }
+        this.maxHedgedRequests = maxHedgedRequests;
+        this.initialHedgeDelay = initialHedgeDelay;
+        this.minHedgeDelay = minHedgeDelay;
+        this.maxHedgeDelay = maxHedgeDelay;
+        this.hedgeCounter = Counter.builder("service.rate.provider.hedge.counter")
+                .description("Number of hedged calls sent to another rate provider after the hedge delay")
+                .register(meterRegistry);
+        logger.info("Enabled rate providers: {}", enabledProviders);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Calls the providers in the order of their health scores, hedging the call if a provider is slow to answer.
+     *
+     * @param <T> the type of the result
+     * @param providerCall the call to make to each provider
+     * @return the first successful result
+     * @throws ExternalApiException if the call fails with all providers it was sent to, which is the failure of the
+     *         first provider
+     */
+    public <T> T call(ProviderCall<T> providerCall) throws ExternalApiException {
+        List<ProviderHealth> ranked = rank();
+        int maxRequests = Math.min(maxHedgedRequests, ranked.size());
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executorService);
+        List<Future<T>> futures = new ArrayList<>(maxRequests);
+        // Losers of the race are cancelled, and their failures are not counted against their health
+        AtomicBoolean finished = new AtomicBoolean();
+        Exception firstFailure = null;
+        try {
+            int pending = 0;
+            while (pending > 0 || futures.size() < maxRequests) {
+                if (pending == 0) {
+                    // Nothing in flight, so call the next provider without waiting
+                    futures.add(submit(completionService, ranked.get(futures.size()), providerCall, finished));
+                    pending++;
+                    continue;
+                }
+                Future<T> completed;
+                if (futures.size() < maxRequests) {
+                    Duration hedgeDelay = getHedgeDelay(ranked.get(futures.size() - 1));
+                    completed = completionService.poll(hedgeDelay.toNanos(), TimeUnit.NANOSECONDS);
+                    if (completed == null) {
+                        ProviderHealth next = ranked.get(futures.size());
+                        logger.debug("No answer within the hedge delay of {}, also calling rate provider {}",
+                                hedgeDelay, next.getName());
+                        hedgeCounter.increment();
+                        futures.add(submit(completionService, next, providerCall, finished));
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    completed = completionService.take();
+                }
+                pending--;
+                try {
+                    return completed.get();
+                } catch (ExecutionException e) {
+                    if (firstFailure == null) {
+                        firstFailure = e.getCause() instanceof Exception cause ? cause : e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalApiException("Interrupted while waiting for the rate providers", e);
+        } finally {
+            finished.set(true);
+            futures.forEach(future -> future.cancel(true));
+        }
+        if (firstFailure instanceof ExternalApiException externalApiException) {
+            throw externalApiException;
+        }
+        if (firstFailure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        throw new ExternalApiException("All rate providers failed", firstFailure);
+    }
+
+    /**
+     * Calls the providers without blocking in the order of their health scores, hedging the call if a provider is slow
+     * to answer, like {@link #call(ProviderCall)}.
+     *
+     * @param <T> the type of the result
+     * @param providerCall the call to make to each provider
+     * @return the first successful result, or the failure of the first provider if the call fails with all providers
+     *         it was sent to
+     */
+    public <T> Mono<T> callReactive(Function<RateProvider, Mono<T>> providerCall) {
+        return Mono.defer(() -> {
+            List<ProviderHealth> ranked = rank();
+            AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+            return hedge(ranked, 0, Math.min(maxHedgedRequests, ranked.size()), providerCall, firstFailure)
+                    .onErrorMap(e -> firstFailure.get() != null ? firstFailure.get() : e);
+        });
+    }
+
+    /**
+     * Returns the enabled providers in the order of their health scores, with the configured order as the tie-break.
+     *
+     * @return the names of the providers, the healthiest first
+     */
+    public List<String> getRanking() {
+        return rank().stream().map(ProviderHealth::getName).toList();
+    }
+
+    private List<ProviderHealth> rank() {
+        List<ProviderHealth> ranked = new ArrayList<>(providers);
+        ranked.sort(Comparator.comparingDouble(ProviderHealth::getScore).reversed());
+        return ranked;
+    }
+
+    private Duration getHedgeDelay(ProviderHealth provider) {
+        Duration p95 = provider.getP95();
+        if (p95.isZero()) {
+            return initialHedgeDelay;
+        }
+        return p95.compareTo(minHedgeDelay) < 0 ? minHedgeDelay
+                : p95.compareTo(maxHedgeDelay) > 0 ? maxHedgeDelay : p95;
+    }
+
+    private static <T> Future<T> submit(CompletionService<T> completionService, ProviderHealth provider,
+            ProviderCall<T> providerCall, AtomicBoolean finished) {
+        return completionService.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                T result = providerCall.call(provider.rateProvider);
+                provider.recordSuccess(System.nanoTime() - start);
+                return result;
+            } catch (Exception e) {
+                if (!finished.get()) {
+                    logger.debug("Rate provider {} failed: {}", provider.getName(), e.getMessage());
+                    provider.recordFailure(System.nanoTime() - start);
+                }
+                throw e;
+            }
+        });
+    }
+
+    /*
+     * Calls the provider at the index, and the remaining providers once its hedge delay has passed or its call has
+     * failed. Losers of the race are cancelled, which does not count against their health.
+     */
+    private <T> Mono<T> hedge(List<ProviderHealth> ranked, int index, int maxRequests,
+            Function<RateProvider, Mono<T>> providerCall, AtomicReference<Throwable> firstFailure) {
+        ProviderHealth provider = ranked.get(index);
+        Sinks.Empty<Void> failed = Sinks.empty();
+        Mono<T> current = Mono.defer(() -> {
+            long start = System.nanoTime();
+            return providerCall.apply(provider.rateProvider)
+                    .doOnNext(result -> provider.recordSuccess(System.nanoTime() - start))
+                    .doOnError(e -> {
+                        logger.debug("Rate provider {} failed: {}", provider.getName(), e.getMessage());
+                        provider.recordFailure(System.nanoTime() - start);
+                        firstFailure.compareAndSet(null, e);
+                        failed.tryEmitEmpty();
+                    });
+        });
+        if (index + 1 >= maxRequests) {
+            return current;
+        }
+        Duration hedgeDelay = getHedgeDelay(provider);
+        Mono<Long> delayed = Mono.delay(hedgeDelay).doOnNext(tick -> {
+            logger.debug("No answer within the hedge delay of {}, also calling rate provider {}", hedgeDelay,
+                    ranked.get(index + 1).getName());
+            hedgeCounter.increment();
+        });
+        // Nothing is in flight once the call has failed, so the next provider is called without waiting
+        Mono<T> next = Mono.firstWithSignal(delayed.then(), failed.asMono())
+                .then(Mono.defer(() -> hedge(ranked, index + 1, maxRequests, providerCall, firstFailure)));
+        return Mono.firstWithValue(current, next);
+    }
+
+    /*
+     * Response times and moving average of the success rate of a provider
+     */
+    private static final class ProviderHealth {
+
+        private final RateProvider rateProvider;
+
+        private final Timer successTimer;
+
+        private final Timer failureTimer;
+
+        private double successRate = 1.0;
+
+        ProviderHealth(RateProvider rateProvider, MeterRegistry meterRegistry) {
+            this.rateProvider = rateProvider;
+            this.successTimer = Timer.builder("service.rate.provider.timer")
+                    .description("Time taken with a call to a rate provider")
+                    .publishPercentiles(0.95).tag("provider", rateProvider.getName())
+                    .tag("result", "success").register(meterRegistry);
+            this.failureTimer = Timer.builder("service.rate.provider.timer")
+                    .description("Time taken with a call to a rate provider")
+                    .publishPercentiles(0.95).tag("provider", rateProvider.getName())
+                    .tag("result", "failure").register(meterRegistry);
+            Gauge.builder("service.rate.provider.health.gauge", this, ProviderHealth::getScore)
+                    .description("Health score of a rate provider").tag("provider", rateProvider.getName())
+                    .register(meterRegistry);
+        }
+
+        String getName() {
+            return rateProvider.getName();
+        }
+
+        synchronized void recordSuccess(long nanos) {
+            successTimer.record(nanos, TimeUnit.NANOSECONDS);
+            successRate += SUCCESS_RATE_WEIGHT * (1.0 - successRate);
+        }
+
+        synchronized void recordFailure(long nanos) {
+            failureTimer.record(nanos, TimeUnit.NANOSECONDS);
+            successRate -= SUCCESS_RATE_WEIGHT * successRate;
+        }
+
+        synchronized double getScore() {
+            return successRate / (1.0 + getP95().toNanos() / 1e9);
+        }
+
+        /*
+         * Returns the 95th percentile of the recent successful response times, or zero if there are none
+         */
+        Duration getP95() {
+            for (ValueAtPercentile percentile : successTimer.takeSnapshot().percentileValues()) {
+                if (percentile.percentile() == 0.95) {
+                    return Duration.ofNanos((long) percentile.value(TimeUnit.NANOSECONDS));
+                }
+            }
+            return Duration.ZERO;
+        }
+
+    }
+
+}
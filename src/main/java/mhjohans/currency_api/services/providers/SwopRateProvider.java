@@ -0,0 +1,134 @@
+package mhjohans.currency_api.services.providers;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import mhjohans.currency_api.dtos.CurrencyDTO;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+import reactor.core.publisher.Mono;
+
+/**
+ * Provides the currency rates from the <a href="https://swop.cx">SWOP</a> API, which returns the rates of all
+ * currencies against its base currency with a single call. The blocking calls are made with a REST client and the
+ * reactive calls with a non-blocking web client.
+ */
+@Component
+public class SwopRateProvider implements RateProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(SwopRateProvider.class);
+
+    private final RestClient restClient;
+
+    private final WebClient webClient;
+
+    SwopRateProvider(@Qualifier("swopRestClient") RestClient restClient,
+            @Qualifier("swopWebClient") WebClient webClient) {
+        this.restClient = restClient;
+        this.webClient = webClient;
+    }
+
+    @Override
+    public String getName() {
+        return "swop";
+    }
+
+    @Override
+    public SupportedCurrencies getSupportedCurrencies() throws ExternalApiException {
+        logger.debug("Getting supported currencies from SWOP API");
+        try {
+            Set<CurrencyDTO> supportedCurrencies = restClient.get().uri("/currencies").retrieve()
+                    .body(new ParameterizedTypeReference<Set<CurrencyDTO>>() {});
+            Objects.requireNonNull(supportedCurrencies, "Supported currencies cannot be null");
+            if (logger.isTraceEnabled()) {
+                logger.trace("Got supported currencies from SWOP API: {}", supportedCurrencies);
+            } else {
+                logger.debug("Got {} supported currencies from SWOP API", supportedCurrencies.size());
+            }
+            return SupportedCurrencies.ofCurrencies(supportedCurrencies);
+        } catch (RestClientResponseException e) {
+            logger.warn("Error retrieving supported currencies from SWOP API", e);
+            throw new ExternalApiException("Failed to retrieve supported currencies", e);
+        }
+    }
+
+    @Override
+    public RateMatrix getRateMatrix() throws ExternalApiException {
+        logger.debug("Getting currency rates from SWOP API");
+        try {
+            List<CurrencyRateDTO> currencyRates = restClient.get().uri("/rates").retrieve()
+                    .body(new ParameterizedTypeReference<List<CurrencyRateDTO>>() {});
+            Objects.requireNonNull(currencyRates, "Currency rates cannot be null");
+            RateMatrix rateMatrix = RateMatrix.of(currencyRates, Instant.now());
+            logger.debug("Got currency rates from SWOP API: {}", rateMatrix);
+            return rateMatrix;
+        } catch (RestClientResponseException e) {
+            logger.warn("Error retrieving currency rates from SWOP API", e);
+            throw new ExternalApiException("Failed to retrieve currency rates", e);
+        }
+    }
+
+    @Override
+    public Mono<SupportedCurrencies> fetchSupportedCurrencies() {
+        logger.debug("Fetching supported currencies from SWOP API");
+        return webClient.get().uri("/currencies").retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Set<CurrencyDTO>>() {})
+                .switchIfEmpty(Mono.error(() -> new NullPointerException("Supported currencies cannot be null")))
+                .map(supportedCurrencies -> {
+                    logger.debug("Got {} supported currencies from SWOP API", supportedCurrencies.size());
+                    return SupportedCurrencies.ofCurrencies(supportedCurrencies);
+                })
+                .onErrorMap(WebClientResponseException.class, e -> {
+                    logger.warn("Error fetching supported currencies from SWOP API", e);
+                    return WebClientErrors.toExternalApiException("Failed to retrieve supported currencies", e);
+                });
+    }
+
+    @Override
+    public Mono<RateMatrix> fetchRateMatrix() {
+        logger.debug("Fetching currency rates from SWOP API");
+        return webClient.get().uri("/rates").retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<CurrencyRateDTO>>() {})
+                .switchIfEmpty(Mono.error(() -> new NullPointerException("Currency rates cannot be null")))
+                .map(currencyRates -> {
+                    RateMatrix rateMatrix = RateMatrix.of(currencyRates, Instant.now());
+                    logger.debug("Got currency rates from SWOP API: {}", rateMatrix);
+                    return rateMatrix;
+                })
+                .onErrorMap(WebClientResponseException.class, e -> {
+                    logger.warn("Error fetching currency rates from SWOP API", e);
+                    return WebClientErrors.toExternalApiException("Failed to retrieve currency rates", e);
+                });
+    }
+
+    @Override
+    public RateMatrix getRateMatrix(LocalDate date) throws ExternalApiException {
+        logger.debug("Getting currency rates on {} from SWOP API", date);
+        try {
+            List<CurrencyRateDTO> currencyRates = restClient.get()
+                    .uri(uriBuilder -> uriBuilder.path("/rates").queryParam("date", date).build())
+                    .retrieve().body(new ParameterizedTypeReference<List<CurrencyRateDTO>>() {});
+            Objects.requireNonNull(currencyRates, "Currency rates cannot be null");
+            RateMatrix rateMatrix = RateMatrix.of(currencyRates, Instant.now());
+            logger.debug("Got currency rates on {} from SWOP API: {}", date, rateMatrix);
+            return rateMatrix;
+        } catch (RestClientResponseException e) {
+            logger.warn("Error retrieving currency rates on {} from SWOP API", date, e);
+            throw new ExternalApiException("Failed to retrieve currency rates on " + date, e);
+        }
+    }
+
+}
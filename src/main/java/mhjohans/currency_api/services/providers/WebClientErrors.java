@@ -0,0 +1,21 @@
+package mhjohans.currency_api.services.providers;
+
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+
+/*
+ * Wraps the error responses of the web clients into the exception used by the blocking calls, so that both web stacks
+ * respond alike to the errors of the rate providers
+ */
+final class WebClientErrors {
+
+    private WebClientErrors() {
+    }
+
+    static ExternalApiException toExternalApiException(String message, WebClientResponseException e) {
+        return new ExternalApiException(message, new RestClientResponseException(e.getMessage(), e.getStatusCode(),
+                e.getStatusText(), e.getHeaders(), e.getResponseBodyAsByteArray(), null));
+    }
+
+}
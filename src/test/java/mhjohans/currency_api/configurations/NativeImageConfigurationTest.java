@@ -0,0 +1,48 @@
+package mhjohans.currency_api.configurations;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import io.github.resilience4j.circuitbreaker.configure.CircuitBreakerAspect;
+import mhjohans.currency_api.configurations.security.ApiKeyAuthenticationFilter;
+import mhjohans.currency_api.dtos.CurrencyDTO;
+import mhjohans.currency_api.dtos.CurrencyRateDTO;
+import mhjohans.currency_api.dtos.response.ErrorResponseDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTOSerializer;
+import mhjohans.currency_api.services.CurrencyRateService;
+
+class NativeImageConfigurationTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeImageConfigurationTest() {
+        new NativeImageConfiguration.CurrencyApiRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void testJacksonBindingHintsAreRegistered() throws NoSuchMethodException {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(CurrencyDTO.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(CurrencyRateDTO.class.getMethod("quote"))
+                .test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ErrorResponseDTO.class.getMethod("getCode"))
+                .test(hints));
+        // The serializer is referenced from the annotation of the response and instantiated by Jackson
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(ResponseDTOSerializer.class.getConstructor())
+                .test(hints));
+    }
+
+    @Test
+    void testResilienceAndSecurityHintsAreRegistered() throws NoSuchMethodException {
+        assertTrue(RuntimeHintsPredicates.reflection()
+                .onMethod(CurrencyRateService.class.getMethod("getSupportedCurrencies")).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(CircuitBreakerAspect.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_METHODS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ApiKeyAuthenticationFilter.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS).test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("rate-provider/rates.json").test(hints));
+    }
+
+}
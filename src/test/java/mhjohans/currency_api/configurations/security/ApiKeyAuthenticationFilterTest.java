@@ -0,0 +1,118 @@
+package mhjohans.currency_api.configurations.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+class ApiKeyAuthenticationFilterTest {
+
+    private final ApiKeyAuthenticationFilter filter = new ApiKeyAuthenticationFilter(createRegistry());
+
+    @Test
+    void testAuthenticatesIdentityOfKey() throws Exception {
+        assertEquals("default", authenticate("default-key"));
+        assertEquals("partner", authenticate("partner-key"));
+        // The security context only lives for the request
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void testRejectsMissingAndInvalidKeys() throws Exception {
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, filter(null).getStatus());
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, filter("invalid-key").getStatus());
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, filter("default-key ").getStatus());
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, filter("").getStatus());
+    }
+
+    @Test
+    void testRejectsBlankKeys() {
+        assertThrows(IllegalArgumentException.class, () -> new ApiKeyRegistry(Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> new ApiKeyRegistry(Map.of("default", " ")));
+    }
+
+    @Test
+    void testRejectsInvalidDigests() {
+        // Digests that are not hex encoded or not exactly 32 bytes long could never match any key
+        String digest = "ab".repeat(32);
+        assertThrows(IllegalArgumentException.class, () -> new ApiKeyRegistry(Map.of("default", "{sha256}")));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ApiKeyRegistry(Map.of("default", "{sha256}" + digest.substring(2))));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ApiKeyRegistry(Map.of("default", "{sha256}" + digest + "ab")));
+        assertThrows(IllegalArgumentException.class,
+                () -> new ApiKeyRegistry(Map.of("default", "{sha256}" + digest.replace('b', 'x'))));
+        new ApiKeyRegistry(Map.of("default", "{sha256}" + digest));
+    }
+
+    @Test
+    void testRequiresKeyInEnvironment() {
+        MockEnvironment environment = new MockEnvironment().withProperty("security.api-key", "");
+        IllegalArgumentException exception =
+                assertThrows(IllegalArgumentException.class, () -> ApiKeyRegistry.fromEnvironment(environment));
+        assertTrue(exception.getMessage().contains("CURRENCY_API_KEY"));
+        environment.setProperty("security.api-keys.partner", "partner-key");
+        assertNotNull(ApiKeyRegistry.fromEnvironment(environment).authenticate("partner-key"));
+    }
+
+    private String authenticate(String apiKey) throws Exception {
+        Authentication[] authentication = new Authentication[1];
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+
+            @Override
+            protected void service(HttpServletRequest request, HttpServletResponse response) {
+                authentication[0] = SecurityContextHolder.getContext().getAuthentication();
+            }
+
+        });
+        MockHttpServletResponse response = filter(apiKey, chain);
+        assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        return (String) authentication[0].getPrincipal();
+    }
+
+    private MockHttpServletResponse filter(String apiKey) throws Exception {
+        return filter(apiKey, new MockFilterChain());
+    }
+
+    private MockHttpServletResponse filter(String apiKey, MockFilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/currency-api/convert");
+        if (apiKey != null) {
+            request.addHeader(ApiKeyAuthenticationFilter.API_KEY_HEADER, apiKey);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static ApiKeyRegistry createRegistry() {
+        try {
+            // The key of the partner is configured as its digest
+            byte[] partnerDigest = MessageDigest.getInstance("SHA-256")
+                    .digest("partner-key".getBytes(StandardCharsets.UTF_8));
+            Map<String, String> apiKeys = new LinkedHashMap<>();
+            apiKeys.put("default", "default-key");
+            apiKeys.put("partner", "{sha256}" + HexFormat.of().formatHex(partnerDigest));
+            return new ApiKeyRegistry(apiKeys);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -1,9 +1,27 @@
 package mhjohans.currency_api.controller;
 
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.startsWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,37 +33,71 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.client.RestClientException;
 import mhjohans.currency_api.configurations.ConversionControllerTestConfiguration;
 import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.ConversionLimiter;
 import mhjohans.currency_api.services.ConversionService;
-import mhjohans.currency_api.services.CurrencyRateService;
+import mhjohans.currency_api.services.CurrencyFormatService;
+import mhjohans.currency_api.services.HistoricalRateService;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.RateSnapshotService;
+import mhjohans.currency_api.services.RateUpdateService;
+import mhjohans.currency_api.services.StreamingConversionService;
+import mhjohans.currency_api.services.SupportedCurrencies;
+import mhjohans.currency_api.services.SupportedCurrenciesService;
 
-@WebMvcTest(ConversionController.class)
-@Import({ConversionService.class, ConversionControllerTestConfiguration.class})
+@WebMvcTest(value = ConversionController.class,
+                properties = {"conversion.concurrency.upstream.initial-limit=1",
+                                "conversion.concurrency.upstream.min-limit=1",
+                                "conversion.concurrency.upstream.max-limit=1"})
+@Import({ConversionService.class, StreamingConversionService.class, CurrencyFormatService.class,
+                ConversionLimiter.class, RateUpdateService.class, ConversionControllerTestConfiguration.class})
 @WithMockUser
 class ConversionControllerTest {
 
         private static final String REQUEST_URL = "/currency-api/convert";
 
+        private static final String MANY_REQUEST_URL = "/currency-api/convert/many";
+
+        private static final String BATCH_REQUEST_URL = "/currency-api/convert/batch";
+
+        private static final String STREAM_REQUEST_URL = "/currency-api/convert/stream";
+
+        private static final String RATES_STREAM_REQUEST_URL = "/currency-api/rates/stream";
+
         @Autowired
         private MockMvc mockMvc;
 
         @MockBean
-        private CurrencyRateService currencyRateService;
+        private SupportedCurrenciesService supportedCurrenciesService;
+
+        @MockBean
+        private RateSnapshotService rateSnapshotService;
+
+        @MockBean
+        private HistoricalRateService historicalRateService;
 
         @BeforeEach
-        void setUp() throws ExternalApiException {
+        void setUp() throws ExternalApiException, StaleCurrencyRateException {
                 // Mock the supported currencies to include USD and EUR
-                Set<String> supportedCurrencies = Set.of("USD", "EUR");
-                when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies);
-                // Mock the currency rate from USD to EUR
-                when(currencyRateService.getCurrencyRate("USD", "EUR")).thenReturn(0.85);
+                SupportedCurrencies supportedCurrencies =
+                                SupportedCurrencies.of(Set.of("USD", "EUR"));
+                when(supportedCurrenciesService.getSupportedCurrencies())
+                                .thenReturn(supportedCurrencies);
+                // Mock the currency rates against USD to include the rate from USD to EUR
+                RateMatrix rateMatrix = RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(),
+                                Instant.now());
+                when(rateSnapshotService.getSnapshot()).thenReturn(rateMatrix);
         }
 
         @Test
@@ -55,6 +107,29 @@ class ConversionControllerTest {
                                 .andExpect(content().json(jsonContent));
         }
 
+        @Test
+        void testConvertOnDate() throws Exception {
+                LocalDate date = LocalDate.of(2024, 1, 31);
+                when(historicalRateService.getRate(anyInt(), anyInt(), eq(date))).thenReturn(0.9);
+                String jsonContent = "{\"status\":\"success\",\"data\":{\"result\":\"€90.00\"}}";
+                mockMvc.perform(MockMvcRequestBuilders.get(REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("target", "EUR").queryParam("value", "100")
+                                .queryParam("date", "2024-01-31")).andExpect(status().isOk())
+                                .andExpect(content().json(jsonContent, true));
+        }
+
+        @Test
+        void testConvertOnInvalidDate() throws Exception {
+                when(historicalRateService.getRate(anyInt(), anyInt(), any()))
+                                .thenThrow(new InvalidRequestException("N/A"));
+                mockMvc.perform(MockMvcRequestBuilders.get(REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("target", "EUR").queryParam("value", "100")
+                                .queryParam("date", "2999-01-31")).andExpect(status().isBadRequest());
+                mockMvc.perform(MockMvcRequestBuilders.get(REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("target", "EUR").queryParam("value", "100")
+                                .queryParam("date", "31.1.2024")).andExpect(status().isBadRequest());
+        }
+
         @ParameterizedTest
         @MethodSource("provideInvalidCurrencies")
         void testConvertWithInvalidCurrencies(String source, String target, double value)
@@ -79,11 +154,211 @@ class ConversionControllerTest {
 
         @Test
         void testConvertWithUnavailableExternalApi() throws Exception {
-                when(currencyRateService.getCurrencyRate("USD", "EUR"))
+                when(rateSnapshotService.getSnapshot())
                                 .thenThrow(new RestClientException("N/A"));
                 performRequest("USD", "EUR", 100).andExpect(status().isInternalServerError());
         }
 
+        @Test
+        void testConvertWithStaleRate() throws Exception {
+                when(rateSnapshotService.getAge(any())).thenReturn(Duration.ofMinutes(5));
+                when(rateSnapshotService.isStale(Duration.ofMinutes(5))).thenReturn(true);
+                String jsonContent =
+                                "{\"status\":\"success\",\"data\":{\"result\":\"€85.00\",\"stale\":true,\"rate_age_seconds\":300}}";
+                performRequest("USD", "EUR", 100).andExpect(status().isOk())
+                                .andExpect(content().json(jsonContent, true));
+        }
+
+        @Test
+        void testConvertWithExpiredRate() throws Exception {
+                when(rateSnapshotService.getSnapshot()).thenThrow(
+                                new StaleCurrencyRateException("N/A", new RestClientException("N/A")));
+                performRequest("USD", "EUR", 100).andExpect(status().isServiceUnavailable());
+        }
+
+        @Test
+        void testConvertOverConcurrencyLimit() throws Exception {
+                // The snapshot has to be loaded, so the requests take the upstream path limited to one request
+                RateMatrix rateMatrix = rateSnapshotService.getSnapshot();
+                CountDownLatch loading = new CountDownLatch(1);
+                CountDownLatch loaded = new CountDownLatch(1);
+                when(rateSnapshotService.isLoadRequired()).thenReturn(true);
+                when(rateSnapshotService.getSnapshot()).thenAnswer(invocation -> {
+                        loading.countDown();
+                        loaded.await();
+                        return rateMatrix;
+                });
+                CompletableFuture<Void> firstRequest = new CompletableFuture<>();
+                new Thread(() -> {
+                        try {
+                                // The mock user of the test is bound to the test thread
+                                mockMvc.perform(generateRequest("USD", "EUR", 100).with(user("user")))
+                                                .andExpect(status().isOk());
+                                firstRequest.complete(null);
+                        } catch (Throwable e) {
+                                firstRequest.completeExceptionally(e);
+                        }
+                }).start();
+                assertTrue(loading.await(5, TimeUnit.SECONDS));
+                String jsonContent =
+                                "{\"status\":\"error\",\"message\":\"Too many concurrent conversions, the limit of 1 has been reached, try again later\",\"code\":503}";
+                performRequest("USD", "EUR", 100).andExpect(status().isServiceUnavailable())
+                                .andExpect(content().json(jsonContent, true));
+                loaded.countDown();
+                firstRequest.get(5, TimeUnit.SECONDS);
+        }
+
+        @Test
+        void testConvertToMany() throws Exception {
+                String jsonContent = "{\"status\":\"success\",\"data\":{\"results\":"
+                                + "{\"EUR\":\"€85.00\",\"USD\":\"$100.00\"}}}";
+                mockMvc.perform(MockMvcRequestBuilders.get(MANY_REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("value", "100").queryParam("targets", "EUR,USD"))
+                                .andExpect(status().isOk()).andExpect(content().json(jsonContent, true));
+        }
+
+        @Test
+        void testConvertToAllCurrencies() throws Exception {
+                String jsonContent = "{\"status\":\"success\",\"data\":{\"results\":"
+                                + "{\"EUR\":\"85.00\",\"USD\":\"100.00\"}}}";
+                mockMvc.perform(MockMvcRequestBuilders.get(MANY_REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("value", "100").queryParam("localized", "false"))
+                                .andExpect(status().isOk()).andExpect(content().json(jsonContent, true));
+        }
+
+        @Test
+        void testConvertToManyWithUnsupportedCurrency() throws Exception {
+                String jsonContent =
+                                "{\"status\":\"fail\",\"data\":\"Currency code not supported: GBP\"}";
+                mockMvc.perform(MockMvcRequestBuilders.get(MANY_REQUEST_URL).queryParam("source", "USD")
+                                .queryParam("value", "100").queryParam("targets", "EUR,GBP"))
+                                .andExpect(status().isBadRequest()).andExpect(content().json(jsonContent));
+        }
+
+        @Test
+        void testConvertBatch() throws Exception {
+                String requestContent = "[{\"source\":\"USD\",\"target\":\"EUR\",\"value\":100},"
+                                + "{\"source\":\"USD\",\"target\":\"GBP\",\"value\":100},"
+                                + "{\"source\":\"USD\",\"target\":\"EUR\",\"value\":10}]";
+                String jsonContent = "{\"status\":\"success\",\"data\":["
+                                + "{\"status\":\"success\",\"data\":{\"result\":\"€85.00\"}},"
+                                + "{\"status\":\"fail\",\"data\":\"Currency code not supported: GBP\"},"
+                                + "{\"status\":\"success\",\"data\":{\"result\":\"€8.50\"}}]}";
+                mockMvc.perform(MockMvcRequestBuilders.post(BATCH_REQUEST_URL).with(csrf())
+                                .contentType(MediaType.APPLICATION_JSON).content(requestContent))
+                                .andExpect(status().isOk()).andExpect(content().json(jsonContent, true));
+        }
+
+        @Test
+        void testConvertBatchWithMalformedContent() throws Exception {
+                mockMvc.perform(MockMvcRequestBuilders.post(BATCH_REQUEST_URL).with(csrf())
+                                .contentType(MediaType.APPLICATION_JSON).content("{\"source\":"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @Test
+        void testConvertCsvStream() throws Exception {
+                String requestContent = "source,target,value\nUSD,EUR,100\r\nUSD,GBP,100\nUSD,EUR,x\n"
+                                + "\"USD\",EUR,1\nUSD,EUR,10";
+                String expectedContent = "source,target,value,status,result\n"
+                                + "USD,EUR,100,success,€85.00\n"
+                                + "USD,GBP,100,fail,Currency code not supported: GBP\n"
+                                + "USD,EUR,x,fail,Invalid value: x\n"
+                                + "\"\"\"USD\"\",EUR,1\",,,fail,Quoted fields are not supported\n"
+                                + "USD,EUR,10,success,€8.50\n";
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType("text/csv").content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                                .andExpect(content().string(expectedContent));
+        }
+
+        @Test
+        void testConvertCsvStreamWithCarriageReturnInField() throws Exception {
+                // Only the carriage return ending the line is dropped
+                String requestContent = "USD,EUR,1\r00\r\nUSD,EUR,100\r\n";
+                String expectedContent = "USD,EUR,\"1\r00\",fail,\"Invalid value: 1\r00\"\n"
+                                + "USD,EUR,100,success,€85.00\n";
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType("text/csv").content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(expectedContent));
+        }
+
+        @Test
+        void testConvertCsvStreamWithOverlongRow() throws Exception {
+                // The row exceeds the default maximum length of 1024 characters and its columns are truncated in the output
+                String overlongValue = "1".repeat(1100);
+                String requestContent = "USD,EUR," + overlongValue + "\nUSD,EUR,100\n";
+                String expectedContent = ("USD,EUR," + overlongValue).substring(0, 1024)
+                                + ",fail,Row exceeds the maximum length\n"
+                                + "USD,EUR,100,success,€85.00\n";
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType("text/csv").content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(expectedContent));
+        }
+
+        @Test
+        void testConvertCsvStreamWithHeaderOnly() throws Exception {
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType("text/csv").content("source,target,value\r\n"))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string("source,target,value,status,result\n"));
+        }
+
+        @Test
+        void testConvertNdjsonStreamWithMalformedRow() throws Exception {
+                // A malformed row is reported as a failed row and the rows after it are still converted
+                String requestContent = "{\"source\":\"USD\",\n"
+                                + "{\"source\":\"USD\",\"target\":\"EUR\",\"value\":100}\n";
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType(MediaType.APPLICATION_NDJSON).content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(content().string(allOf(
+                                                startsWith("{\"status\":\"fail\",\"data\":\"Invalid row: "),
+                                                endsWith("\n{\"status\":\"success\",\"data\":{\"result\":\"€85.00\"}}\n"))));
+        }
+
+        @Test
+        void testConvertNdjsonStream() throws Exception {
+                String requestContent = "{\"source\":\"USD\",\"target\":\"EUR\",\"value\":100}\n"
+                                + "{\"source\":\"USD\",\"target\":\"GBP\",\"value\":100}\n";
+                String expectedContent =
+                                "{\"status\":\"success\",\"data\":{\"result\":\"€85.00\"}}\n"
+                                                + "{\"status\":\"fail\",\"data\":\"Currency code not supported: GBP\"}\n";
+                mockMvc.perform(MockMvcRequestBuilders.post(STREAM_REQUEST_URL).with(csrf())
+                                .contentType(MediaType.APPLICATION_NDJSON).content(requestContent))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentTypeCompatibleWith(
+                                                MediaType.APPLICATION_NDJSON))
+                                .andExpect(content().string(expectedContent));
+        }
+
+        @Test
+        void testStreamRates() throws Exception {
+                MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(RATES_STREAM_REQUEST_URL)
+                                .queryParam("pairs", "USD/EUR,EUR/USD"))
+                                .andExpect(request().asyncStarted()).andReturn();
+                // The current rates are sent on a virtual thread after the subscription has been added
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (result.getResponse().getContentAsString().isEmpty() && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                }
+                String content = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+                assertTrue(content.startsWith("event:rates\ndata:{\"rates\":{\"USD/EUR\":0.85,"
+                                + "\"EUR/USD\":1.17647058823529},"), content);
+                assertTrue(result.getResponse().getContentType().startsWith(MediaType.TEXT_EVENT_STREAM_VALUE));
+        }
+
+        @Test
+        void testStreamRatesWithInvalidPair() throws Exception {
+                String jsonContent = "{\"status\":\"fail\",\"data\":\"Invalid currency pair: USDEUR\"}";
+                mockMvc.perform(MockMvcRequestBuilders.get(RATES_STREAM_REQUEST_URL)
+                                .queryParam("pairs", "USDEUR"))
+                                .andExpect(status().isBadRequest()).andExpect(content().json(jsonContent));
+        }
+
         private ResultActions performRequest(String source, String target, double value)
                         throws Exception {
                 return mockMvc.perform(generateRequest(source, target, value));
@@ -0,0 +1,128 @@
+package mhjohans.currency_api.controller;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.client.RestClientException;
+import mhjohans.currency_api.configurations.ConversionControllerTestConfiguration;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+import mhjohans.currency_api.services.ConversionLimiter;
+import mhjohans.currency_api.services.ConversionService;
+import mhjohans.currency_api.services.CurrencyFormatService;
+import mhjohans.currency_api.services.HistoricalRateService;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.RateSnapshotService;
+import mhjohans.currency_api.services.ReactiveConversionService;
+import mhjohans.currency_api.services.ReactiveCurrencyRateService;
+import mhjohans.currency_api.services.SupportedCurrencies;
+import mhjohans.currency_api.services.SupportedCurrenciesService;
+import reactor.core.publisher.Mono;
+
+@WebFluxTest(controllers = ReactiveConversionController.class,
+                properties = "spring.main.web-application-type=reactive")
+@Import({ReactiveConversionService.class, ConversionService.class, CurrencyFormatService.class,
+                ConversionLimiter.class, ConversionControllerTestConfiguration.class})
+@WithMockUser
+class ReactiveConversionControllerTest {
+
+        private static final String REQUEST_URL = "/currency-api/convert";
+
+        @Autowired
+        private WebTestClient webTestClient;
+
+        @MockBean
+        private ReactiveCurrencyRateService reactiveCurrencyRateService;
+
+        @MockBean
+        private SupportedCurrenciesService supportedCurrenciesService;
+
+        @MockBean
+        private RateSnapshotService rateSnapshotService;
+
+        @MockBean
+        private HistoricalRateService historicalRateService;
+
+        @BeforeEach
+        void setUp() {
+                // Mock the supported currencies to include USD and EUR
+                when(reactiveCurrencyRateService.getSupportedCurrencies())
+                                .thenReturn(Mono.just(SupportedCurrencies.of(Set.of("USD", "EUR"))));
+                // Mock the currency rates against USD to include the rate from USD to EUR
+                RateMatrix rateMatrix = RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(),
+                                Instant.now());
+                when(rateSnapshotService.getSnapshot(any())).thenReturn(Mono.just(rateMatrix));
+        }
+
+        @Test
+        void testConvert() {
+                performRequest("USD", "EUR", "100").expectStatus().isOk().expectBody().json(
+                                "{\"status\":\"success\",\"data\":{\"result\":\"€85.00\"}}", true);
+        }
+
+        @Test
+        void testConvertOnDate() throws Exception {
+                LocalDate date = LocalDate.of(2024, 1, 31);
+                when(supportedCurrenciesService.getSupportedCurrencies())
+                                .thenReturn(SupportedCurrencies.of(Set.of("USD", "EUR")));
+                when(historicalRateService.getRate(anyInt(), anyInt(), eq(date))).thenReturn(0.9);
+                webTestClient.get()
+                                .uri(uriBuilder -> uriBuilder.path(REQUEST_URL)
+                                                .queryParam("source", "USD").queryParam("target", "EUR")
+                                                .queryParam("value", "100")
+                                                .queryParam("date", "2024-01-31").build())
+                                .header("Accept-Language", "en-US").exchange().expectStatus().isOk()
+                                .expectBody().json(
+                                                "{\"status\":\"success\",\"data\":{\"result\":\"€90.00\"}}",
+                                                true);
+        }
+
+        @Test
+        void testConvertWithInvalidCurrency() {
+                performRequest("USD", "GBP", "100").expectStatus().isBadRequest().expectBody()
+                                .json("{\"status\":\"fail\",\"data\":\"Currency code not supported: GBP\"}",
+                                                true);
+        }
+
+        @Test
+        void testConvertWithEmptyValue() {
+                performRequest("USD", "EUR", "").expectStatus().isBadRequest();
+        }
+
+        @Test
+        void testConvertWithUnavailableExternalApi() {
+                when(rateSnapshotService.getSnapshot(any()))
+                                .thenReturn(Mono.error(new RestClientException("N/A")));
+                performRequest("USD", "EUR", "100").expectStatus().is5xxServerError();
+        }
+
+        @Test
+        void testConvertWithExpiredRate() {
+                when(rateSnapshotService.getSnapshot(any())).thenReturn(Mono.error(
+                                new StaleCurrencyRateException("N/A", new RestClientException("N/A"))));
+                performRequest("USD", "EUR", "100").expectStatus().isEqualTo(503);
+        }
+
+        private WebTestClient.ResponseSpec performRequest(String source, String target,
+                        String value) {
+                return webTestClient.get()
+                                .uri(uriBuilder -> uriBuilder.path(REQUEST_URL)
+                                                .queryParam("source", source)
+                                                .queryParam("target", target)
+                                                .queryParam("value", value).build())
+                                .header("Accept-Language", "en-US").exchange();
+        }
+
+}
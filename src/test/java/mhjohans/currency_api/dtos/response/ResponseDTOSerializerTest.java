@@ -0,0 +1,70 @@
+package mhjohans.currency_api.dtos.response;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+
+class ResponseDTOSerializerTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    // Serializes the responses reflectively through their annotations, as before the serializers were added
+    private final ObjectMapper reflectiveObjectMapper = Jackson2ObjectMapperBuilder.json()
+            .mixIn(ResponseDTO.class, ReflectiveMixIn.class)
+            .mixIn(ConversionResultDTO.class, ReflectiveMixIn.class).build();
+
+    @JsonSerialize(using = JsonSerializer.None.class)
+    private abstract static class ReflectiveMixIn {
+    }
+
+    private static Stream<Arguments> provideResponses() {
+        Map<String, Object> errorData = new LinkedHashMap<>();
+        errorData.put("error", "Invalid \"key\"");
+        errorData.put("retry", 1);
+        return Stream.of(
+                Arguments.of(new SuccessResponseDTO<>(new ConversionResultDTO("€1,234.56")),
+                        "{\"status\":\"success\",\"data\":{\"result\":\"€1,234.56\"}}"),
+                Arguments.of(new SuccessResponseDTO<>(new ConversionResultDTO("€1,234.56", true, 300L)),
+                        "{\"status\":\"success\",\"data\":{\"result\":\"€1,234.56\",\"stale\":true,"
+                                + "\"rate_age_seconds\":300}}"),
+                Arguments.of(new SuccessResponseDTO<>(new ConversionResultDTO(null, false, 0L)),
+                        "{\"status\":\"success\",\"data\":{\"result\":null,\"rate_age_seconds\":0}}"),
+                Arguments.of(new SuccessResponseDTO<>(null), "{\"status\":\"success\"}"),
+                Arguments.of(new FailResponseDTO("Currency \"code\" not\n supported: XYZ"),
+                        "{\"status\":\"fail\",\"data\":\"Currency \\\"code\\\" not\\n supported: XYZ\"}"),
+                Arguments.of(new FailResponseDTO(null), "{\"status\":\"fail\"}"),
+                Arguments.of(new ErrorResponseDTO("Failed", 500, null),
+                        "{\"status\":\"error\",\"message\":\"Failed\",\"code\":500}"),
+                Arguments.of(new ErrorResponseDTO("Failed", 503, errorData),
+                        "{\"status\":\"error\",\"data\":{\"error\":\"Invalid \\\"key\\\"\",\"retry\":1},"
+                                + "\"message\":\"Failed\",\"code\":503}"),
+                Arguments.of(new ErrorResponseDTO(null), "{\"status\":\"error\",\"message\":null}"),
+                Arguments.of(new SuccessResponseDTO<>(List.of(
+                        new SuccessResponseDTO<>(new ConversionResultDTO("€8.50")),
+                        new FailResponseDTO("Value cannot be null"))),
+                        "{\"status\":\"success\",\"data\":[{\"status\":\"success\",\"data\":{\"result\":\"€8.50\"}},"
+                                + "{\"status\":\"fail\",\"data\":\"Value cannot be null\"}]}"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("provideResponses")
+    void testSerializationIsIdenticalToReflective(ResponseDTO<?> response, String expectedJson) throws Exception {
+        assertEquals(expectedJson, objectMapper.writeValueAsString(response));
+        assertArrayEquals(reflectiveObjectMapper.writeValueAsBytes(response),
+                objectMapper.writeValueAsBytes(response));
+        assertEquals(reflectiveObjectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response),
+                objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(response));
+    }
+
+}
@@ -0,0 +1,79 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter("test", 10, 2, 100, 1.5, 1.0, 1000, meterRegistry);
+
+    @Test
+    void testRejectsCallsOverLimit() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, meterRegistry.get("service.concurrency.rejected.counter").tag("limiter", "test").counter()
+                .count());
+        assertEquals(10, meterRegistry.get("service.concurrency.in.flight.gauge").gauge().value());
+        limiter.ignore();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void testLimitFollowsLatencyGradient() {
+        // The limit grows while the latency stays steady under load
+        runRounds(20, TimeUnit.MILLISECONDS.toNanos(1));
+        int grownLimit = limiter.getLimit();
+        assertEquals(100, grownLimit);
+        // and shrinks as soon as the latency rises well above its long-term average
+        runRounds(1, TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(limiter.getLimit() <= grownLimit / 10);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testLimitShrinksOnLatencyRiseAtLowUtilisation() {
+        // Single calls at a time do not grow the limit
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        }
+        assertEquals(10, limiter.getLimit());
+        // but a rise in their latency shrinks it
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksOnDroppedCall() {
+        assertTrue(limiter.tryAcquire());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(1), true);
+        assertEquals(9, limiter.getLimit());
+        assertEquals(9, meterRegistry.get("service.concurrency.limit.gauge").gauge().value());
+    }
+
+    /*
+     * Fills the limit with calls and releases them all with the given latency, for the given number of rounds
+     */
+    private void runRounds(int rounds, long rttNanos) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rttNanos, false);
+            }
+        }
+    }
+
+}
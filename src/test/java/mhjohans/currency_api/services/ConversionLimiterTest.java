@@ -0,0 +1,69 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+
+class ConversionLimiterTest {
+
+    @Mock
+    private RateSnapshotService rateSnapshotService;
+
+    @Mock
+    private SupportedCurrenciesService supportedCurrenciesService;
+
+    @Mock
+    private HistoricalRateService historicalRateService;
+
+    private ConversionLimiter conversionLimiter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        conversionLimiter = new ConversionLimiter(rateSnapshotService, supportedCurrenciesService,
+                historicalRateService, 16, 16, 1000, 4, 2, 100, 1, 1.5, 1.0, 10, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testBulkCallsDoNotShrinkCachedLimit() throws Exception {
+        AdaptiveConcurrencyLimiter cachedLimiter = conversionLimiter.getLimiter(ConversionLimiter.Route.CACHED);
+        // Slow bulk calls leave the limit of the single conversions untouched
+        for (int i = 0; i < 100; i++) {
+            conversionLimiter.callBulk(ConversionLimiter.Route.CACHED, () -> {
+                Thread.sleep(1);
+                return null;
+            });
+        }
+        assertEquals(16, cachedLimiter.getLimit());
+        assertEquals(0, cachedLimiter.getInFlight());
+        assertEquals(0, conversionLimiter.getBulkLimiter().getInFlight());
+    }
+
+    @Test
+    void testBulkCallsOverLimitAreRejected() throws Exception {
+        conversionLimiter.callBulk(ConversionLimiter.Route.CACHED,
+                () -> assertThrows(OverloadedException.class,
+                        () -> conversionLimiter.callBulk(ConversionLimiter.Route.CACHED, () -> null)));
+        assertEquals(0, conversionLimiter.getBulkLimiter().getInFlight());
+    }
+
+    @Test
+    void testUpstreamBulkCallShrinksUpstreamLimitOnFailure() {
+        AdaptiveConcurrencyLimiter upstreamLimiter = conversionLimiter.getLimiter(ConversionLimiter.Route.UPSTREAM);
+        assertThrows(ExternalApiException.class, () -> conversionLimiter.callBulk(ConversionLimiter.Route.UPSTREAM,
+                () -> {
+                    assertEquals(1, upstreamLimiter.getInFlight());
+                    throw new ExternalApiException("N/A", new RuntimeException());
+                }));
+        assertEquals(3, upstreamLimiter.getLimit());
+        assertEquals(0, upstreamLimiter.getInFlight());
+        assertEquals(0, conversionLimiter.getBulkLimiter().getInFlight());
+    }
+
+}
@@ -2,65 +2,106 @@ package mhjohans.currency_api.services;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.i18n.LocaleContextHolder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.dtos.ConversionRequestDTO;
+import mhjohans.currency_api.dtos.ConversionResultDTO;
+import mhjohans.currency_api.dtos.MultiConversionResultDTO;
+import mhjohans.currency_api.dtos.response.ResponseDTO;
 import mhjohans.currency_api.exceptions.ExternalApiException;
 import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
 
 class ConversionServiceTest {
 
     @Mock
-    private CurrencyRateService currencyRateService;
+    private SupportedCurrenciesService supportedCurrenciesService;
+
+    @Mock
+    private RateSnapshotService rateSnapshotService;
+
+    @Mock
+    private HistoricalRateService historicalRateService;
+
+    @Spy
+    private CurrencyFormatService currencyFormatService =
+            new CurrencyFormatService(new CaffeineCacheManager(), 4);
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
-    @InjectMocks
     private ConversionService conversionService;
 
     @BeforeEach
-    void setUp() throws ExternalApiException {
+    void setUp() throws ExternalApiException, StaleCurrencyRateException {
         // Set the locale for formatting
         LocaleContextHolder.setLocale(Locale.US);
         // Initialize the mock objects
         MockitoAnnotations.openMocks(this);
+        conversionService = new ConversionService(supportedCurrenciesService, rateSnapshotService,
+                currencyFormatService, historicalRateService, RoundingMode.HALF_EVEN, meterRegistry);
         // Mock the supported currencies to include USD and EUR
-        Set<String> supportedCurrencies = Set.of("USD", "EUR");
-        when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies);
-        // Mock the currency rate from USD to EUR
-        when(currencyRateService.getCurrencyRate("USD", "EUR")).thenReturn(0.85);
+        SupportedCurrencies supportedCurrencies = SupportedCurrencies.of(Set.of("USD", "EUR"));
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(supportedCurrencies);
+        // Mock the currency rates against USD to include the rate from USD to EUR
+        RateMatrix rateMatrix =
+                RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now());
+        when(rateSnapshotService.getSnapshot()).thenReturn(rateMatrix);
     }
 
     @Test
-    void testConvertCurrency() throws InvalidCurrencyException, ExternalApiException {
+    void testConvertCurrency()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
         // Perform the conversion
-        String result = conversionService.convert("USD", "EUR", 100);
+        String result = conversionService.convert("USD", "EUR", "100").result();
         // Verify the format of the conversion result
         assertEquals("€85.00", result);
     }
 
     @Test
     void testConvertCurrencyWithFinnishLocale()
-            throws InvalidCurrencyException, ExternalApiException {
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
         LocaleContextHolder.setLocale(Locale.forLanguageTag("fi"));
-        String result = conversionService.convert("USD", "EUR", 100);
+        String result = conversionService.convert("USD", "EUR", "100").result();
         assertEquals("85,00 €", result);
     }
 
     @Test
-    void testConvertCurrencyWithZeroAmount() throws InvalidCurrencyException, ExternalApiException {
-        String result = conversionService.convert("USD", "EUR", 0);
+    void testConvertCurrencyWithZeroAmount()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        String result = conversionService.convert("USD", "EUR", "0").result();
         assertEquals("€0.00", result);
     }
 
     @Test
     void testConvertCurrencyWithNegativeAmount()
-            throws InvalidCurrencyException, ExternalApiException {
-        String result = conversionService.convert("USD", "EUR", -100);
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        String result = conversionService.convert("USD", "EUR", "-100").result();
         assertEquals("-€85.00", result);
     }
 
@@ -68,7 +109,7 @@ class ConversionServiceTest {
     void testConvertCurrencyWithNullCurrency() {
         // Expect an exception for null currency
         InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class, () -> {
-            conversionService.convert(null, "EUR", 100);
+            conversionService.convert(null, "EUR", "100");
         });
         // Verify the exception message
         assertEquals("Currency code cannot be null", exception.getMessage());
@@ -77,7 +118,7 @@ class ConversionServiceTest {
     @Test
     void testConvertCurrencyWithEmptyCurrency() {
         InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class, () -> {
-            conversionService.convert("", "EUR", 100);
+            conversionService.convert("", "EUR", "100");
         });
         assertEquals("Invalid currency code: currency code cannot be empty",
                 exception.getMessage());
@@ -86,9 +127,192 @@ class ConversionServiceTest {
     @Test
     void testConvertCurrencyWithUnsupportedCurrency() {
         InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class, () -> {
-            conversionService.convert("USD", "GBP", 100);
+            conversionService.convert("USD", "GBP", "100");
+        });
+        assertEquals("Currency code not supported: GBP", exception.getMessage());
+    }
+
+    @Test
+    void testConvertCurrencyWithNonLetterCurrency() {
+        InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class, () -> {
+            conversionService.convert("USD", "EU1", "100");
         });
+        assertEquals("Currency code not supported: EU1", exception.getMessage());
+    }
+
+    @Test
+    void testConvertCurrencyWithUncleanedCurrency()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        String result = conversionService.convert(" usd", "Eur ", "100").result();
+        assertEquals("€85.00", result);
+    }
+
+    @Test
+    void testConvertCurrencyWithCrossRate()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        // Derive the rate from EUR to GBP through the quotes against USD
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(SupportedCurrencies.of(Set.of("USD", "EUR", "GBP")));
+        when(rateSnapshotService.getSnapshot()).thenReturn(RateMatrix.of("USD",
+                Map.of("EUR", 0.8, "GBP", 0.6), LocalDate.now(), Instant.now()));
+        String result = conversionService.convert("EUR", "GBP", "100").result();
+        assertEquals("£75.00", result);
+    }
+
+    @Test
+    void testConvertCurrencyWithDecimalValue()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        String result = conversionService.convert("USD", "EUR", "1234567.89").result();
+        assertEquals("€1,049,382.71", result);
+    }
+
+    @Test
+    void testConvertCurrencyWithInvalidValue() {
+        InvalidRequestException exception = assertThrows(InvalidRequestException.class, () -> {
+            conversionService.convert("USD", "EUR", "1,5");
+        });
+        assertEquals("Invalid value: 1,5", exception.getMessage());
+    }
+
+    @Test
+    void testConvertCurrencyRoundsToTargetDecimalDigits()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        // Yen has no minor unit, so the converted value is rounded to whole yen
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(SupportedCurrencies.of(Set.of("USD", "JPY")));
+        when(rateSnapshotService.getSnapshot()).thenReturn(RateMatrix.of("USD",
+                Map.of("JPY", 150.125), LocalDate.now(), Instant.now()));
+        String result = conversionService.convert("USD", "JPY", "10.5").result();
+        assertEquals("¥1,576", result);
+    }
+
+    @Test
+    void testConvertCurrencyWithRoundingMode()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        when(rateSnapshotService.getSnapshot()).thenReturn(RateMatrix.of("USD",
+                Map.of("EUR", 0.5), LocalDate.now(), Instant.now()));
+        assertEquals("€0.12", conversionService.convert("USD", "EUR", "0.25").result());
+        ConversionService halfUpConversionService = new ConversionService(supportedCurrenciesService,
+                rateSnapshotService, currencyFormatService, historicalRateService, RoundingMode.HALF_UP,
+                meterRegistry);
+        assertEquals("€0.13", halfUpConversionService.convert("USD", "EUR", "0.25").result());
+    }
+
+    @Test
+    void testConversionWithoutRoundingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ConversionService(supportedCurrenciesService,
+                rateSnapshotService, currencyFormatService, historicalRateService, RoundingMode.UNNECESSARY,
+                meterRegistry));
+    }
+
+    @Test
+    void testConversionStagesAreTimed()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        conversionService.convert("USD", "EUR", "100");
+        for (String stage : List.of("validate", "lookup", "convert", "localize")) {
+            assertEquals(1, meterRegistry.get("service.conversion.stage.timer").tag("stage", stage).timer()
+                    .count());
+        }
+    }
+
+    @Test
+    void testConvertAll() throws ExternalApiException, StaleCurrencyRateException {
+        List<ResponseDTO<?>> results = conversionService.convertAll(
+                List.of(new ConversionRequestDTO("USD", "EUR", "100.0"),
+                        new ConversionRequestDTO("usd", "GBP", "100.0"),
+                        new ConversionRequestDTO("USD", "EUR", null),
+                        new ConversionRequestDTO(" usd ", "eur", "10.0")));
+        assertEquals(4, results.size());
+        assertEquals(Optional.of(new ConversionResultDTO("€85.00")), results.get(0).getData());
+        assertEquals(Optional.of("Currency code not supported: GBP"), results.get(1).getData());
+        assertEquals(Optional.of("Value cannot be null"), results.get(2).getData());
+        assertEquals(Optional.of(new ConversionResultDTO("€8.50")), results.get(3).getData());
+    }
+
+    @Test
+    void testConvertToMany() throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(SupportedCurrencies.of(Set.of("USD", "EUR", "GBP", "JPY")));
+        when(rateSnapshotService.getSnapshot()).thenReturn(RateMatrix.of("USD",
+                Map.of("EUR", 0.8, "GBP", 0.6, "JPY", 150.125), LocalDate.now(), Instant.now()));
+        MultiConversionResultDTO result =
+                conversionService.convertToMany("EUR", "10.5", List.of("jpy", "USD", "EUR"), true);
+        assertEquals(new MultiConversionResultDTO(Map.of("JPY", "¥1,970", "USD", "$13.12", "EUR", "€10.50")),
+                result);
+        // The results are in the order of the targets
+        assertEquals(List.of("JPY", "USD", "EUR"), List.copyOf(result.results().keySet()));
+    }
+
+    @Test
+    void testConvertToAllSupportedCurrencies() throws InvalidCurrencyException, InvalidRequestException,
+            ExternalApiException, StaleCurrencyRateException {
+        // GBP has a rate but is not supported, and CHF is supported but has no rate
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(SupportedCurrencies.of(Set.of("USD", "EUR", "JPY", "CHF")));
+        when(rateSnapshotService.getSnapshot()).thenReturn(RateMatrix.of("USD",
+                Map.of("EUR", 0.8, "GBP", 0.6, "JPY", 150.125), LocalDate.now(), Instant.now()));
+        MultiConversionResultDTO result = conversionService.convertToMany("USD", "10.5", null, false);
+        assertEquals(List.of("EUR", "JPY", "USD"), List.copyOf(result.results().keySet()));
+        assertEquals(Map.of("EUR", "8.40", "JPY", "1576", "USD", "10.50"), result.results());
+    }
+
+    @Test
+    void testConvertToManyWithUnsupportedCurrency() {
+        InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class,
+                () -> conversionService.convertToMany("USD", "100", List.of("EUR", "GBP"), true));
         assertEquals("Currency code not supported: GBP", exception.getMessage());
     }
 
+    @Test
+    void testConvertToManyWithStaleRate() throws InvalidCurrencyException, InvalidRequestException,
+            ExternalApiException, StaleCurrencyRateException {
+        when(rateSnapshotService.getAge(any())).thenReturn(Duration.ofMinutes(5));
+        when(rateSnapshotService.isStale(Duration.ofMinutes(5))).thenReturn(true);
+        MultiConversionResultDTO result = conversionService.convertToMany("USD", "100", List.of("EUR"), true);
+        assertEquals(new MultiConversionResultDTO(Map.of("EUR", "€85.00"), true, 300L), result);
+    }
+
+    @Test
+    void testConvertCurrencyWithStaleRate()
+            throws InvalidCurrencyException, InvalidRequestException, ExternalApiException,
+            StaleCurrencyRateException {
+        when(rateSnapshotService.getAge(any())).thenReturn(Duration.ofMinutes(5));
+        when(rateSnapshotService.isStale(Duration.ofMinutes(5))).thenReturn(true);
+        ConversionResultDTO result = conversionService.convert("USD", "EUR", "100");
+        assertEquals(new ConversionResultDTO("€85.00", true, 300L), result);
+    }
+
+    @Test
+    void testConvertCurrencyOnDate() throws InvalidCurrencyException, InvalidRequestException,
+            ExternalApiException, StaleCurrencyRateException {
+        LocalDate date = LocalDate.of(2024, 1, 31);
+        when(historicalRateService.getRate(anyInt(), anyInt(), eq(date))).thenReturn(0.9);
+        ConversionResultDTO result = conversionService.convert("USD", "EUR", "100", date);
+        assertEquals(new ConversionResultDTO("€90.00"), result);
+    }
+
+    @Test
+    void testConvertAllOnDates() throws InvalidCurrencyException, InvalidRequestException,
+            ExternalApiException, StaleCurrencyRateException {
+        LocalDate date = LocalDate.of(2024, 1, 31);
+        LocalDate futureDate = LocalDate.now().plusDays(1);
+        when(historicalRateService.getRate(anyInt(), anyInt(), eq(date))).thenReturn(0.9);
+        when(historicalRateService.getRate(anyInt(), anyInt(), eq(futureDate)))
+                .thenThrow(new InvalidRequestException("Date must be before the current date"));
+        List<ResponseDTO<?>> results = conversionService.convertAll(
+                List.of(new ConversionRequestDTO("USD", "EUR", "100.0", date),
+                        new ConversionRequestDTO("USD", "EUR", "100.0"),
+                        new ConversionRequestDTO("USD", "EUR", "100.0", futureDate)));
+        assertEquals(Optional.of(new ConversionResultDTO("€90.00")), results.get(0).getData());
+        assertEquals(Optional.of(new ConversionResultDTO("€85.00")), results.get(1).getData());
+        assertEquals(Optional.of("Date must be before the current date"), results.get(2).getData());
+    }
+
 }
@@ -0,0 +1,57 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import mhjohans.currency_api.dtos.CurrencyDTO;
+
+class CurrencyCodesTest {
+
+    @Test
+    void testPackAndUnpack() {
+        int key = CurrencyCodes.pack("USD");
+        assertTrue(key >= 0 && key < CurrencyCodes.CAPACITY);
+        assertEquals("USD", CurrencyCodes.unpack(key));
+        // Whitespace and case are ignored
+        assertEquals(key, CurrencyCodes.pack(" usd\t"));
+        assertEquals(key, CurrencyCodes.pack("uSd"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "US", "EURO", "US1", "U-D", "ÄÖÅ", "U D"})
+    void testPackInvalid(String currency) {
+        assertEquals(CurrencyCodes.INVALID, CurrencyCodes.pack(currency));
+    }
+
+    @Test
+    void testSupportedCurrencies() {
+        SupportedCurrencies supportedCurrencies =
+                SupportedCurrencies.of(List.of("USD", "EUR", "EUR", "INVALID"));
+        assertEquals(2, supportedCurrencies.size());
+        assertTrue(supportedCurrencies.contains(CurrencyCodes.pack("EUR")));
+        assertFalse(supportedCurrencies.contains(CurrencyCodes.pack("GBP")));
+        assertFalse(supportedCurrencies.contains(CurrencyCodes.INVALID));
+    }
+
+    @Test
+    void testSupportedCurrencyDecimalDigits() {
+        // The decimal digits given by the external API take precedence over the ones defined in ISO 4217
+        SupportedCurrencies supportedCurrencies = SupportedCurrencies.ofCurrencies(List.of(
+                new CurrencyDTO("USD", "840", 2, "US Dollar", true),
+                new CurrencyDTO("JPY", "392", null, "Japanese Yen", true),
+                new CurrencyDTO("KWD", "414", -1, "Kuwaiti Dinar", true),
+                new CurrencyDTO("XYZ", "999", null, "Unknown", true),
+                new CurrencyDTO("ISK", "352", 2, "Icelandic Krona", true)));
+        assertEquals(2, supportedCurrencies.getDecimalDigits(CurrencyCodes.pack("USD")));
+        assertEquals(0, supportedCurrencies.getDecimalDigits(CurrencyCodes.pack("JPY")));
+        assertEquals(3, supportedCurrencies.getDecimalDigits(CurrencyCodes.pack("KWD")));
+        assertEquals(SupportedCurrencies.DEFAULT_DECIMAL_DIGITS,
+                supportedCurrencies.getDecimalDigits(CurrencyCodes.pack("XYZ")));
+        assertEquals(2, supportedCurrencies.getDecimalDigits(CurrencyCodes.pack("ISK")));
+    }
+
+}
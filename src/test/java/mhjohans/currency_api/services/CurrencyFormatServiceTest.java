@@ -0,0 +1,120 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+class CurrencyFormatServiceTest {
+
+    @Test
+    void testFormatPoolsAreBoundedByCacheSpecification() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // Evict on the calling thread to check the size right after
+        cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(2).executor(Runnable::run));
+        CurrencyFormatService currencyFormatService = new CurrencyFormatService(cacheManager, 4);
+        for (Locale locale : Locale.getAvailableLocales()) {
+            currencyFormatService.format(BigDecimal.ONE, locale, "EUR");
+        }
+        assertEquals("€1.00", currencyFormatService.format(BigDecimal.ONE, Locale.US, "EUR"));
+        CaffeineCache cache = (CaffeineCache) cacheManager.getCache(CurrencyFormatService.CACHE_NAME);
+        cache.getNativeCache().cleanUp();
+        assertEquals(2, cache.getNativeCache().estimatedSize());
+    }
+
+    @Test
+    void testPooledFormatsMatchNewFormats() {
+        CurrencyFormatService currencyFormatService = new CurrencyFormatService(new CaffeineCacheManager(), 4);
+        for (Locale locale : List.of(Locale.US, Locale.GERMANY, Locale.JAPAN, Locale.forLanguageTag("ar-EG"),
+                Locale.forLanguageTag("hi-IN"))) {
+            for (String currencyCode : List.of("EUR", "USD", "JPY", "KWD")) {
+                NumberFormat expected = NumberFormat.getCurrencyInstance(locale);
+                expected.setCurrency(Currency.getInstance(currencyCode));
+                // Format each value twice, so that the second one is formatted with a reused format
+                for (String value : List.of("0", "-1234.5", "1234567.891", "0.005", "1234567.891")) {
+                    assertEquals(expected.format(new BigDecimal(value)),
+                            currencyFormatService.format(new BigDecimal(value), locale, currencyCode));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPoolStaysWithinMaximumSize() throws Exception {
+        CurrencyFormatService currencyFormatService = new CurrencyFormatService(new CaffeineCacheManager(), 4);
+        assertEquals(0, currencyFormatService.getIdleCount(Locale.US, "EUR", 2));
+        currencyFormatService.format(BigDecimal.ONE, Locale.US, "EUR", 2);
+        // The format is returned to the pool and reused by the next call
+        assertEquals(1, currencyFormatService.getIdleCount(Locale.US, "EUR", 2));
+        currencyFormatService.format(BigDecimal.ONE, Locale.US, "EUR", 2);
+        assertEquals(1, currencyFormatService.getIdleCount(Locale.US, "EUR", 2));
+        // Many concurrent calls create more formats, but only the maximum number of them is kept
+        formatConcurrently(currencyFormatService, 16, 200);
+        assertTrue(currencyFormatService.getIdleCount(Locale.US, "EUR", 2) <= 4);
+    }
+
+    @Test
+    void testConcurrentFormattingIsConsistent() throws Exception {
+        CurrencyFormatService currencyFormatService = new CurrencyFormatService(new CaffeineCacheManager(), 2);
+        // Each thread formats its own values with formats shared through the pool and checks every result
+        formatConcurrently(currencyFormatService, 16, 2000);
+    }
+
+    @Test
+    void testMissingCacheIsRejected() {
+        // A cache manager with a fixed set of caches does not create the cache on demand
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager("other");
+        assertThrows(IllegalStateException.class, () -> new CurrencyFormatService(cacheManager, 4));
+    }
+
+    @Test
+    void testFormatWithFractionDigits() {
+        CurrencyFormatService currencyFormatService = new CurrencyFormatService(new CaffeineCacheManager(), 4);
+        assertEquals("¥1,576", currencyFormatService.format(new BigDecimal("1576"), Locale.US, "JPY", 0));
+        assertEquals("KWD1.235", currencyFormatService.format(new BigDecimal("1.235"), Locale.US, "KWD", 3));
+        assertEquals("€1.00", currencyFormatService.format(BigDecimal.ONE, Locale.US, "EUR"));
+    }
+
+    /*
+     * Formats distinct values on the given number of threads at once and checks that each result is the value
+     * formatted on its own
+     */
+    private static void formatConcurrently(CurrencyFormatService currencyFormatService, int threads, int rounds)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        try (ExecutorService executorService = Executors.newFixedThreadPool(threads)) {
+            for (int thread = 0; thread < threads; thread++) {
+                int offset = thread;
+                futures.add(executorService.submit(() -> {
+                    start.await();
+                    for (int round = 0; round < rounds; round++) {
+                        BigDecimal value = BigDecimal.valueOf(round * 1000L + offset, 2);
+                        assertEquals("€" + String.format(Locale.US, "%,.2f", value),
+                                currencyFormatService.format(value, Locale.US, "EUR", 2));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+}
@@ -1,9 +1,11 @@
 package mhjohans.currency_api.services;
 
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,24 +15,35 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import mhjohans.currency_api.dtos.CurrencyDTO;
 import mhjohans.currency_api.dtos.CurrencyRateDTO;
 import mhjohans.currency_api.exceptions.ExternalApiException;
 
-@SpringBootTest(properties = {"CURRENCY_API_KEY=d4e5f6a7-b8c9-4d0e-8f1a-2b3c4d5e6f7a"})
+@SpringBootTest(properties = {"CURRENCY_API_KEY=d4e5f6a7-b8c9-4d0e-8f1a-2b3c4d5e6f7a",
+        "currency-rates-api.providers.enabled=swop"})
 class CurrencyRateServiceTest {
 
     @Autowired
     private CurrencyRateService currencyRateService;
 
-    @MockBean(answer = Answers.RETURNS_DEEP_STUBS)
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean(name = "swopRestClient", answer = Answers.RETURNS_DEEP_STUBS)
     private RestClient restClient;
 
+    // Only called in the reactive web stack
+    @MockBean(name = "swopWebClient")
+    private WebClient webClient;
+
+    // Keep the scheduled refresh on startup from calling the REST client while it is being stubbed
+    @MockBean
+    private RateSnapshotService rateSnapshotService;
+
     @BeforeEach
     void setUp() {
-        // Empty the caches
-        currencyRateService.evictCurrencyRatesCache();
-        currencyRateService.evictSupportedCurrenciesCache();
         // Mock the supported currencies to include USD and EUR
         Set<CurrencyDTO> supportedCurrencies =
                 Set.of(new CurrencyDTO("USD", "12345", 2, "US Dollar", true),
@@ -38,29 +51,39 @@ class CurrencyRateServiceTest {
         when(restClient.get().uri("/currencies").retrieve()
                 .body(new ParameterizedTypeReference<Set<CurrencyDTO>>() {}))
                         .thenReturn(supportedCurrencies);
-        // Mock the currency rate from USD to EUR
-        CurrencyRateDTO currencyRate = new CurrencyRateDTO("USD", "EUR", 0.85, LocalDate.now());
-        when(restClient.get().uri("/rates/{from}/{to}", "USD", "EUR").retrieve()
-                .body(CurrencyRateDTO.class)).thenReturn(currencyRate);
+        // Mock the currency rates against USD to include the rate from USD to EUR
+        List<CurrencyRateDTO> currencyRates =
+                List.of(new CurrencyRateDTO("USD", "EUR", 0.85, LocalDate.now()));
+        when(restClient.get().uri("/rates").retrieve()
+                .body(new ParameterizedTypeReference<List<CurrencyRateDTO>>() {}))
+                        .thenReturn(currencyRates);
+    }
+
+    @Test
+    void testSupportedCurrencies() throws ExternalApiException {
+        SupportedCurrencies supportedCurrencies = currencyRateService.getSupportedCurrencies();
+        assertEquals(2, supportedCurrencies.size());
+        assertTrue(supportedCurrencies.contains(CurrencyCodes.pack("USD")));
+        assertFalse(supportedCurrencies.contains(CurrencyCodes.pack("GBP")));
     }
 
     @Test
-    void testSupportedCurrenciesCache() throws ExternalApiException {
-        // Call the method 3 times and verify that it only calls the API once
-        for (int i = 0; i < 3; i++) {
-            currencyRateService.getSupportedCurrencies();
-        }
-        verify(restClient.get().uri("/currencies").retrieve(), times(1))
-                .body(new ParameterizedTypeReference<Set<CurrencyDTO>>() {});
+    void testRateMatrix() throws ExternalApiException {
+        RateMatrix rateMatrix = currencyRateService.getRateMatrix();
+        // The base currency is included in the matrix alongside the quote currencies
+        assertEquals(2, rateMatrix.size());
+        assertEquals(0.85, rateMatrix.getRate(rateMatrix.ordinal("USD"), rateMatrix.ordinal("EUR")));
+        assertEquals(-1, rateMatrix.ordinal("GBP"));
     }
 
     @Test
-    void testCurrencyRateCache() throws ExternalApiException {
-        for (int i = 0; i < 3; i++) {
-            currencyRateService.getCurrencyRate("USD", "EUR");
-        }
-        verify(restClient.get().uri("/rates/{from}/{to}", "USD", "EUR").retrieve(), times(1))
-                .body(CurrencyRateDTO.class);
+    void testResilienceMetrics() throws ExternalApiException {
+        currencyRateService.getRateMatrix();
+        // The circuit breaker and retry states are published to the meter registry
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", "currencyRateServiceCircuitBreaker").tag("state", "closed").gauge().value());
+        assertFalse(meterRegistry.get("resilience4j.retry.calls").tag("name", "currencyRateRetry").functionCounters()
+                .isEmpty());
     }
 
 }
@@ -0,0 +1,77 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import mhjohans.currency_api.services.RateSnapshotBus.VersionedRateSnapshot;
+
+class FileRateSnapshotBusTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testPublishedSnapshotIsPolledByFollower() throws IOException {
+        FileRateSnapshotBus leader = new FileRateSnapshotBus(directory, Duration.ofMinutes(2));
+        FileRateSnapshotBus follower = new FileRateSnapshotBus(directory, Duration.ofMinutes(2));
+        List<VersionedRateSnapshot> received = new ArrayList<>();
+        follower.subscribe(received::add);
+        assertTrue(leader.acquireLeadership());
+        assertFalse(follower.acquireLeadership());
+        assertTrue(follower.getLatest().isEmpty());
+        assertTrue(leader.publish(RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now())));
+        assertTrue(leader.publish(RateMatrix.of("USD", Map.of("EUR", 0.9), LocalDate.now(), Instant.now())));
+        follower.poll();
+        follower.poll();
+        // Only the latest version is delivered, once
+        assertEquals(1, received.size());
+        VersionedRateSnapshot snapshot = received.get(0);
+        assertEquals(2, snapshot.version());
+        assertEquals(leader.getReplicaId(), snapshot.publisher());
+        RateMatrix rateMatrix = snapshot.rateMatrix();
+        assertEquals(0.9, rateMatrix.getRate(rateMatrix.ordinal("USD"), rateMatrix.ordinal("EUR")));
+    }
+
+    @Test
+    void testFollowerTakesOverExpiredLease() throws IOException, InterruptedException {
+        FileRateSnapshotBus first = new FileRateSnapshotBus(directory, Duration.ofMillis(50));
+        FileRateSnapshotBus second = new FileRateSnapshotBus(directory, Duration.ofMillis(50));
+        assertTrue(first.acquireLeadership());
+        assertFalse(second.acquireLeadership());
+        Thread.sleep(100);
+        assertTrue(second.acquireLeadership());
+        assertFalse(first.publish(RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now())));
+    }
+
+    @Test
+    void testCorruptSnapshotIsIgnored() throws IOException {
+        FileRateSnapshotBus leader = new FileRateSnapshotBus(directory, Duration.ofMinutes(2));
+        FileRateSnapshotBus follower = new FileRateSnapshotBus(directory, Duration.ofMinutes(2));
+        List<VersionedRateSnapshot> received = new ArrayList<>();
+        follower.subscribe(received::add);
+        assertTrue(leader.acquireLeadership());
+        assertTrue(leader.publish(RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now())));
+        // Overwrite the number of quotes after the header, base currency, date and timestamp with a negative count
+        try (FileChannel channel = FileChannel.open(directory.resolve("rate-snapshot.bin"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, -1), 3 * Long.BYTES + 26);
+        }
+        assertTrue(follower.getLatest().isEmpty());
+        follower.poll();
+        assertTrue(received.isEmpty());
+    }
+
+}
@@ -0,0 +1,143 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.services.FixedPointConverter.Amount;
+
+class FixedPointConverterTest {
+
+    @ParameterizedTest
+    @CsvSource({"100, 100, 0", "1234.56, 123456, 2", "' -0.05 ', -5, 2", "+7., 7, 0", ".5, 5, 1",
+            "0.000000000000000001, 1, 18", "999999999999999999, 999999999999999999, 0", "1e3, 1000, 0",
+            "1.5E-2, 15, 3", "1.0000000000000000000, 1, 0"})
+    void testParse(String value, long unscaled, int scale) throws InvalidRequestException {
+        assertEquals(new Amount(unscaled, scale), FixedPointConverter.parse(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "-", ".", "1,5", "1.2.3", "abc", "NaN", "Infinity", "0x10"})
+    void testParseInvalid(String value) {
+        InvalidRequestException exception =
+                assertThrows(InvalidRequestException.class, () -> FixedPointConverter.parse(value));
+        assertEquals("Invalid value: " + value.trim(), exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1234567890123456789", "0.1234567890123456789", "1e18"})
+    void testParseTooManyDigits(String value) {
+        assertThrows(InvalidRequestException.class, () -> FixedPointConverter.parse(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"1e99999999", "-1E+2147483647", "1e-99999999", "-1.5E-999999999"})
+    void testParseHugeExponent(String value) {
+        InvalidRequestException exception = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                () -> assertThrows(InvalidRequestException.class, () -> FixedPointConverter.parse(value)));
+        assertEquals("Value must have at most " + FixedPointConverter.MAX_DIGITS
+                + " significant and decimal digits: " + value, exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0e99999999", "0e-99999999", "0.0000000000000000000"})
+    void testParseZeroWithExponent(String value) throws InvalidRequestException {
+        assertEquals(new Amount(0, 0), FixedPointConverter.parse(value));
+    }
+
+    @Test
+    void testParseNull() {
+        InvalidRequestException exception =
+                assertThrows(InvalidRequestException.class, () -> FixedPointConverter.parse(null));
+        assertEquals("Value cannot be null", exception.getMessage());
+    }
+
+    @Test
+    void testDecimalRateRecoversQuotes() {
+        assertEquals(new BigDecimal("0.85"), FixedPointConverter.toDecimalRate(0.85).stripTrailingZeros());
+        assertEquals(new BigDecimal("150.125"), FixedPointConverter.toDecimalRate(150.125).stripTrailingZeros());
+        assertEquals(new BigDecimal("1.08912345678901"),
+                FixedPointConverter.toDecimalRate(1.08912345678901).stripTrailingZeros());
+        assertEquals(new BigDecimal("1"), FixedPointConverter.toDecimalRate(1.0).stripTrailingZeros());
+        assertEquals(new BigDecimal("1E+3"), FixedPointConverter.toDecimalRate(1000.0).stripTrailingZeros());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"UP, 0.13, -0.13", "DOWN, 0.12, -0.12", "CEILING, 0.13, -0.12", "FLOOR, 0.12, -0.13",
+            "HALF_UP, 0.13, -0.13", "HALF_DOWN, 0.12, -0.12", "HALF_EVEN, 0.12, -0.12"})
+    void testRoundingModes(RoundingMode roundingMode, String positive, String negative)
+            throws InvalidRequestException {
+        assertEquals(new BigDecimal(positive),
+                FixedPointConverter.convert(FixedPointConverter.parse("0.25"), 0.5, 2, roundingMode));
+        assertEquals(new BigDecimal(negative),
+                FixedPointConverter.convert(FixedPointConverter.parse("-0.25"), 0.5, 2, roundingMode));
+    }
+
+    @Test
+    void testRoundingUnnecessary() throws InvalidRequestException {
+        assertEquals(new BigDecimal("0.50"), FixedPointConverter.convert(FixedPointConverter.parse("1"), 0.5, 2,
+                RoundingMode.UNNECESSARY));
+        Amount amount = FixedPointConverter.parse("0.25");
+        assertThrows(ArithmeticException.class,
+                () -> FixedPointConverter.convert(amount, 0.5, 2, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    void testConvertToTargetScale() throws InvalidRequestException {
+        Amount amount = FixedPointConverter.parse("10.5");
+        assertEquals(new BigDecimal("1576"),
+                FixedPointConverter.convert(amount, 150.125, 0, RoundingMode.HALF_EVEN));
+        assertEquals(new BigDecimal("1576.312"),
+                FixedPointConverter.convert(amount, 150.125, 3, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    void testConvertOverflow() throws InvalidRequestException {
+        // The product does not fit in a long, so the amount is converted with BigDecimal instead
+        Amount amount = FixedPointConverter.parse("999999999999999999");
+        assertEquals(FixedPointConverter.NOT_REPRESENTABLE, FixedPointConverter.multiply(amount.unscaled(),
+                amount.scale(), 1000.5, 2, RoundingMode.HALF_EVEN));
+        assertEquals(new BigDecimal("1000499999999999998999.50"),
+                FixedPointConverter.convert(amount, 1000.5, 2, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    void testConvertOutsideRateRange() throws InvalidRequestException {
+        Amount amount = FixedPointConverter.parse("2");
+        assertEquals(new BigDecimal("0.00"),
+                FixedPointConverter.convert(amount, 1e-30, 2, RoundingMode.HALF_EVEN));
+        assertEquals(new BigDecimal("2000000000000000.00"),
+                FixedPointConverter.convert(amount, 1e15, 2, RoundingMode.HALF_EVEN));
+    }
+
+    @Test
+    void testConvertMatchesBigDecimal() {
+        Random random = new Random(42);
+        RoundingMode[] roundingModes = {RoundingMode.UP, RoundingMode.DOWN, RoundingMode.CEILING,
+                RoundingMode.FLOOR, RoundingMode.HALF_UP, RoundingMode.HALF_DOWN, RoundingMode.HALF_EVEN};
+        for (int i = 0; i < 100_000; i++) {
+            int scale = random.nextInt(FixedPointConverter.MAX_DIGITS + 1);
+            int digits = 1 + random.nextInt(FixedPointConverter.MAX_DIGITS);
+            long unscaled = random.nextLong() % (long) Math.pow(10, digits);
+            // Decimal quotes with few digits hit the halfway cases of the rounding modes
+            double rate = random.nextBoolean() ? Math.pow(10, random.nextDouble(-6, 6))
+                    : BigDecimal.valueOf(random.nextInt(1, 100_000), random.nextInt(6)).doubleValue();
+            int targetScale = random.nextInt(4);
+            RoundingMode roundingMode = roundingModes[random.nextInt(roundingModes.length)];
+            Amount amount = new Amount(unscaled, scale);
+            BigDecimal expected = amount.toBigDecimal().multiply(FixedPointConverter.toDecimalRate(rate))
+                    .setScale(targetScale, roundingMode);
+            assertEquals(expected, FixedPointConverter.convert(amount, rate, targetScale, roundingMode),
+                    () -> amount + " * " + rate + " to scale " + targetScale + " " + roundingMode);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+
+class HistoricalRateServiceTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 31);
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    @TempDir
+    private Path directory;
+
+    private HistoricalRateService historicalRateService;
+
+    @BeforeEach
+    void setUp() throws IOException, ExternalApiException {
+        MockitoAnnotations.openMocks(this);
+        HistoricalRateStore historicalRateStore =
+                new HistoricalRateStore(directory, "2024-01-01", 366);
+        historicalRateStore.open();
+        historicalRateService = new HistoricalRateService(historicalRateStore, currencyRateService, 31);
+        when(currencyRateService.getRateMatrix(any(LocalDate.class))).thenAnswer(invocation -> RateMatrix
+                .of("USD", Map.of("EUR", 0.9, "GBP", 0.75), invocation.getArgument(0), Instant.now()));
+    }
+
+    @Test
+    void testRatesOfDateAreLoadedOnce() throws InvalidRequestException, InvalidCurrencyException,
+            ExternalApiException {
+        // Call the method 3 times and verify that it only calls the API once
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0.75 / 0.9, historicalRateService.getRate(CurrencyCodes.pack("EUR"),
+                    CurrencyCodes.pack("GBP"), DATE), 1e-12);
+        }
+        verify(currencyRateService, times(1)).getRateMatrix(DATE);
+    }
+
+    @Test
+    void testRateOfUnavailableCurrency() {
+        InvalidCurrencyException exception = assertThrows(InvalidCurrencyException.class,
+                () -> historicalRateService.getRate(CurrencyCodes.pack("USD"),
+                        CurrencyCodes.pack("SEK"), DATE));
+        assertEquals("Currency rate not available on 2024-01-31: SEK", exception.getMessage());
+    }
+
+    @Test
+    void testRateOfInvalidDate() throws ExternalApiException {
+        int key = CurrencyCodes.pack("USD");
+        assertThrows(InvalidRequestException.class,
+                () -> historicalRateService.getRate(key, key, LocalDate.now()));
+        assertThrows(InvalidRequestException.class,
+                () -> historicalRateService.getRate(key, key, LocalDate.of(2023, 12, 31)));
+        verify(currencyRateService, never()).getRateMatrix(any(LocalDate.class));
+    }
+
+    @Test
+    void testBackfillSkipsStoredDates() throws InvalidRequestException, InvalidCurrencyException,
+            ExternalApiException {
+        int key = CurrencyCodes.pack("USD");
+        historicalRateService.getRate(key, key, DATE);
+        HistoricalRateService.BackfillResult result =
+                historicalRateService.backfill(DATE.minusDays(2), DATE);
+        assertEquals(new HistoricalRateService.BackfillResult(2, 1), result);
+        verify(currencyRateService, times(3)).getRateMatrix(any(LocalDate.class));
+        assertThrows(InvalidRequestException.class,
+                () -> historicalRateService.backfill(DATE, DATE.minusDays(1)));
+        assertThrows(InvalidRequestException.class,
+                () -> historicalRateService.backfill(DATE.minusDays(31), DATE));
+    }
+
+}
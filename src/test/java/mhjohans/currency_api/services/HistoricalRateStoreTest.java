@@ -0,0 +1,117 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoricalRateStoreTest {
+
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 31);
+
+    @TempDir
+    private Path directory;
+
+    private HistoricalRateStore historicalRateStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        historicalRateStore = createStore();
+    }
+
+    @Test
+    void testQuotesAreStoredByDate() {
+        historicalRateStore.put(DATE, RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now()));
+        historicalRateStore.put(DATE.plusDays(1),
+                RateMatrix.of("USD", Map.of("EUR", 0.8, "GBP", 0.75), DATE, Instant.now()));
+        assertTrue(historicalRateStore.contains(DATE));
+        assertFalse(historicalRateStore.contains(DATE.minusDays(1)));
+        assertEquals(1.0, historicalRateStore.getQuote(CurrencyCodes.pack("USD"), DATE));
+        assertEquals(0.9, historicalRateStore.getQuote(CurrencyCodes.pack("EUR"), DATE));
+        assertEquals(0.8, historicalRateStore.getQuote(CurrencyCodes.pack("EUR"), DATE.plusDays(1)));
+        // Currencies without a quote on the date read as zero
+        assertEquals(0.0, historicalRateStore.getQuote(CurrencyCodes.pack("GBP"), DATE));
+        assertEquals(0.0, historicalRateStore.getQuote(CurrencyCodes.pack("SEK"), DATE));
+    }
+
+    @Test
+    void testQuotesArePersistedAcrossRestarts() throws IOException {
+        historicalRateStore.put(DATE, RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now()));
+        historicalRateStore.flush();
+        HistoricalRateStore reopened = createStore();
+        assertEquals("USD", reopened.getBaseCurrency());
+        assertTrue(reopened.contains(DATE));
+        assertEquals(0.9, reopened.getQuote(CurrencyCodes.pack("EUR"), DATE));
+    }
+
+    @Test
+    void testChangedLayoutIsRejected() throws IOException {
+        historicalRateStore.put(DATE, RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now()));
+        historicalRateStore.flush();
+        // The stored quotes would be read from the wrong dates with another start date
+        HistoricalRateStore shifted = new HistoricalRateStore(directory, "2024-01-02", 366);
+        assertThrows(IllegalStateException.class, shifted::open);
+        HistoricalRateStore resized = new HistoricalRateStore(directory, "2024-01-01", 365);
+        assertThrows(IllegalStateException.class, resized::open);
+    }
+
+    @Test
+    void testQuotesAgainstOtherBaseAreConverted() {
+        historicalRateStore.put(DATE, RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now()));
+        historicalRateStore.put(DATE.plusDays(1),
+                RateMatrix.of("EUR", Map.of("USD", 1.25, "GBP", 0.75), DATE, Instant.now()));
+        assertEquals("USD", historicalRateStore.getBaseCurrency());
+        assertEquals(1.0, historicalRateStore.getQuote(CurrencyCodes.pack("USD"), DATE.plusDays(1)));
+        assertEquals(0.8, historicalRateStore.getQuote(CurrencyCodes.pack("EUR"), DATE.plusDays(1)));
+        assertEquals(0.6, historicalRateStore.getQuote(CurrencyCodes.pack("GBP"), DATE.plusDays(1)));
+    }
+
+    @Test
+    void testInvalidQuotesAreRejected() {
+        historicalRateStore.put(DATE, RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now()));
+        RateMatrix withoutBase = RateMatrix.of("EUR", Map.of("GBP", 0.75), DATE, Instant.now());
+        assertThrows(IllegalArgumentException.class, () -> historicalRateStore.put(DATE, withoutBase));
+        RateMatrix outOfRange = RateMatrix.of("USD", Map.of("EUR", 0.9), DATE, Instant.now());
+        assertThrows(IllegalArgumentException.class,
+                () -> historicalRateStore.put(LocalDate.of(2023, 12, 31), outOfRange));
+        assertFalse(historicalRateStore.isInRange(LocalDate.of(2025, 1, 1)));
+    }
+
+    @Test
+    void testStoredDatesHaveAllQuotesForConcurrentReaders() throws Exception {
+        // Read each date without the lock of the writer while it is being stored
+        Thread writer = new Thread(() -> {
+            for (int day = 0; day < 366; day++) {
+                historicalRateStore.put(LocalDate.of(2024, 1, 1).plusDays(day),
+                        RateMatrix.of("USD", Map.of("EUR", 0.9, "GBP", 0.75), DATE, Instant.now()));
+            }
+        });
+        writer.start();
+        int eur = CurrencyCodes.pack("EUR");
+        int gbp = CurrencyCodes.pack("GBP");
+        for (int day = 0; day < 366; day++) {
+            LocalDate date = LocalDate.of(2024, 1, 1).plusDays(day);
+            while (!historicalRateStore.contains(date)) {
+                Thread.onSpinWait();
+            }
+            assertEquals(0.9, historicalRateStore.getQuote(eur, date));
+            assertEquals(0.75, historicalRateStore.getQuote(gbp, date));
+        }
+        writer.join();
+    }
+
+    private HistoricalRateStore createStore() throws IOException {
+        HistoricalRateStore store = new HistoricalRateStore(directory, "2024-01-01", 366);
+        store.open();
+        return store;
+    }
+
+}
@@ -0,0 +1,97 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+class LocalRateSnapshotBusTest {
+
+    private final LocalRateSnapshotBus.Hub hub = new LocalRateSnapshotBus.Hub();
+
+    private final List<CurrencyRateService> currencyRateServices = new ArrayList<>();
+
+    @Test
+    void testUpstreamCallsStayConstantAsReplicasScale() throws ExternalApiException, StaleCurrencyRateException {
+        for (int replicas : new int[] {1, 4, 16}) {
+            currencyRateServices.clear();
+            LocalRateSnapshotBus.Hub scaledHub = new LocalRateSnapshotBus.Hub();
+            List<RateSnapshotService> rateSnapshotServices = new ArrayList<>();
+            for (int i = 0; i < replicas; i++) {
+                rateSnapshotServices.add(createReplica(scaledHub, Duration.ofMinutes(2)));
+            }
+            // Three refresh rounds followed by requests on every replica
+            for (int round = 0; round < 3; round++) {
+                rateSnapshotServices.forEach(RateSnapshotService::refresh);
+            }
+            RateMatrix leaderSnapshot = rateSnapshotServices.get(0).getSnapshot();
+            for (RateSnapshotService rateSnapshotService : rateSnapshotServices) {
+                assertSame(leaderSnapshot, rateSnapshotService.getSnapshot());
+            }
+            assertEquals(3, countUpstreamCalls());
+        }
+    }
+
+    @Test
+    void testPublishedSnapshotIsPushedToFollowers() throws ExternalApiException, StaleCurrencyRateException {
+        RateSnapshotService leader = createReplica(hub, Duration.ofMinutes(2));
+        RateSnapshotService follower = createReplica(hub, Duration.ofMinutes(2));
+        leader.refresh();
+        // The follower received the snapshot without refreshing or calling the external API
+        assertSame(leader.getLoadedSnapshot(), follower.getLoadedSnapshot());
+        assertSame(leader.getSnapshot(), follower.getSnapshot());
+        assertEquals(1, countUpstreamCalls());
+    }
+
+    @Test
+    void testFollowerTakesOverExpiredLease() throws InterruptedException {
+        LocalRateSnapshotBus first = new LocalRateSnapshotBus(hub, Duration.ofMillis(50));
+        LocalRateSnapshotBus second = new LocalRateSnapshotBus(hub, Duration.ofMillis(50));
+        assertTrue(first.acquireLeadership());
+        assertFalse(second.acquireLeadership());
+        Thread.sleep(100);
+        // The first replica stopped renewing its lease, so its late publish is rejected after the takeover
+        assertTrue(second.acquireLeadership());
+        assertFalse(first.publish(createRateMatrix()));
+        assertTrue(second.publish(createRateMatrix()));
+        assertEquals(1, second.getLatest().orElseThrow().version());
+        assertEquals(second.getReplicaId(), second.getLatest().orElseThrow().publisher());
+    }
+
+    private RateSnapshotService createReplica(LocalRateSnapshotBus.Hub hub, Duration leaseDuration)
+            throws ExternalApiException {
+        CurrencyRateService currencyRateService = mock(CurrencyRateService.class);
+        when(currencyRateService.getRateMatrix()).thenAnswer(invocation -> createRateMatrix());
+        currencyRateServices.add(currencyRateService);
+        RateSnapshotService rateSnapshotService = new RateSnapshotService(currencyRateService,
+                new SyncTaskExecutor(), Duration.ofMinutes(2), Duration.ofHours(1), new SimpleMeterRegistry(),
+                Optional.of(new LocalRateSnapshotBus(hub, leaseDuration)));
+        rateSnapshotService.subscribe();
+        return rateSnapshotService;
+    }
+
+    private int countUpstreamCalls() {
+        return currencyRateServices.stream().mapToInt(service -> mockingDetails(service).getInvocations().size())
+                .sum();
+    }
+
+    private static RateMatrix createRateMatrix() {
+        return RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now());
+    }
+
+}
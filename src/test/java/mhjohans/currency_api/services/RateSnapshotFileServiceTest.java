@@ -0,0 +1,120 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.task.SyncTaskExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+class RateSnapshotFileServiceTest {
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    @TempDir
+    private Path directory;
+
+    private Path path;
+
+    private RateMatrix rateMatrix;
+
+    private SupportedCurrencies supportedCurrencies;
+
+    @BeforeEach
+    void setUp() throws ExternalApiException {
+        MockitoAnnotations.openMocks(this);
+        path = directory.resolve("snapshot").resolve("rate-snapshot.bin");
+        // The file stores timestamps in milliseconds
+        rateMatrix = RateMatrix.of("USD", Map.of("EUR", 0.85, "GBP", 0.75), LocalDate.now(),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        supportedCurrencies = SupportedCurrencies.of(Set.of("USD", "EUR", "GBP", "JPY"));
+        when(currencyRateService.getRateMatrix()).thenReturn(rateMatrix);
+        when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies);
+    }
+
+    @Test
+    void testSnapshotIsRestoredOnStartup()
+            throws ExternalApiException, StaleCurrencyRateException {
+        // Load and write the snapshot before a restart
+        Services before = createServices();
+        before.rateSnapshotService().refresh();
+        before.supportedCurrenciesService().getSupportedCurrencies();
+        before.rateSnapshotFileService().write();
+        assertTrue(Files.exists(path));
+        // Restore the snapshot after the restart without calling the external API
+        MockitoAnnotations.openMocks(this);
+        Services after = createServices();
+        after.rateSnapshotFileService().restore();
+        RateMatrix restored = after.rateSnapshotService().getSnapshot();
+        assertEquals(rateMatrix.toString(), restored.toString());
+        assertEquals(0.85 / 0.75, restored.getRate(restored.ordinal("GBP"), restored.ordinal("EUR")));
+        SupportedCurrencies restoredCurrencies =
+                after.supportedCurrenciesService().getSupportedCurrencies();
+        assertEquals(4, restoredCurrencies.size());
+        assertTrue(restoredCurrencies.contains(CurrencyCodes.pack("GBP")));
+        assertEquals(0, restoredCurrencies.getDecimalDigits(CurrencyCodes.pack("JPY")));
+        verifyNoInteractions(currencyRateService);
+    }
+
+    @Test
+    void testSnapshotExceedingMaxAgeIsNotRestored()
+            throws IOException, ExternalApiException, StaleCurrencyRateException {
+        RateMatrix old = RateMatrix.of("USD", Map.of("EUR", 0.8), LocalDate.now(),
+                Instant.now().minus(Duration.ofHours(2)));
+        Services services = createServices();
+        services.rateSnapshotFileService()
+                .write(new RateSnapshotFileService.Snapshot(old, null));
+        services.rateSnapshotFileService().restore();
+        assertNull(services.rateSnapshotService().getLoadedSnapshot());
+        // The snapshot is loaded from the external API instead
+        services.rateSnapshotService().getSnapshot();
+        verify(currencyRateService).getRateMatrix();
+    }
+
+    @Test
+    void testCorruptSnapshotIsIgnored() throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[] {0x43, 0x52, 0x41});
+        Services services = createServices();
+        services.rateSnapshotFileService().restore();
+        assertNull(services.rateSnapshotService().getLoadedSnapshot());
+        assertNull(services.supportedCurrenciesService().getLoaded());
+    }
+
+    private record Services(RateSnapshotService rateSnapshotService,
+            SupportedCurrenciesService supportedCurrenciesService,
+            RateSnapshotFileService rateSnapshotFileService) {
+    }
+
+    private Services createServices() {
+        RateSnapshotService rateSnapshotService =
+                new RateSnapshotService(currencyRateService, new SyncTaskExecutor(),
+                        Duration.ofMinutes(2), Duration.ofHours(1), new SimpleMeterRegistry(), Optional.empty());
+        SupportedCurrenciesService supportedCurrenciesService = new SupportedCurrenciesService(
+                currencyRateService, new SyncTaskExecutor(), Duration.ofDays(1), new SimpleMeterRegistry());
+        return new Services(rateSnapshotService, supportedCurrenciesService,
+                new RateSnapshotFileService(rateSnapshotService, supportedCurrenciesService, path,
+                        Duration.ofHours(1)));
+    }
+
+}
@@ -0,0 +1,156 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.web.client.RestClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+class RateSnapshotServiceTest {
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RateSnapshotService rateSnapshotService;
+
+    private RateMatrix rateMatrix;
+
+    @BeforeEach
+    void setUp() throws ExternalApiException {
+        MockitoAnnotations.openMocks(this);
+        // Run background revalidations synchronously on the calling thread
+        rateSnapshotService = new RateSnapshotService(currencyRateService, new SyncTaskExecutor(),
+                Duration.ofMinutes(2), Duration.ofHours(1), meterRegistry, Optional.empty());
+        rateMatrix = createRateMatrix(Instant.now());
+        when(currencyRateService.getRateMatrix()).thenReturn(rateMatrix);
+    }
+
+    @Test
+    void testSnapshotIsLoadedOnce() throws ExternalApiException, StaleCurrencyRateException {
+        // Call the method 3 times and verify that it only calls the API once
+        for (int i = 0; i < 3; i++) {
+            assertSame(rateMatrix, rateSnapshotService.getSnapshot());
+        }
+        verify(currencyRateService, times(1)).getRateMatrix();
+    }
+
+    @Test
+    void testRefreshSwapsSnapshot() throws ExternalApiException, StaleCurrencyRateException {
+        rateSnapshotService.refresh();
+        RateMatrix next = createRateMatrix(Instant.now());
+        when(currencyRateService.getRateMatrix()).thenReturn(next);
+        rateSnapshotService.refresh();
+        assertSame(next, rateSnapshotService.getSnapshot());
+    }
+
+    @Test
+    void testListenersAreNotifiedOfSwappedSnapshots() throws ExternalApiException {
+        List<RateMatrix> notified = new ArrayList<>();
+        rateSnapshotService.addListener(notified::add);
+        rateSnapshotService.addListener(next -> {
+            throw new IllegalStateException("Failing listener");
+        });
+        rateSnapshotService.refresh();
+        // The same snapshot is not swapped in again
+        rateSnapshotService.refresh();
+        RateMatrix next = createRateMatrix(Instant.now());
+        when(currencyRateService.getRateMatrix()).thenReturn(next);
+        rateSnapshotService.refresh();
+        assertEquals(List.of(rateMatrix, next), notified);
+    }
+
+    @Test
+    void testRefreshKeepsNewerAcceptedSnapshot() throws ExternalApiException, StaleCurrencyRateException {
+        List<RateMatrix> notified = new ArrayList<>();
+        rateSnapshotService.addListener(notified::add);
+        // A snapshot published by the leader is accepted before the refresh fetches an older one
+        RateMatrix newer = createRateMatrix(rateMatrix.getTimestamp().plusSeconds(1));
+        rateSnapshotService.accept(new RateSnapshotBus.VersionedRateSnapshot(1, "leader", newer));
+        rateSnapshotService.refresh();
+        assertSame(newer, rateSnapshotService.getSnapshot());
+        assertEquals(List.of(newer), notified);
+    }
+
+    @Test
+    void testFailedRefreshKeepsLastSnapshot()
+            throws ExternalApiException, StaleCurrencyRateException {
+        rateSnapshotService.refresh();
+        when(currencyRateService.getRateMatrix()).thenThrow(new RestClientException("N/A"));
+        rateSnapshotService.refresh();
+        assertSame(rateMatrix, rateSnapshotService.getSnapshot());
+    }
+
+    @Test
+    void testStaleSnapshotIsServedWhileRevalidating()
+            throws ExternalApiException, StaleCurrencyRateException {
+        RateMatrix stale = createRateMatrix(Instant.now().minus(Duration.ofMinutes(5)));
+        when(currencyRateService.getRateMatrix()).thenReturn(stale, rateMatrix);
+        rateSnapshotService.refresh();
+        // The stale snapshot is returned and the revalidation swaps in the fresh one
+        assertSame(stale, rateSnapshotService.getSnapshot());
+        assertSame(rateMatrix, rateSnapshotService.getSnapshot());
+    }
+
+    @Test
+    void testStaleSnapshotIsServedOnError() throws ExternalApiException, StaleCurrencyRateException {
+        RateMatrix stale = createRateMatrix(Instant.now().minus(Duration.ofMinutes(5)));
+        when(currencyRateService.getRateMatrix()).thenReturn(stale)
+                .thenThrow(new RestClientException("N/A"));
+        rateSnapshotService.refresh();
+        assertSame(stale, rateSnapshotService.getSnapshot());
+        assertSame(stale, rateSnapshotService.getSnapshot());
+    }
+
+    @Test
+    void testSnapshotExceedingMaxStalenessIsNotServedOnError() throws ExternalApiException {
+        RateMatrix expired = createRateMatrix(Instant.now().minus(Duration.ofHours(2)));
+        when(currencyRateService.getRateMatrix()).thenReturn(expired)
+                .thenThrow(new RestClientException("N/A"));
+        rateSnapshotService.refresh();
+        assertThrows(StaleCurrencyRateException.class, rateSnapshotService::getSnapshot);
+    }
+
+    @Test
+    void testCacheMetrics() throws ExternalApiException, StaleCurrencyRateException {
+        rateSnapshotService.getSnapshot();
+        rateSnapshotService.getSnapshot();
+        assertEquals(1.0, getAccessCount("miss"));
+        assertEquals(1.0, getAccessCount("hit"));
+        assertEquals(1, meterRegistry.get("service.cache.load.timer").tag("cache", "currencyRates")
+                .tag("result", "success").timer().count());
+        assertEquals(2.0, meterRegistry.get("service.cache.entries.gauge").tag("cache", "currencyRates")
+                .gauge().value());
+        assertTrue(meterRegistry.get("service.cache.age.gauge").tag("cache", "currencyRates").gauge()
+                .value() < 60);
+    }
+
+    private double getAccessCount(String result) {
+        return meterRegistry.get("service.cache.access.counter").tag("cache", "currencyRates")
+                .tag("result", result).counter().count();
+    }
+
+    private static RateMatrix createRateMatrix(Instant timestamp) {
+        return RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), timestamp);
+    }
+
+}
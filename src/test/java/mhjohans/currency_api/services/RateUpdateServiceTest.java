@@ -0,0 +1,210 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.task.TaskExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.dtos.RateUpdateDTO;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.exceptions.InvalidCurrencyException;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+import mhjohans.currency_api.exceptions.OverloadedException;
+import mhjohans.currency_api.exceptions.StaleCurrencyRateException;
+
+class RateUpdateServiceTest {
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    @Mock
+    private SupportedCurrenciesService supportedCurrenciesService;
+
+    // Runs the tasks only when the test runs them, to check what the refresh thread leaves to the task executor
+    private final List<Runnable> tasks = Collections.synchronizedList(new ArrayList<>());
+
+    private final TaskExecutor taskExecutor = tasks::add;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<RateUpdateDTO> updates = Collections.synchronizedList(new ArrayList<>());
+
+    private RateSnapshotService rateSnapshotService;
+
+    private RateUpdateService rateUpdateService;
+
+    @BeforeEach
+    void setUp() throws ExternalApiException {
+        MockitoAnnotations.openMocks(this);
+        when(supportedCurrenciesService.getSupportedCurrencies())
+                .thenReturn(SupportedCurrencies.of(Set.of("USD", "EUR", "GBP")));
+        rateSnapshotService = new RateSnapshotService(currencyRateService, taskExecutor, Duration.ofMinutes(2),
+                Duration.ofHours(1), meterRegistry, Optional.empty());
+        rateUpdateService = new RateUpdateService(rateSnapshotService, supportedCurrenciesService, taskExecutor,
+                taskExecutor, 3, 2, meterRegistry);
+        rateUpdateService.listen();
+        refresh(0.85, 0.75);
+        runTasks();
+    }
+
+    @Test
+    void testSubscriptionReceivesCurrentRates() throws Exception {
+        rateUpdateService.subscribe(List.of("USD/EUR", "eur/gbp"), updates::add);
+        runTasks();
+        assertEquals(1, updates.size());
+        assertEquals(Map.of("USD/EUR", new BigDecimal("0.85"), "EUR/GBP", new BigDecimal("0.882352941176471")),
+                updates.get(0).rates());
+        assertEquals(LocalDate.of(2024, 1, 31), updates.get(0).date());
+    }
+
+    @Test
+    void testOnlyChangedRatesAreSent() throws Exception {
+        rateUpdateService.subscribe(List.of("USD/EUR", "USD/GBP"), updates::add);
+        runTasks();
+        refresh(0.9, 0.75);
+        // The refresh only schedules the dispatch and returns
+        assertEquals(1, updates.size());
+        runTasks();
+        assertEquals(2, updates.size());
+        assertEquals(Map.of("USD/EUR", new BigDecimal("0.9")), updates.get(1).rates());
+    }
+
+    @Test
+    void testUnchangedRatesAreNotSent() throws Exception {
+        rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+        runTasks();
+        refresh(0.85, 0.7);
+        runTasks();
+        assertEquals(1, updates.size());
+    }
+
+    @Test
+    void testRatesOfSlowSubscriberAreMerged() throws Exception {
+        rateUpdateService.subscribe(List.of("USD/EUR", "USD/GBP"), updates::add);
+        refresh(0.9, 0.75);
+        refresh(0.95, 0.75);
+        // Dispatch the refreshes before the first update has been sent, merging them into the pending update
+        assertEquals(2, tasks.size());
+        tasks.remove(1).run();
+        runTasks();
+        assertEquals(1, updates.size());
+        assertEquals(Map.of("USD/EUR", new BigDecimal("0.95"), "USD/GBP", new BigDecimal("0.75")),
+                updates.get(0).rates());
+    }
+
+    @Test
+    void testFailedSendCancelsSubscription() throws Exception {
+        RateUpdateService.Subscription subscription = rateUpdateService.subscribe(List.of("USD/EUR"), update -> {
+            throw new IOException("Broken pipe");
+        });
+        runTasks();
+        assertTrue(subscription.isCancelled());
+        assertEquals(0, rateUpdateService.getSubscriptionCount());
+    }
+
+    @Test
+    void testCancelledSubscriptionIsNotUpdated() throws Exception {
+        RateUpdateService.Subscription subscription =
+                rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+        runTasks();
+        subscription.cancel();
+        refresh(0.9, 0.75);
+        runTasks();
+        assertEquals(1, updates.size());
+        assertEquals(0, rateUpdateService.getSubscriptionCount());
+    }
+
+    @Test
+    void testInvalidPairsAreRejected() {
+        assertThrows(InvalidRequestException.class, () -> rateUpdateService.subscribe(List.of(), updates::add));
+        assertThrows(InvalidRequestException.class,
+                () -> rateUpdateService.subscribe(List.of("USD/EUR", "USD/GBP", "EUR/GBP", "EUR/USD"), updates::add));
+        InvalidRequestException exception = assertThrows(InvalidRequestException.class,
+                () -> rateUpdateService.subscribe(List.of("USDEUR"), updates::add));
+        assertEquals("Invalid currency pair: USDEUR", exception.getMessage());
+        InvalidCurrencyException currencyException = assertThrows(InvalidCurrencyException.class,
+                () -> rateUpdateService.subscribe(List.of("USD/JPY"), updates::add));
+        assertEquals("Currency code not supported: JPY", currencyException.getMessage());
+    }
+
+    @Test
+    void testSubscriptionsAreLimited() throws Exception {
+        rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+        rateUpdateService.subscribe(List.of("USD/GBP"), updates::add);
+        assertThrows(OverloadedException.class, () -> rateUpdateService.subscribe(List.of("USD/EUR"), updates::add));
+        assertEquals(2, meterRegistry.get("service.rate.updates.subscriptions.gauge").gauge().value());
+    }
+
+    @Test
+    void testConcurrentSubscriptionsAreLimited() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executorService.submit(() -> {
+                    start.await();
+                    try {
+                        rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+                        return true;
+                    } catch (OverloadedException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int subscribed = 0;
+            for (Future<Boolean> result : results) {
+                subscribed += result.get() ? 1 : 0;
+            }
+            assertEquals(2, subscribed);
+            assertEquals(2, rateUpdateService.getSubscriptionCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testCancelledSubscriptionReleasesSlot() throws Exception {
+        RateUpdateService.Subscription subscription =
+                rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+        rateUpdateService.subscribe(List.of("USD/GBP"), updates::add);
+        subscription.cancel();
+        subscription.cancel();
+        rateUpdateService.subscribe(List.of("USD/EUR"), updates::add);
+        assertThrows(OverloadedException.class, () -> rateUpdateService.subscribe(List.of("USD/EUR"), updates::add));
+    }
+
+    private void refresh(double eur, double gbp) throws ExternalApiException {
+        when(currencyRateService.getRateMatrix()).thenReturn(RateMatrix.of("USD", Map.of("EUR", eur, "GBP", gbp),
+                LocalDate.of(2024, 1, 31), Instant.now()));
+        rateSnapshotService.refresh();
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+}
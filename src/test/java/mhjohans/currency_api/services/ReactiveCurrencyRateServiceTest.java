@@ -0,0 +1,129 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.core.task.SyncTaskExecutor;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.RetryConfig;
+import io.github.resilience4j.retry.RetryRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.providers.RateProvider;
+import mhjohans.currency_api.services.providers.RateProviderRouter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class ReactiveCurrencyRateServiceTest {
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    @Mock
+    private RateProviderRouter rateProviderRouter;
+
+    @Mock
+    private RateProvider rateProvider;
+
+    private final AtomicInteger supportedCurrenciesCalls = new AtomicInteger();
+
+    private final AtomicInteger rateMatrixCalls = new AtomicInteger();
+
+    private SupportedCurrenciesService supportedCurrenciesService;
+
+    private ReactiveCurrencyRateService reactiveCurrencyRateService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Route each call to the single provider, which answers after a delay without blocking, so that concurrent
+        // subscribers arrive while the call is in flight
+        when(rateProviderRouter.callReactive(any()))
+                .thenAnswer(invocation -> ((Function<RateProvider, Mono<?>>) invocation.getArgument(0))
+                        .apply(rateProvider));
+        when(rateProvider.fetchSupportedCurrencies()).thenReturn(Mono.defer(() -> {
+            supportedCurrenciesCalls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).map(tick -> SupportedCurrencies.of(Set.of("USD", "EUR")));
+        }));
+        when(rateProvider.fetchRateMatrix()).thenReturn(Mono.defer(() -> {
+            rateMatrixCalls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(100)).map(
+                    tick -> RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.of(2024, 1, 1), Instant.now()));
+        }));
+        supportedCurrenciesService = new SupportedCurrenciesService(currencyRateService, new SyncTaskExecutor(),
+                Duration.ofDays(1), new SimpleMeterRegistry());
+        reactiveCurrencyRateService = createService();
+    }
+
+    @Test
+    void testSupportedCurrenciesLoadIsShared() {
+        // Subscribe 3 times concurrently and once afterwards, and verify that the providers are only called once
+        List<SupportedCurrencies> results =
+                Flux.range(0, 3).flatMap(i -> reactiveCurrencyRateService.getSupportedCurrencies())
+                        .collectList().block();
+        assertEquals(3, results.size());
+        assertEquals(2, results.get(0).size());
+        // The loaded list is kept by the supported currencies service
+        assertFalse(supportedCurrenciesService.isLoadRequired());
+        reactiveCurrencyRateService.getSupportedCurrencies().block();
+        assertEquals(1, supportedCurrenciesCalls.get());
+        verifyNoInteractions(currencyRateService);
+    }
+
+    @Test
+    void testRestoredSupportedCurrenciesAreUsed() {
+        SupportedCurrencies restored = SupportedCurrencies.of(Set.of("USD", "EUR", "GBP"));
+        supportedCurrenciesService.restore(restored, Instant.now());
+        assertSame(restored, reactiveCurrencyRateService.getSupportedCurrencies().block());
+        assertEquals(0, supportedCurrenciesCalls.get());
+    }
+
+    @Test
+    void testRateMatrixCoalescing() {
+        // Subscribe 10 times concurrently and verify that they share a single call
+        List<RateMatrix> results =
+                Flux.range(0, 10).flatMap(i -> reactiveCurrencyRateService.getRateMatrix())
+                        .collectList().block();
+        assertEquals(10, results.size());
+        assertEquals(1, rateMatrixCalls.get());
+        assertEquals(0.85, results.get(0).getRate(results.get(0).ordinal("USD"),
+                results.get(0).ordinal("EUR")));
+        // The result is not cached beyond the call in flight
+        reactiveCurrencyRateService.getRateMatrix().block();
+        assertEquals(2, rateMatrixCalls.get());
+    }
+
+    @Test
+    void testFailedCallIsRetried() {
+        RateMatrix rateMatrix = RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.of(2024, 1, 1), Instant.now());
+        when(rateProvider.fetchRateMatrix()).thenReturn(Mono.defer(() -> rateMatrixCalls.incrementAndGet() == 1
+                ? Mono.error(new ExternalApiException("Failed to retrieve currency rates", (Throwable) null))
+                : Mono.just(rateMatrix)));
+        reactiveCurrencyRateService = createService();
+        assertSame(rateMatrix, reactiveCurrencyRateService.getRateMatrix().block());
+        assertEquals(2, rateMatrixCalls.get());
+    }
+
+    private ReactiveCurrencyRateService createService() {
+        return new ReactiveCurrencyRateService(rateProviderRouter, supportedCurrenciesService,
+                CircuitBreakerRegistry.ofDefaults(), RetryRegistry.of(
+                        RetryConfig.custom().maxAttempts(2).waitDuration(Duration.ofMillis(10)).build()));
+    }
+
+}
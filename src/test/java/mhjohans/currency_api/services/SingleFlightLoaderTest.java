@@ -0,0 +1,122 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.InvalidRequestException;
+
+class SingleFlightLoaderTest {
+
+    private static final int CALLERS = 8;
+
+    private MeterRegistry meterRegistry;
+
+    private SingleFlightLoader<String> loader;
+
+    private ExecutorService executor;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final CountDownLatch loadStarted = new CountDownLatch(1);
+
+    private final CountDownLatch loadReleased = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loader = new SingleFlightLoader<>("test", meterRegistry);
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testConcurrentLoadsShareSingleLoad() throws Exception {
+        List<Future<String>> results = startConcurrentLoads(() -> loader.load(this::blockingLoad));
+        loadReleased.countDown();
+        for (Future<String> result : results) {
+            assertEquals("value", result.get());
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, getCount("loaded"));
+        assertEquals(CALLERS - 1, getCount("shared"));
+        assertFalse(loader.isLoading());
+    }
+
+    @Test
+    void testPreviousValueIsUsedWhileLoading() throws Exception {
+        List<Future<String>> results = startConcurrentLoads(
+                () -> loader.loadOrGetPrevious(this::blockingLoad, "previous"));
+        // All callers but the one loading get the previous value without waiting for the load
+        for (Future<String> result : results.subList(1, CALLERS)) {
+            assertEquals("previous", result.get());
+        }
+        loadReleased.countDown();
+        assertEquals("value", results.get(0).get());
+        assertEquals(1, loads.get());
+        assertEquals(CALLERS - 1, getCount("previous"));
+    }
+
+    @Test
+    void testFailureIsSharedAndNotCached() throws Exception {
+        InvalidRequestException failure = new InvalidRequestException("N/A");
+        List<Future<String>> results = startConcurrentLoads(() -> loader.load(() -> {
+            blockingLoad();
+            throw failure;
+        }));
+        loadReleased.countDown();
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertSame(failure, e.getCause());
+        }
+        // The next load after the failure runs the loader again
+        assertEquals("next", loader.load(() -> "next"));
+        assertEquals(2, getCount("loaded"));
+    }
+
+    /*
+     * Starts the first load and waits until it is in flight before starting the other concurrent loads
+     */
+    private List<Future<String>> startConcurrentLoads(
+            SingleFlightLoader.Loader<String, Exception> load) throws InterruptedException {
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(load::load));
+        loadStarted.await();
+        for (int i = 1; i < CALLERS; i++) {
+            results.add(executor.submit(load::load));
+        }
+        // Give the other callers time to join the load in flight
+        Thread.sleep(200);
+        return results;
+    }
+
+    private String blockingLoad() throws InterruptedException {
+        loads.incrementAndGet();
+        loadStarted.countDown();
+        loadReleased.await();
+        return "value";
+    }
+
+    private double getCount(String result) {
+        return meterRegistry.get("service.single.flight.counter").tag("result", result).counter()
+                .count();
+    }
+
+}
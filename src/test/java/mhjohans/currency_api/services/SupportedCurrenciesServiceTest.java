@@ -0,0 +1,97 @@
+package mhjohans.currency_api.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.web.client.RestClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+
+class SupportedCurrenciesServiceTest {
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    // Runs the background reloads only when the test runs them
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private SupportedCurrencies supportedCurrencies;
+
+    @BeforeEach
+    void setUp() throws ExternalApiException {
+        MockitoAnnotations.openMocks(this);
+        supportedCurrencies = SupportedCurrencies.of(Set.of("USD", "EUR"));
+        when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies);
+    }
+
+    @Test
+    void testSupportedCurrenciesCache() throws ExternalApiException {
+        SupportedCurrenciesService supportedCurrenciesService = createService(Duration.ofDays(1));
+        // Call the method 3 times and verify that it only calls the API once
+        for (int i = 0; i < 3; i++) {
+            assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        }
+        verify(currencyRateService, times(1)).getSupportedCurrencies();
+    }
+
+    @Test
+    void testExpiredSupportedCurrenciesAreReloadedInBackground() throws ExternalApiException {
+        SupportedCurrenciesService supportedCurrenciesService = createService(Duration.ZERO);
+        SupportedCurrencies next = SupportedCurrencies.of(Set.of("USD", "EUR", "GBP"));
+        when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies, next);
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        assertFalse(supportedCurrenciesService.isLoadRequired());
+        // The expired list is returned right away and the reload is left to the task executor, only once
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        assertEquals(1, tasks.size());
+        verify(currencyRateService, times(1)).getSupportedCurrencies();
+        runTasks();
+        assertSame(next, supportedCurrenciesService.getSupportedCurrencies());
+    }
+
+    @Test
+    void testPreviousSupportedCurrenciesAreKeptOnError() throws ExternalApiException {
+        SupportedCurrenciesService supportedCurrenciesService = createService(Duration.ZERO);
+        when(currencyRateService.getSupportedCurrencies()).thenReturn(supportedCurrencies)
+                .thenThrow(new RestClientException("N/A"));
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        runTasks();
+        assertSame(supportedCurrencies, supportedCurrenciesService.getSupportedCurrencies());
+        // The next caller triggers another reload after the failed one
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    void testFirstLoadFailureIsThrown() throws ExternalApiException {
+        SupportedCurrenciesService supportedCurrenciesService = createService(Duration.ofDays(1));
+        when(currencyRateService.getSupportedCurrencies())
+                .thenThrow(new RestClientException("N/A"));
+        assertThrows(RestClientException.class, supportedCurrenciesService::getSupportedCurrencies);
+    }
+
+    private SupportedCurrenciesService createService(Duration cacheTtl) {
+        return new SupportedCurrenciesService(currencyRateService, tasks::add, cacheTtl,
+                new SimpleMeterRegistry());
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package mhjohans.currency_api.services.providers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.CurrencyCodes;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+
+class FileRateProviderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testRatesAreReadFromFile() throws IOException, ExternalApiException {
+        Path file = directory.resolve("rates.json");
+        Files.writeString(file, """
+                [{"base_currency": "USD", "quote_currency": "EUR", "quote": 0.85, "date": "2024-01-31"},
+                 {"base_currency": "USD", "quote_currency": "GBP", "quote": 0.75, "date": "2024-01-31"}]
+                """);
+        FileRateProvider fileRateProvider = new FileRateProvider(new FileSystemResource(file), objectMapper);
+        SupportedCurrencies supportedCurrencies = fileRateProvider.getSupportedCurrencies();
+        assertEquals(3, supportedCurrencies.size());
+        assertTrue(supportedCurrencies.contains(CurrencyCodes.pack("USD")));
+        RateMatrix rateMatrix = fileRateProvider.getRateMatrix();
+        assertEquals(0.85, rateMatrix.getRate(rateMatrix.ordinal("USD"), rateMatrix.ordinal("EUR")));
+    }
+
+    @Test
+    void testMissingFileFails() {
+        FileRateProvider fileRateProvider =
+                new FileRateProvider(new FileSystemResource(directory.resolve("missing.json")), objectMapper);
+        assertThrows(ExternalApiException.class, fileRateProvider::getRateMatrix);
+    }
+
+}
@@ -0,0 +1,160 @@
+package mhjohans.currency_api.services.providers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mhjohans.currency_api.exceptions.ExternalApiException;
+import mhjohans.currency_api.services.RateMatrix;
+import mhjohans.currency_api.services.SupportedCurrencies;
+
+class RateProviderRouterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testSlowProviderIsHedged() throws ExternalApiException {
+        StubRateProvider slow = new StubRateProvider("slow", Duration.ofSeconds(5), false);
+        StubRateProvider fast = new StubRateProvider("fast", Duration.ZERO, false);
+        RateProviderRouter rateProviderRouter = createRouter(slow, fast);
+        long start = System.nanoTime();
+        assertSame(fast.rateMatrix, rateProviderRouter.call(RateProvider::getRateMatrix));
+        // The second provider is called after the initial hedge delay instead of waiting for the first one
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+        assertEquals(1, slow.calls.get());
+        assertEquals(1, fast.calls.get());
+        assertEquals(1.0, meterRegistry.get("service.rate.provider.hedge.counter").counter().count());
+    }
+
+    @Test
+    void testFailedProviderIsFailedOverAndRankedLast() throws ExternalApiException {
+        StubRateProvider failing = new StubRateProvider("failing", Duration.ZERO, true);
+        StubRateProvider working = new StubRateProvider("working", Duration.ZERO, false);
+        RateProviderRouter rateProviderRouter = createRouter(failing, working);
+        assertEquals(List.of("failing", "working"), rateProviderRouter.getRanking());
+        assertSame(working.rateMatrix, rateProviderRouter.call(RateProvider::getRateMatrix));
+        // The failure lowers the health score, so the working provider is called first from now on
+        assertEquals(List.of("working", "failing"), rateProviderRouter.getRanking());
+        assertSame(working.rateMatrix, rateProviderRouter.call(RateProvider::getRateMatrix));
+        assertEquals(1, failing.calls.get());
+        assertEquals(2, working.calls.get());
+    }
+
+    @Test
+    void testFirstFailureIsThrownIfAllProvidersFail() {
+        StubRateProvider first = new StubRateProvider("first", Duration.ZERO, true);
+        StubRateProvider second = new StubRateProvider("second", Duration.ZERO, true);
+        RateProviderRouter rateProviderRouter = createRouter(first, second);
+        RestClientException exception = assertThrows(RestClientException.class,
+                () -> rateProviderRouter.call(RateProvider::getRateMatrix));
+        assertEquals("first failed", exception.getMessage());
+        assertEquals(1, second.calls.get());
+    }
+
+    @Test
+    void testSlowProviderIsHedgedReactively() {
+        StubRateProvider slow = new StubRateProvider("slow", Duration.ofSeconds(5), false);
+        StubRateProvider fast = new StubRateProvider("fast", Duration.ZERO, false);
+        RateProviderRouter rateProviderRouter = createRouter(slow, fast);
+        long start = System.nanoTime();
+        assertSame(fast.rateMatrix, rateProviderRouter.callReactive(RateProvider::fetchRateMatrix).block());
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+        assertEquals(1, slow.calls.get());
+        assertEquals(1, fast.calls.get());
+        assertEquals(1.0, meterRegistry.get("service.rate.provider.hedge.counter").counter().count());
+    }
+
+    @Test
+    void testFailedProviderIsFailedOverReactively() {
+        StubRateProvider failing = new StubRateProvider("failing", Duration.ZERO, true);
+        StubRateProvider working = new StubRateProvider("working", Duration.ZERO, false);
+        RateProviderRouter rateProviderRouter = createRouter(failing, working);
+        long start = System.nanoTime();
+        assertSame(working.rateMatrix, rateProviderRouter.callReactive(RateProvider::fetchRateMatrix).block());
+        // The working provider is called as soon as the first one fails, without waiting for the hedge delay
+        assertTrue(System.nanoTime() - start < Duration.ofMillis(100).toNanos());
+        assertEquals(0.0, meterRegistry.get("service.rate.provider.hedge.counter").counter().count());
+        assertEquals(List.of("working", "failing"), rateProviderRouter.getRanking());
+    }
+
+    @Test
+    void testFirstFailureIsReturnedIfAllProvidersFailReactively() {
+        StubRateProvider first = new StubRateProvider("first", Duration.ZERO, true);
+        StubRateProvider second = new StubRateProvider("second", Duration.ZERO, true);
+        RateProviderRouter rateProviderRouter = createRouter(first, second);
+        RestClientException exception = assertThrows(RestClientException.class,
+                () -> rateProviderRouter.callReactive(RateProvider::fetchRateMatrix).block());
+        assertEquals("first failed", exception.getMessage());
+        assertEquals(1, second.calls.get());
+    }
+
+    private RateProviderRouter createRouter(RateProvider... rateProviders) {
+        List<String> names = List.of(rateProviders).stream().map(RateProvider::getName).toList();
+        return new RateProviderRouter(List.of(rateProviders), names, 2, Duration.ofMillis(100),
+                Duration.ofMillis(10), Duration.ofSeconds(1), meterRegistry);
+    }
+
+    /*
+     * Provider that answers with fixed rates after a delay, or fails
+     */
+    private static final class StubRateProvider implements RateProvider {
+
+        private final String name;
+
+        private final Duration delay;
+
+        private final boolean failing;
+
+        private final RateMatrix rateMatrix;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        StubRateProvider(String name, Duration delay, boolean failing) {
+            this.name = name;
+            this.delay = delay;
+            this.failing = failing;
+            this.rateMatrix = RateMatrix.of("USD", Map.of("EUR", 0.85), LocalDate.now(), Instant.now());
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public SupportedCurrencies getSupportedCurrencies() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RateMatrix getRateMatrix() {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RestClientException(name + " interrupted");
+            }
+            if (failing) {
+                throw new RestClientException(name + " failed");
+            }
+            return rateMatrix;
+        }
+
+        @Override
+        public RateMatrix getRateMatrix(LocalDate date) {
+            return getRateMatrix();
+        }
+
+    }
+
+}